@@ -0,0 +1,157 @@
+package com.unlockam.alarmmodule;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexed binary min-heap of alarms ordered by wake-up time ({@link QueuedAlarm#wakeAt()}).
+ *
+ * java.util.PriorityQueue would make cancel and reschedule O(n) because it has
+ * to search for the element; keeping a key -> slot index next to the array
+ * gives O(log n) insert, update and remove, and O(1) access to the earliest
+ * alarm. Not thread-safe - {@link AlarmQueue} serializes access.
+ */
+public class AlarmHeap {
+
+    private final List<QueuedAlarm> heap = new ArrayList<>();
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    public int size() {
+        return heap.size();
+    }
+
+    public boolean isEmpty() {
+        return heap.isEmpty();
+    }
+
+    public QueuedAlarm peek() {
+        return heap.isEmpty() ? null : heap.get(0);
+    }
+
+    /**
+     * The alarm that wakes up next after the head (the smaller child of the root)
+     */
+    public QueuedAlarm peekSecond() {
+        if (heap.size() < 2) {
+            return null;
+        }
+        if (heap.size() == 2) {
+            return heap.get(1);
+        }
+        return compare(heap.get(1), heap.get(2)) <= 0 ? heap.get(1) : heap.get(2);
+    }
+
+    public QueuedAlarm get(String key) {
+        Integer index = positions.get(key);
+        return index != null ? heap.get(index) : null;
+    }
+
+    /**
+     * Insert the alarm, or replace the entry with the same key and restore heap order
+     */
+    public void upsert(QueuedAlarm alarm) {
+        Integer index = positions.get(alarm.key());
+        if (index == null) {
+            heap.add(alarm);
+            positions.put(alarm.key(), heap.size() - 1);
+            siftUp(heap.size() - 1);
+        } else {
+            heap.set(index, alarm);
+            if (!siftUp(index)) {
+                siftDown(index);
+            }
+        }
+    }
+
+    public QueuedAlarm remove(String key) {
+        Integer index = positions.get(key);
+        if (index == null) {
+            return null;
+        }
+        return removeAt(index);
+    }
+
+    public QueuedAlarm poll() {
+        return heap.isEmpty() ? null : removeAt(0);
+    }
+
+    /**
+     * Snapshot of all entries in heap (not trigger) order
+     */
+    public List<QueuedAlarm> snapshot() {
+        return new ArrayList<>(heap);
+    }
+
+    public void clear() {
+        heap.clear();
+        positions.clear();
+    }
+
+    private QueuedAlarm removeAt(int index) {
+        QueuedAlarm removed = heap.get(index);
+        int last = heap.size() - 1;
+        if (index != last) {
+            swap(index, last);
+        }
+        heap.remove(last);
+        positions.remove(removed.key());
+        if (index < heap.size() && !siftUp(index)) {
+            siftDown(index);
+        }
+        return removed;
+    }
+
+    private boolean siftUp(int index) {
+        boolean moved = false;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (compare(heap.get(index), heap.get(parent)) >= 0) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+            moved = true;
+        }
+        return moved;
+    }
+
+    private void siftDown(int index) {
+        int size = heap.size();
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left;
+            int right = left + 1;
+            if (right < size && compare(heap.get(right), heap.get(left)) < 0) {
+                smallest = right;
+            }
+            if (compare(heap.get(index), heap.get(smallest)) <= 0) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        QueuedAlarm first = heap.get(a);
+        QueuedAlarm second = heap.get(b);
+        heap.set(a, second);
+        heap.set(b, first);
+        positions.put(second.key(), a);
+        positions.put(first.key(), b);
+    }
+
+    private static int compare(QueuedAlarm a, QueuedAlarm b) {
+        long wakeA = a.wakeAt();
+        long wakeB = b.wakeAt();
+        if (wakeA != wakeB) {
+            return wakeA < wakeB ? -1 : 1;
+        }
+        return a.key().compareTo(b.key());
+    }
+}
@@ -0,0 +1,470 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only history of alarm fire, snooze and dismiss events, kept for
+ * reliability reviews.
+ *
+ * Key design decisions:
+ * 1. Events go to segment files that roll over at SEGMENT_BYTES; each record is
+ *    [length][CRC32][payload], like RingingJournal, so a torn tail is detected and
+ *    cut off on the next start instead of corrupting later appends
+ * 2. Every segment has a sparse index file of (timestamp, offset) pairs, one per
+ *    INDEX_INTERVAL_BYTES of log. Indexes stay in memory, so a time-range query
+ *    skips whole segments, binary-searches the index and scans at most one interval
+ *    before the first match
+ * 3. Timestamps are stored non-decreasing (a clock stepped backwards is clamped to
+ *    the last event), which keeps segments and indexes sorted
+ * 4. A lost or short index is rebuilt from its segment on load; the log itself is
+ *    the source of truth
+ * 5. Only the newest MAX_SEGMENTS segments are kept - years of events at a few
+ *    dozen bytes each stay far below that
+ * 6. WakeStats is updated in the same call that appends an event, so statistics
+ *    are never recomputed from the log - except once, to backfill a fresh install
+ *    of the statistics from history that predates them
+ */
+public final class AlarmHistory {
+
+    private static final String TAG = "AlarmHistory";
+    private static final String DIR_NAME = "alarm_history";
+    private static final String LOG_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final long SEGMENT_BYTES = 256 * 1024L;
+    private static final long INDEX_INTERVAL_BYTES = 4 * 1024L;
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MAX_RECORD_BYTES = 4 * 1024;
+
+    public static final String FIRED = "fired";
+    public static final String SNOOZED = "snoozed";
+    public static final String DISMISSED = "dismissed";
+    public static final String AUTO_STOPPED = "auto_stopped";
+    public static final String AUDIO_RESTARTED = "audio_restarted";
+
+    // On-disk codes for the event types, in the order above; new types are only ever appended
+    private static final String[] TYPES = { FIRED, SNOOZED, DISMISSED, AUTO_STOPPED, AUDIO_RESTARTED };
+
+    public static final long UNKNOWN_LATENCY = -1L;
+
+    public static final class Event {
+        public final long at;
+        public final String type;
+        public final String target;
+        public final String alarmId;
+        // Fired: delay past the scheduled time. Snoozed/dismissed: time spent ringing.
+        // Audio restarted: how long the alarm had been silent
+        public final long latencyMs;
+
+        Event(long at, String type, String target, String alarmId, long latencyMs) {
+            this.at = at;
+            this.type = type;
+            this.target = target;
+            this.alarmId = alarmId;
+            this.latencyMs = latencyMs;
+        }
+    }
+
+    private static final class Segment {
+        final int number;
+        final File log;
+        final File index;
+        long size;
+        long lastIndexedOffset = -1L;
+        long[] indexAt = new long[16];
+        long[] indexOffset = new long[16];
+        int indexCount;
+
+        Segment(File dir, int number) {
+            this.number = number;
+            String name = String.format(Locale.US, "%08d", number);
+            this.log = new File(dir, name + LOG_SUFFIX);
+            this.index = new File(dir, name + INDEX_SUFFIX);
+        }
+
+        long firstAt() {
+            return indexCount > 0 ? indexAt[0] : Long.MAX_VALUE;
+        }
+
+        void addIndexEntry(long at, long offset) {
+            if (indexCount == indexAt.length) {
+                indexAt = Arrays.copyOf(indexAt, indexCount * 2);
+                indexOffset = Arrays.copyOf(indexOffset, indexCount * 2);
+            }
+            indexAt[indexCount] = at;
+            indexOffset[indexCount] = offset;
+            indexCount++;
+            lastIndexedOffset = offset;
+        }
+
+        /**
+         * Offset of the last indexed record strictly before {@code from}; nothing earlier can match
+         */
+        long seekOffset(long from) {
+            int low = 0;
+            int high = indexCount - 1;
+            long offset = 0L;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (indexAt[mid] < from) {
+                    offset = indexOffset[mid];
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return offset;
+        }
+    }
+
+    private static AlarmHistory instance;
+
+    private final File dir;
+    private final List<Segment> segments = new ArrayList<>();
+    private final WakeStats stats;
+    private long lastAt;
+
+    public static synchronized AlarmHistory getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmHistory(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlarmHistory(Context context) {
+        // Device-protected, so alarms ringing before the first unlock are recorded too
+        this.dir = new File(DirectBootStorage.deviceProtected(context).getFilesDir(), DIR_NAME);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "❌ Cannot create history directory " + dir);
+        }
+        load();
+        this.stats = new WakeStats(context);
+        if (stats.isEmpty() && !segments.isEmpty()) {
+            Log.d(TAG, "📊 Backfilling wake statistics from history");
+            stats.addAll(query(Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Aggregates kept current with every recorded event
+     */
+    public WakeStats stats() {
+        return stats;
+    }
+
+    /**
+     * Append one event; I/O failures are only logged, history must not get in the way of an alarm
+     */
+    public synchronized void record(String type, String target, String alarmId, long latencyMs) {
+        int code = Arrays.asList(TYPES).indexOf(type);
+        if (code < 0) {
+            throw new IllegalArgumentException("Unknown history event type: " + type);
+        }
+        long at = Math.max(System.currentTimeMillis(), lastAt);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeLong(at);
+            out.writeByte(code);
+            out.writeLong(latencyMs);
+            out.writeUTF(target != null ? target : "");
+            out.writeUTF(alarmId != null ? alarmId : "");
+            append(at, bytes.toByteArray());
+            lastAt = at;
+            stats.add(new Event(at, type, target, alarmId, latencyMs));
+            Log.d(TAG, "🗂️ " + type + " " + target + ":" + alarmId + " (" + latencyMs + "ms)");
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to record " + type + " for " + alarmId, e);
+        }
+    }
+
+    /**
+     * Events with {@code from <= at <= to}, oldest first
+     */
+    public synchronized List<Event> query(long from, long to) {
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            Segment segment = segments.get(i);
+            long nextFirstAt = i + 1 < segments.size() ? segments.get(i + 1).firstAt() : Long.MAX_VALUE;
+            if (nextFirstAt < from || segment.size == 0) {
+                continue;
+            }
+            if (segment.firstAt() > to) {
+                break;
+            }
+            if (!scan(segment, segment.seekOffset(from), from, to, events)) {
+                break;
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Read records from {@code offset} into {@code events}
+     *
+     * @return false once a record past {@code to} was reached - later segments can't match either
+     */
+    private boolean scan(Segment segment, long offset, long from, long to, List<Event> events) {
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(segment.log);
+            stream.getChannel().position(offset);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            long position = offset;
+            while (position < segment.size) {
+                byte[] payload = readRecord(in);
+                if (payload == null) {
+                    break;
+                }
+                position += 8 + payload.length;
+                Event event = decode(payload);
+                if (event.at > to) {
+                    return false;
+                }
+                if (event.at >= from) {
+                    events.add(event);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to read history segment " + segment.log.getName(), e);
+        } finally {
+            closeQuietly(stream);
+        }
+        return true;
+    }
+
+    private void append(long at, byte[] payload) throws IOException {
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.size >= SEGMENT_BYTES) {
+            segment = new Segment(dir, segment == null ? 0 : segment.number + 1);
+            segments.add(segment);
+            dropOldSegments();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        FileOutputStream stream = new FileOutputStream(segment.log, true);
+        try {
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+            out.flush();
+        } finally {
+            closeQuietly(stream);
+        }
+
+        long offset = segment.size;
+        segment.size += 8 + payload.length;
+        if (segment.indexCount == 0 || offset - segment.lastIndexedOffset >= INDEX_INTERVAL_BYTES) {
+            segment.addIndexEntry(at, offset);
+            appendIndexEntry(segment, at, offset);
+        }
+    }
+
+    private static void appendIndexEntry(Segment segment, long at, long offset) {
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(segment.index, true);
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeLong(at);
+            out.writeLong(offset);
+            out.flush();
+        } catch (IOException e) {
+            // The log is intact; the index is rebuilt from it on the next load
+            Log.w(TAG, "⚠️ Failed to extend history index " + segment.index.getName(), e);
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    private void dropOldSegments() {
+        while (segments.size() > MAX_SEGMENTS) {
+            Segment oldest = segments.remove(0);
+            if (!oldest.log.delete() || !oldest.index.delete()) {
+                Log.w(TAG, "⚠️ Could not fully delete history segment " + oldest.number);
+            }
+        }
+    }
+
+    private void load() {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<Integer> numbers = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(LOG_SUFFIX)) {
+                try {
+                    numbers.add(Integer.parseInt(name.substring(0, name.length() - LOG_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "⚠️ Ignoring stray history file " + name);
+                }
+            }
+        }
+        Collections.sort(numbers);
+
+        for (int number : numbers) {
+            Segment segment = new Segment(dir, number);
+            segment.size = segment.log.length();
+            loadIndex(segment);
+            segments.add(segment);
+        }
+        if (!segments.isEmpty()) {
+            recoverTail(segments.get(segments.size() - 1));
+        }
+        Log.d(TAG, "📂 Loaded " + segments.size() + " history segments");
+    }
+
+    private static void loadIndex(Segment segment) {
+        if (segment.index.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.index)));
+                while (true) {
+                    long at = in.readLong();
+                    long offset = in.readLong();
+                    if (offset >= segment.size) {
+                        break;
+                    }
+                    segment.addIndexEntry(at, offset);
+                }
+            } catch (EOFException e) {
+                // End of index, or a torn last entry
+            } catch (IOException e) {
+                Log.w(TAG, "⚠️ Unreadable history index " + segment.index.getName(), e);
+            } finally {
+                closeQuietly(in);
+            }
+        }
+        if (segment.indexCount == 0 && segment.size > 0) {
+            rebuildIndex(segment);
+        }
+    }
+
+    /**
+     * Re-create a segment's index by scanning its log
+     */
+    private static void rebuildIndex(Segment segment) {
+        Log.w(TAG, "⚠️ Rebuilding history index for " + segment.log.getName());
+        segment.indexCount = 0;
+        segment.lastIndexedOffset = -1L;
+        if (!segment.index.delete() && segment.index.exists()) {
+            Log.w(TAG, "⚠️ Could not delete stale index " + segment.index.getName());
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment.log)));
+            long offset = 0L;
+            byte[] payload;
+            while ((payload = readRecord(in)) != null) {
+                if (segment.indexCount == 0 || offset - segment.lastIndexedOffset >= INDEX_INTERVAL_BYTES) {
+                    long at = decode(payload).at;
+                    segment.addIndexEntry(at, offset);
+                    appendIndexEntry(segment, at, offset);
+                }
+                offset += 8 + payload.length;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to rebuild history index", e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Find the end of the last intact record in the active segment and cut off anything after it
+     */
+    private void recoverTail(Segment segment) {
+        long start = segment.indexCount > 0 ? segment.indexOffset[segment.indexCount - 1] : 0L;
+        long end = start;
+        FileInputStream stream = null;
+        try {
+            stream = new FileInputStream(segment.log);
+            stream.getChannel().position(start);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            byte[] payload;
+            while ((payload = readRecord(in)) != null) {
+                end += 8 + payload.length;
+                lastAt = Math.max(lastAt, decode(payload).at);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to scan history tail", e);
+        } finally {
+            closeQuietly(stream);
+        }
+
+        if (end < segment.size) {
+            Log.w(TAG, "⚠️ Truncating torn history tail at " + end + " of " + segment.size);
+            RandomAccessFile file = null;
+            try {
+                file = new RandomAccessFile(segment.log, "rw");
+                file.setLength(end);
+            } catch (IOException e) {
+                Log.e(TAG, "❌ Failed to truncate history tail", e);
+            } finally {
+                closeQuietly(file);
+            }
+            segment.size = end;
+        }
+    }
+
+    /**
+     * Next intact payload, or null at the end of the data or at a torn record
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int expected = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            return (int) crc.getValue() == expected ? payload : null;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    private static Event decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long at = in.readLong();
+        int code = in.readByte();
+        long latencyMs = in.readLong();
+        String target = in.readUTF();
+        String alarmId = in.readUTF();
+        String type = code >= 0 && code < TYPES.length ? TYPES[code] : "unknown";
+        return new Event(at, type, target, alarmId, latencyMs);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
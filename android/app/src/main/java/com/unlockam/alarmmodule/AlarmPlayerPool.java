@@ -0,0 +1,325 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Pool of prepared, looping alarm MediaPlayers keyed by sound URI.
+ *
+ * MediaPlayer.prepare() reads and parses the file synchronously; on slow storage it
+ * held the main thread for hundreds of ms exactly while the alarm activity was
+ * trying to draw. The alarm services now only ever call start() on the main thread.
+ *
+ * Key design decisions:
+ * 1. Players are created, given their data source and prepared with prepareAsync()
+ *    on one dedicated audio HandlerThread, so their callbacks run there as well
+ * 2. warm() prepares a player ahead of time and keeps it idle for a bounded time;
+ *    AlarmPrewarmer warms the service's sound URIs before the alarm fires
+ * 3. acquire() hands over an idle player immediately, or waits for one in flight,
+ *    or prepares a new one - callers never block, they get a callback on the main
+ *    thread with a prepared player or the error that ended the preparation
+ * 4. Every player uses the same alarm AudioAttributes, so a prepared player suits
+ *    any caller asking for its URI
+ * 5. A handed-over player belongs to the caller; idle players that error or
+ *    outlive their warm time are released by the pool
+ */
+public final class AlarmPlayerPool {
+
+    private static final String TAG = "AlarmPlayerPool";
+    private static final long DEFAULT_KEEP_MS = 2 * 60 * 1000L;
+
+    static final AudioAttributes ALARM_ATTRIBUTES = new AudioAttributes.Builder()
+        .setUsage(AudioAttributes.USAGE_ALARM)
+        .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+        .build();
+
+    public interface Callback {
+        /**
+         * A prepared, looping player that has not been started; the caller owns it now
+         */
+        void onReady(MediaPlayer player);
+
+        void onFailed(Exception e);
+    }
+
+    private static AlarmPlayerPool instance;
+
+    private final Context context;
+    private final Handler audioHandler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Guarded by this
+    private final Map<Uri, ArrayDeque<MediaPlayer>> idle = new HashMap<>();
+    private final Map<Uri, ArrayDeque<Callback>> waiters = new HashMap<>();
+    private final Map<Uri, Integer> preparing = new HashMap<>();
+    private final Map<Uri, Long> keepUntil = new HashMap<>();
+
+    public static synchronized AlarmPlayerPool getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmPlayerPool(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlarmPlayerPool(Context context) {
+        this.context = context;
+        HandlerThread thread = new HandlerThread("UnlockAM-AlarmAudio", Process.THREAD_PRIORITY_AUDIO);
+        thread.start();
+        this.audioHandler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * The audio thread's handler, for other work that must stay off the main thread
+     */
+    Handler audioHandler() {
+        return audioHandler;
+    }
+
+    public void warm(Uri uri) {
+        warm(uri, DEFAULT_KEEP_MS);
+    }
+
+    /**
+     * Make sure one prepared player for {@code uri} is idle or on its way, and keep
+     * idle players for it for at least {@code keepMs}
+     */
+    public void warm(Uri uri, long keepMs) {
+        if (uri == null) {
+            return;
+        }
+        long until = SystemClock.elapsedRealtime() + keepMs;
+        synchronized (this) {
+            Long current = keepUntil.get(uri);
+            keepUntil.put(uri, current != null ? Math.max(current, until) : until);
+            if (available(uri) > 0) {
+                return;
+            }
+            startPreparing(uri);
+        }
+        audioHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                sweep();
+            }
+        }, keepMs + 1000L);
+    }
+
+    /**
+     * Get a prepared player for {@code uri}. Must be called on the main thread; when
+     * one is idle the callback runs before this returns
+     */
+    public void acquire(Uri uri, Callback callback) {
+        MediaPlayer player;
+        synchronized (this) {
+            player = pollPlayer(idle.get(uri));
+            if (player == null) {
+                ArrayDeque<Callback> queue = waiters.get(uri);
+                if (queue == null) {
+                    queue = new ArrayDeque<>();
+                    waiters.put(uri, queue);
+                }
+                queue.add(callback);
+                // Reuse a preparation a warm-up already started, if there is a spare one
+                if (available(uri) < 0) {
+                    startPreparing(uri);
+                }
+            }
+        }
+        if (player != null) {
+            Log.d(TAG, "♻️ Handing over prepared player for " + uri);
+            handOver(player);
+            callback.onReady(player);
+        }
+    }
+
+    /**
+     * Players idle or in flight for {@code uri} that no caller is waiting for yet
+     */
+    private int available(Uri uri) {
+        ArrayDeque<MediaPlayer> ready = idle.get(uri);
+        ArrayDeque<Callback> queue = waiters.get(uri);
+        Integer inFlight = preparing.get(uri);
+        return (ready != null ? ready.size() : 0) + (inFlight != null ? inFlight : 0) -
+            (queue != null ? queue.size() : 0);
+    }
+
+    private void startPreparing(final Uri uri) {
+        Integer inFlight = preparing.get(uri);
+        preparing.put(uri, inFlight != null ? inFlight + 1 : 1);
+        audioHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                prepare(uri);
+            }
+        });
+    }
+
+    /**
+     * Runs on the audio thread; the data source is opened here too, since a content
+     * URI means a provider round trip
+     */
+    private void prepare(final Uri uri) {
+        final long started = SystemClock.elapsedRealtime();
+        final MediaPlayer player = new MediaPlayer();
+        try {
+            player.setAudioAttributes(ALARM_ATTRIBUTES);
+            player.setDataSource(context, uri);
+            player.setLooping(true);
+            player.setVolume(1.0f, 1.0f);
+            player.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+                @Override
+                public void onPrepared(MediaPlayer mp) {
+                    Log.d(TAG, "✅ Prepared " + uri + " in " + (SystemClock.elapsedRealtime() - started) + "ms");
+                    prepared(uri, mp);
+                }
+            });
+            player.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+                @Override
+                public boolean onError(MediaPlayer mp, int what, int extra) {
+                    mp.release();
+                    failed(uri, new IOException("MediaPlayer error " + what + "/" + extra + " preparing " + uri));
+                    return true;
+                }
+            });
+            player.prepareAsync();
+        } catch (Exception e) {
+            player.release();
+            failed(uri, e);
+        }
+    }
+
+    private void prepared(final Uri uri, final MediaPlayer player) {
+        // A player that breaks while idle must not be handed out. Installed before the
+        // player becomes visible to acquire(), whose hand-over clears it again
+        player.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+            @Override
+            public boolean onError(MediaPlayer mp, int what, int extra) {
+                Log.w(TAG, "⚠️ Idle player for " + uri + " failed (" + what + "/" + extra + ")");
+                boolean removed;
+                synchronized (AlarmPlayerPool.this) {
+                    ArrayDeque<MediaPlayer> ready = idle.get(uri);
+                    removed = ready != null && ready.remove(mp);
+                }
+                if (removed) {
+                    mp.release();
+                }
+                return true;
+            }
+        });
+
+        final Callback waiter;
+        boolean keep;
+        synchronized (this) {
+            decrementPreparing(uri);
+            waiter = pollWaiter(waiters.get(uri));
+            Long until = keepUntil.get(uri);
+            keep = waiter == null && until != null && until > SystemClock.elapsedRealtime();
+            if (keep) {
+                ArrayDeque<MediaPlayer> ready = idle.get(uri);
+                if (ready == null) {
+                    ready = new ArrayDeque<>();
+                    idle.put(uri, ready);
+                }
+                ready.add(player);
+            }
+        }
+
+        if (waiter != null) {
+            handOver(player);
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    waiter.onReady(player);
+                }
+            });
+        } else if (!keep) {
+            player.release();
+        }
+    }
+
+    private void failed(Uri uri, final Exception e) {
+        Log.e(TAG, "❌ Could not prepare " + uri + ": " + e.getMessage());
+        final Callback waiter;
+        synchronized (this) {
+            decrementPreparing(uri);
+            waiter = pollWaiter(waiters.get(uri));
+        }
+        if (waiter != null) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    waiter.onFailed(e);
+                }
+            });
+        }
+    }
+
+    private void decrementPreparing(Uri uri) {
+        Integer inFlight = preparing.get(uri);
+        if (inFlight == null || inFlight <= 1) {
+            preparing.remove(uri);
+        } else {
+            preparing.put(uri, inFlight - 1);
+        }
+    }
+
+    /**
+     * Release idle players whose warm time has passed
+     */
+    private void sweep() {
+        long now = SystemClock.elapsedRealtime();
+        ArrayDeque<MediaPlayer> expired = new ArrayDeque<>();
+        synchronized (this) {
+            Iterator<Map.Entry<Uri, Long>> entries = keepUntil.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Uri, Long> entry = entries.next();
+                if (entry.getValue() <= now) {
+                    entries.remove();
+                    ArrayDeque<MediaPlayer> ready = idle.remove(entry.getKey());
+                    if (ready != null) {
+                        expired.addAll(ready);
+                    }
+                }
+            }
+        }
+        for (MediaPlayer player : expired) {
+            try {
+                player.release();
+            } catch (Exception e) {
+                Log.w(TAG, "Error releasing idle player", e);
+            }
+        }
+        if (!expired.isEmpty()) {
+            Log.d(TAG, "🧹 Released " + expired.size() + " unused prepared player(s)");
+        }
+    }
+
+    /**
+     * The pool's listeners must not outlive the hand-over
+     */
+    private static void handOver(MediaPlayer player) {
+        player.setOnPreparedListener(null);
+        player.setOnErrorListener(null);
+    }
+
+    private static MediaPlayer pollPlayer(ArrayDeque<MediaPlayer> queue) {
+        return queue != null ? queue.poll() : null;
+    }
+
+    private static Callback pollWaiter(ArrayDeque<Callback> queue) {
+        return queue != null ? queue.poll() : null;
+    }
+}
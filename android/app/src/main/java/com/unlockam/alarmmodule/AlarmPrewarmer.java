@@ -0,0 +1,147 @@
+package com.unlockam.alarmmodule;
+
+import android.app.Notification;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pre-warm stage for production alarms.
+ *
+ * Shortly before a critical alarm the queue wakes up once more and this class
+ * does the cold work that used to sit between the wake-up and audible sound.
+ *
+ * Key design decisions:
+ * 1. The service's MediaPlayer layers (requested sound, distinct backup sound) are
+ *    resolved and warmed in AlarmPlayerPool for the lead time plus the grace
+ *    period - the service only has to call start() on what the pool hands over
+ * 2. The foreground notification, including its PendingIntents, is built ahead of time
+ * 3. Everything is held in memory only; if the process dies in between, the
+ *    service takes the normal cold path, so pre-warming can never lose an alarm
+ * 4. Unused notifications are dropped after the lead time plus a grace period,
+ *    or as soon as the alarm is cancelled; the pool expires its own players
+ */
+public final class AlarmPrewarmer {
+
+    private static final String TAG = "AlarmPrewarmer";
+
+    public static final long MAX_LEAD_MS = 5 * 60 * 1000L;
+    private static final long DISCARD_GRACE_MS = 60 * 1000L;
+
+    private static final Map<String, Prewarmed> CACHE = new HashMap<>();
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    private AlarmPrewarmer() {
+    }
+
+    /**
+     * Resources prepared for one alarm; handed over to the service exactly once
+     */
+    public static class Prewarmed {
+        public final String alarmId;
+        public final String soundType;
+        public final List<Uri> fallbackChain;
+        public Notification notification;
+
+        Prewarmed(String alarmId, String soundType, List<Uri> fallbackChain) {
+            this.alarmId = alarmId;
+            this.soundType = soundType;
+            this.fallbackChain = fallbackChain;
+        }
+    }
+
+    /**
+     * Prepare audio and notification for an alarm that fires in {@code prewarmLeadMs}
+     */
+    public static void prewarm(Context context, QueuedAlarm alarm) {
+        // Only the production service knows how to consume pre-warmed resources
+        if (!QueuedAlarm.TARGET_PRODUCTION.equals(alarm.target)) {
+            return;
+        }
+
+        long started = System.currentTimeMillis();
+        Context appContext = context.getApplicationContext();
+        final Prewarmed warm = new Prewarmed(alarm.alarmId, alarm.soundType, resolveFallbackChain(appContext, alarm.soundType));
+
+        try {
+            ProductionAlarmService.createNotificationChannel(appContext);
+            warm.notification = ProductionAlarmService.buildAlarmNotification(appContext, alarm.alarmId, alarm.label);
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ Could not pre-build notification: " + e.getMessage());
+        }
+
+        // Prepared asynchronously on the pool's audio thread; nothing here waits for it
+        AlarmPlayerPool pool = AlarmPlayerPool.getInstance(appContext);
+        for (Uri uri : warm.fallbackChain) {
+            pool.warm(uri, alarm.prewarmLeadMs + DISCARD_GRACE_MS);
+        }
+
+        synchronized (CACHE) {
+            CACHE.put(alarm.alarmId, warm);
+        }
+
+        // Release it if the alarm never comes to collect it
+        MAIN_HANDLER.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (CACHE) {
+                    if (CACHE.get(warm.alarmId) == warm) {
+                        CACHE.remove(warm.alarmId);
+                        Log.d(TAG, "🧹 Released unused pre-warm for " + warm.alarmId);
+                    }
+                }
+            }
+        }, alarm.prewarmLeadMs + DISCARD_GRACE_MS);
+
+        Log.d(TAG, "🔥 Pre-warmed " + alarm + " in " + (System.currentTimeMillis() - started) + "ms" +
+            " (sounds=" + warm.fallbackChain.size() + ", notification=" + (warm.notification != null) + ")");
+    }
+
+    /**
+     * Hand over the prepared resources for an alarm, or null if there are none
+     * (or they were prepared for a different sound)
+     */
+    public static Prewarmed take(String alarmId, String soundType) {
+        Prewarmed warm;
+        synchronized (CACHE) {
+            warm = CACHE.remove(alarmId);
+        }
+        if (warm == null) {
+            return null;
+        }
+        String requested = soundType != null ? soundType : "default";
+        if (!requested.equals(warm.soundType)) {
+            return null;
+        }
+        return warm;
+    }
+
+    public static void discard(QueuedAlarm alarm) {
+        discard(alarm.alarmId);
+    }
+
+    public static void discard(String alarmId) {
+        synchronized (CACHE) {
+            CACHE.remove(alarmId);
+        }
+    }
+
+    private static List<Uri> resolveFallbackChain(Context context, String soundType) {
+        List<Uri> chain = new ArrayList<>();
+        addIfNew(chain, ProductionAlarmService.getAudioUri(context, soundType));
+        addIfNew(chain, ProductionAlarmService.getBackupAudioUri(context, soundType));
+        return chain;
+    }
+
+    private static void addIfNew(List<Uri> chain, Uri uri) {
+        if (uri != null && !chain.contains(uri)) {
+            chain.add(uri);
+        }
+    }
+}
@@ -0,0 +1,710 @@
+package com.unlockam.alarmmodule;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Single-armed native alarm queue shared by every alarm stack in the app.
+ *
+ * Key design decisions:
+ * 1. All alarms live in an in-process min-heap ordered by trigger time, so
+ *    scheduling and cancelling cost O(log n) instead of one system-server IPC each
+ * 2. Only the earliest alarm is registered with AlarmManager, through one fixed
+ *    PendingIntent - the system always holds exactly one entry for this app
+ * 3. AlarmQueueReceiver pops everything that is due, hands each alarm to the
+ *    receiver of the stack that scheduled it, and re-arms the next one
+ * 4. The armed trigger time is remembered so unchanged heads never cost an IPC
+ * 5. Recurring alarms are moved to their next occurrence as they are popped, so a
+ *    repeating alarm stays queued without any JS running after it fires
+ * 6. A clock or zone change re-resolves every wall-clock alarm in one pass with a
+ *    single persisted write; large queues are split across cores with fork-join
+ * 7. Alarms with a pre-warm lead are armed at their pre-warm time first; when that
+ *    wake-up is popped the entry is marked pre-warmed and re-armed at its trigger
+ * 8. Alarms due within a configurable coalescing window of an alarm that fires are
+ *    popped with it, so a cluster costs one wake-up and one ringing session
+ * 9. The head is armed with the API of its priority class: critical uses
+ *    setAlarmClock, exact uses setExactAndAllowWhileIdle, windowed uses setWindow.
+ *    A window is clamped so it never ends after the next alarm's wake-up. The
+ *    trigger of a pre-warmed exact alarm uses setAlarmClock, so pre-warming never
+ *    costs a second Doze idle-quota wake-up
+ * 10. Every change is run through {@link AlarmQuotaPlanner}, which promotes exact
+ *    alarms the Doze idle quota would hold back and records each alarm's
+ *    worst-case delay for the scheduling result; it replans only the alarms a
+ *    change can affect
+ * 11. An alarm with an end time queues its stop entry as it fires, so ringing is
+ *    ended natively - recurring alarms get a fresh stop entry every occurrence
+ * 12. The queue is persisted as an append-only change log in device-protected
+ *    storage, so a change writes only the entries it touched and the queue can be
+ *    re-armed on LOCKED_BOOT_COMPLETED, before the user unlocks after a reboot
+ * 13. Alarms whose registration was lost still ring late within their own grace
+ *    window; past it they count as missed and recurring ones skip ahead
+ * 14. The next ringing alarm is recomputed on every change and published to
+ *    {@link NextAlarm.Listener}s only when it differs; reading it never takes the lock
+ */
+public class AlarmQueue {
+
+    private static final String TAG = "AlarmQueue";
+    private static final String PREFS_NAME = "UnlockAM_AlarmQueue";
+    // Entries were kept here as one JSON array before the change log existed
+    private static final String KEY_ENTRIES = "entries";
+    private static final String LOG_NAME = "UnlockAM_AlarmQueue.log";
+    private static final String KEY_ARMED_AT = "armed_at";
+    private static final String KEY_COALESCE_WINDOW = "coalesce_window_ms";
+    private static final int QUEUE_REQUEST_CODE = 7300;
+    private static final long NOT_ARMED = -1L;
+
+    // AlarmManager may deliver a batch a little early; treat these alarms as due too
+    private static final long DUE_SLACK_MS = 1000L;
+
+    // Below this many alarms a sequential recompute is faster than forking
+    private static final int PARALLEL_RECOMPUTE_THRESHOLD = 512;
+    private static final int RECOMPUTE_SLICE = 128;
+
+    // Android 14 stretches shorter setWindow windows to 10 minutes; arm exact instead
+    private static final long MIN_PLATFORM_WINDOW_MS = 10 * 60 * 1000L;
+
+    public static final String ACTION_QUEUE_FIRE = "com.unlockam.ALARM_QUEUE_FIRE";
+
+    private static AlarmQueue instance;
+
+    private final Context context;
+    private final AlarmManager alarmManager;
+    private final SharedPreferences prefs;
+    private final AlarmQueueLog log;
+    private final AlarmHeap heap = new AlarmHeap();
+    private final AlarmQuotaPlanner planner;
+    // Changes not yet appended to the log, by key; null marks a removal
+    private final Map<String, QueuedAlarm> pending = new LinkedHashMap<>();
+    private long armedAt;
+    // Not persisted: after a restart the head is simply re-armed once
+    private long armedWindowEnd = NOT_ARMED;
+    private String armedPriority;
+    private long coalesceWindowMs;
+    private volatile NextAlarm nextAlarm;
+    private final List<NextAlarm.Listener> nextAlarmListeners = new CopyOnWriteArrayList<>();
+
+    public static synchronized AlarmQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmQueue(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlarmQueue(Context context) {
+        this.context = context;
+        this.alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        this.prefs = DirectBootStorage.forPreferences(context, PREFS_NAME)
+            .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.armedAt = prefs.getLong(KEY_ARMED_AT, NOT_ARMED);
+        this.coalesceWindowMs = prefs.getLong(KEY_COALESCE_WINDOW, 0L);
+        this.planner = new AlarmQuotaPlanner(Build.VERSION.SDK_INT >= Build.VERSION_CODES.M, coalesceWindowMs);
+        this.log = new AlarmQueueLog(context, LOG_NAME);
+        load();
+        replan();
+        persist();
+    }
+
+    /**
+     * Add or replace an alarm; re-arms AlarmManager only if the earliest alarm changed.
+     *
+     * @return the AlarmManager API used if this alarm was just armed, otherwise the
+     *         API its priority class will be armed with when it reaches the head
+     */
+    public synchronized String schedule(QueuedAlarm alarm) {
+        put(alarm);
+        replan();
+        persist();
+        String method = arm();
+        Log.d(TAG, "📥 Queued " + alarm + " (" + heap.size() + " pending)");
+        QueuedAlarm queued = heap.get(alarm.key());
+        return heap.peek() == queued && method != null ? method : apiFor(queued);
+    }
+
+    /**
+     * How the quota planner expects this alarm to be delivered, or null if it is not queued
+     */
+    public synchronized AlarmQuotaPlanner.Entry planFor(QueuedAlarm alarm) {
+        return planner.get(alarm);
+    }
+
+    public synchronized boolean isArmedHead(QueuedAlarm alarm) {
+        QueuedAlarm head = heap.peek();
+        return head != null && head.key().equals(alarm.key()) && armedAt == head.wakeAt();
+    }
+
+    /**
+     * The AlarmManager API an alarm's priority class maps to
+     */
+    public static String apiFor(QueuedAlarm alarm) {
+        if (triggersAsAlarmClock(alarm)) {
+            return "setAlarmClock";
+        }
+        switch (alarm.priority) {
+            case QueuedAlarm.PRIORITY_CRITICAL:
+                return "setAlarmClock";
+            case QueuedAlarm.PRIORITY_WINDOWED:
+                return "setWindow";
+            default:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? "setExactAndAllowWhileIdle" : "setExact";
+        }
+    }
+
+    /**
+     * An exact alarm whose pre-warm wake-up already used the idle quota; its trigger
+     * is armed with setAlarmClock so it neither waits for nor charges the quota again
+     */
+    static boolean triggersAsAlarmClock(QueuedAlarm alarm) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M &&
+            QueuedAlarm.PRIORITY_EXACT.equals(alarm.priority) && alarm.prewarmLeadMs > 0 && alarm.prewarmed;
+    }
+
+    /**
+     * Add or replace a batch of alarms with a single persisted write and at most one AlarmManager IPC.
+     *
+     * @return the AlarmManager API used if the head changed, otherwise "queued"
+     */
+    public synchronized String scheduleAll(List<QueuedAlarm> alarms) {
+        for (QueuedAlarm alarm : alarms) {
+            put(alarm);
+        }
+        replan();
+        persist();
+        String method = arm();
+        Log.d(TAG, "📥 Queued batch of " + alarms.size() + " (" + heap.size() + " pending)");
+        return method != null ? method : "queued";
+    }
+
+    public synchronized boolean cancel(String target, String alarmId) {
+        QueuedAlarm head = heap.peek();
+        QueuedAlarm removed = drop(QueuedAlarm.key(target, alarmId));
+        QueuedAlarm stop = drop(QueuedAlarm.key(QueuedAlarm.TARGET_STOP, QueuedAlarm.key(target, alarmId)));
+        if (removed == null && stop == null) {
+            return false;
+        }
+        if (removed != null) {
+            AlarmPrewarmer.discard(removed);
+        }
+        // Removing an alarm can demote others the quota no longer holds back
+        replan();
+        persist();
+        armAfterRemoval(head);
+        Log.d(TAG, "🗑️ Removed " + (removed != null ? removed : stop) + " (" + heap.size() + " pending)");
+        return removed != null;
+    }
+
+    /**
+     * Remove a batch of alarms with a single persisted write and at most one AlarmManager IPC.
+     *
+     * @return the alarm IDs that were actually present in the queue
+     */
+    public synchronized List<String> cancelAll(String target, List<String> alarmIds) {
+        List<String> removed = new ArrayList<>();
+        QueuedAlarm head = heap.peek();
+        for (String alarmId : alarmIds) {
+            QueuedAlarm alarm = drop(QueuedAlarm.key(target, alarmId));
+            drop(QueuedAlarm.key(QueuedAlarm.TARGET_STOP, QueuedAlarm.key(target, alarmId)));
+            if (alarm != null) {
+                AlarmPrewarmer.discard(alarm);
+                removed.add(alarmId);
+            }
+        }
+        if (!pending.isEmpty()) {
+            replan();
+            persist();
+            armAfterRemoval(head);
+        }
+        Log.d(TAG, "🗑️ Removed batch of " + removed.size() + " (" + heap.size() + " pending)");
+        return removed;
+    }
+
+    /**
+     * Alarms due up to this long after an alarm that fires are fired together with it; 0 disables coalescing
+     */
+    public synchronized void setCoalesceWindowMs(long windowMs) {
+        coalesceWindowMs = Math.max(0L, windowMs);
+        prefs.edit().putLong(KEY_COALESCE_WINDOW, coalesceWindowMs).apply();
+        // Merges change with the window, and with them which alarms need promoting
+        planner.setCoalesceWindowMs(coalesceWindowMs);
+        replan();
+        persist();
+        arm();
+        Log.d(TAG, "🧲 Coalescing window set to " + coalesceWindowMs + "ms");
+    }
+
+    public synchronized long getCoalesceWindowMs() {
+        return coalesceWindowMs;
+    }
+
+    public synchronized QueuedAlarm peek() {
+        return heap.peek();
+    }
+
+    public synchronized int size() {
+        return heap.size();
+    }
+
+    /**
+     * The next alarm that will ring, or null if none is queued; safe to call from any thread
+     */
+    public NextAlarm nextAlarm() {
+        return nextAlarm;
+    }
+
+    public void addNextAlarmListener(NextAlarm.Listener listener) {
+        nextAlarmListeners.add(listener);
+    }
+
+    public void removeNextAlarmListener(NextAlarm.Listener listener) {
+        nextAlarmListeners.remove(listener);
+    }
+
+    /**
+     * Alarms whose wake-up has been reached, split into those that must fire now
+     * and those that only need pre-warming
+     */
+    public static class DueAlarms {
+        public final List<QueuedAlarm> fire = new ArrayList<>();
+        public final List<QueuedAlarm> prewarm = new ArrayList<>();
+
+        public boolean isEmpty() {
+            return fire.isEmpty() && prewarm.isEmpty();
+        }
+    }
+
+    /**
+     * Remove and return every alarm due at {@code now}, in trigger order, and mark
+     * alarms that reached their pre-warm time as pre-warmed (they stay queued).
+     * Recurring alarms are re-queued at their next occurrence in the same write.
+     * The caller dispatches them and then calls {@link #rearm()}.
+     */
+    public synchronized DueAlarms popDue(long now) {
+        DueAlarms result = new DueAlarms();
+        List<QueuedAlarm> due = result.fire;
+        QueuedAlarm woken = heap.peek();
+        if (woken != null && woken.wakeAt() <= now + DUE_SLACK_MS &&
+            QueuedAlarm.PRIORITY_EXACT.equals(woken.priority) && !triggersAsAlarmClock(woken)) {
+            // In memory only - a restart forgets it
+            planner.setLastQuotaUseAt(now);
+        }
+        while (!heap.isEmpty() && heap.peek().wakeAt() <= now + DUE_SLACK_MS) {
+            QueuedAlarm head = heap.peek();
+            if (head.triggerAt <= now + DUE_SLACK_MS) {
+                due.add(drop(head.key()));
+            } else {
+                QueuedAlarm warmed = head.toBuilder().setPrewarmed(true).build();
+                put(warmed);
+                result.prewarm.add(warmed);
+            }
+        }
+        // Pull in the rest of the cluster - only when something genuinely fires now.
+        // A stop entry ends the cluster: stopping early would cut a ringing alarm short.
+        if (!due.isEmpty() && coalesceWindowMs > DUE_SLACK_MS) {
+            long coalesceUntil = due.get(due.size() - 1).triggerAt + coalesceWindowMs;
+            while (!heap.isEmpty() && heap.peek().triggerAt <= coalesceUntil && !heap.peek().isStop()) {
+                due.add(drop(heap.peek().key()));
+            }
+        }
+        for (QueuedAlarm alarm : due) {
+            QueuedAlarm stop = alarm.stopEntry();
+            if (stop != null) {
+                put(stop);
+                Log.d(TAG, "⏹️ Queued auto-stop " + stop);
+            }
+            QueuedAlarm next = alarm.nextOccurrence(now + DUE_SLACK_MS);
+            if (next != null) {
+                put(next);
+                Log.d(TAG, "🔁 Re-queued " + next);
+            }
+        }
+        if (!result.isEmpty()) {
+            replan();
+            persist();
+        }
+        return result;
+    }
+
+    /**
+     * Re-resolve every wall-clock alarm after ACTION_TIME_CHANGED / ACTION_TIMEZONE_CHANGED
+     * and re-arm the head unconditionally. Recurring alarms resume after the occurrence
+     * they last fired, so setting the clock back never rings that occurrence again.
+     *
+     * @return the alarms whose trigger time changed
+     */
+    public synchronized List<QueuedAlarm> recomputeWallClock(ZoneId deviceZone, long now) {
+        QueuedAlarm[] alarms = heap.snapshot().toArray(new QueuedAlarm[0]);
+        QueuedAlarm[] rebased = new QueuedAlarm[alarms.length];
+
+        if (alarms.length >= PARALLEL_RECOMPUTE_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new RebaseTask(alarms, rebased, 0, alarms.length, deviceZone, now));
+        } else {
+            for (int i = 0; i < alarms.length; i++) {
+                rebased[i] = alarms[i].rebased(deviceZone, now);
+            }
+        }
+
+        List<QueuedAlarm> changed = new ArrayList<>();
+        for (int i = 0; i < rebased.length; i++) {
+            if (rebased[i] != alarms[i]) {
+                put(rebased[i]);
+                if (rebased[i].triggerAt != alarms[i].triggerAt) {
+                    changed.add(rebased[i]);
+                }
+            }
+        }
+        replan();
+        persist();
+        armedAt = NOT_ARMED;
+        arm();
+        Log.d(TAG, "🌍 Recomputed " + alarms.length + " alarms for " + deviceZone + " (" + changed.size() + " moved)");
+        return changed;
+    }
+
+    /**
+     * Register the current head with AlarmManager if it is not already armed
+     */
+    public synchronized void rearm() {
+        arm();
+    }
+
+    /**
+     * Probe the queue's AlarmManager registration with FLAG_NO_CREATE and repair it only
+     * if it is missing (task killer, force-stop, update) or stale (armed for another time).
+     *
+     * @return true if the registration had to be re-armed or cleared
+     */
+    public synchronized boolean reconcileArmedState() {
+        PendingIntent registered = probeRegistration();
+
+        QueuedAlarm head = heap.peek();
+        if (head == null) {
+            if (registered == null && armedAt == NOT_ARMED) {
+                return false;
+            }
+            if (registered != null) {
+                alarmManager.cancel(registered);
+                registered.cancel();
+            }
+            saveArmedAt(NOT_ARMED);
+            Log.d(TAG, "🧹 Cleared stale registration for an empty queue");
+            return true;
+        }
+
+        if (registered != null && armedAt == head.wakeAt()) {
+            return false;
+        }
+        Log.d(TAG, registered == null
+            ? "🩹 Registration missing for " + head + " - re-arming"
+            : "🩹 Registration stale (armed at " + armedAt + ", head wakes at " + head.wakeAt() + ") - re-arming");
+        armedAt = NOT_ARMED;
+        arm();
+        return true;
+    }
+
+    /**
+     * Resolve alarms that were due before {@code now} but never fired because the system
+     * dropped the registration (reboot, force-stop). Alarms inside their missed-alarm grace
+     * window stay queued and ring as soon as the queue is re-armed; the rest are dropped,
+     * recurring ones moved to their next occurrence. Nothing is re-armed here.
+     *
+     * @param advanced receives the recurring alarms that were moved forward
+     * @return the alarms counted as missed, as they were queued
+     */
+    public synchronized List<QueuedAlarm> resolveMissed(long now, List<QueuedAlarm> advanced) {
+        List<QueuedAlarm> missed = new ArrayList<>();
+        if (probeRegistration() != null) {
+            // Still registered - a late alarm is only being held back by the system
+            return missed;
+        }
+        for (QueuedAlarm alarm : heap.snapshot()) {
+            if (alarm.withinMissedGrace(now)) {
+                continue;
+            }
+            drop(alarm.key());
+            if (alarm.isStop()) {
+                // The ringing it would have ended did not survive either
+                continue;
+            }
+            missed.add(alarm);
+            QueuedAlarm next = alarm.nextOccurrence(now);
+            if (next != null) {
+                put(next);
+                advanced.add(next);
+            }
+        }
+        if (!missed.isEmpty()) {
+            replan();
+            persist();
+            Log.d(TAG, "⏭️ " + missed.size() + " alarms missed while unregistered (" + advanced.size() + " advanced)");
+        }
+        return missed;
+    }
+
+    public synchronized boolean contains(String target, String alarmId) {
+        return heap.get(QueuedAlarm.key(target, alarmId)) != null;
+    }
+
+    public synchronized QueuedAlarm find(String target, String alarmId) {
+        return heap.get(QueuedAlarm.key(target, alarmId));
+    }
+
+    private PendingIntent probeRegistration() {
+        Intent probe = new Intent(context, AlarmQueueReceiver.class);
+        probe.setAction(ACTION_QUEUE_FIRE);
+        return PendingIntent.getBroadcast(
+            context,
+            QUEUE_REQUEST_CODE,
+            probe,
+            PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    /**
+     * Add or replace an entry in the heap and the plan, and record it for the next persist()
+     */
+    private void put(QueuedAlarm alarm) {
+        heap.upsert(alarm);
+        planner.put(alarm);
+        pending.put(alarm.key(), alarm);
+    }
+
+    private QueuedAlarm drop(String key) {
+        QueuedAlarm removed = heap.remove(key);
+        if (removed != null) {
+            planner.remove(removed);
+            pending.put(key, null);
+        }
+        return removed;
+    }
+
+    private void replan() {
+        // Reclassified entries are already planned as they are - only the heap needs them
+        for (QueuedAlarm alarm : planner.replan()) {
+            heap.upsert(alarm);
+            pending.put(alarm.key(), alarm);
+            Log.d(TAG, (alarm.promoted ? "⬆️ Promoted " : "⬇️ Demoted ") + alarm + " to " + alarm.priority);
+        }
+    }
+
+    /**
+     * Arm after entries were removed. When the head itself went, the registration is
+     * replaced even if the new head wakes at the same time and with the same API.
+     */
+    private String armAfterRemoval(QueuedAlarm previousHead) {
+        QueuedAlarm head = heap.peek();
+        if (head != null && previousHead != null && !head.key().equals(previousHead.key())) {
+            armedAt = NOT_ARMED;
+        }
+        return arm();
+    }
+
+    private String arm() {
+        QueuedAlarm head = heap.peek();
+        PendingIntent pendingIntent = createFirePendingIntent();
+
+        if (head == null) {
+            if (armedAt != NOT_ARMED) {
+                alarmManager.cancel(pendingIntent);
+                saveArmedAt(NOT_ARMED);
+                Log.d(TAG, "⏹️ Queue empty - AlarmManager entry cleared");
+            }
+            return null;
+        }
+
+        long wakeAt = head.wakeAt();
+        long windowEnd = windowEndFor(head, wakeAt);
+        if (wakeAt == armedAt && windowEnd == armedWindowEnd && head.priority.equals(armedPriority)) {
+            return null;
+        }
+
+        String method;
+        try {
+            if (QueuedAlarm.PRIORITY_CRITICAL.equals(head.priority) || triggersAsAlarmClock(head)) {
+                AlarmManager.AlarmClockInfo info = new AlarmManager.AlarmClockInfo(wakeAt, createShowPendingIntent());
+                alarmManager.setAlarmClock(info, pendingIntent);
+                method = "setAlarmClock";
+            } else if (windowEnd > wakeAt) {
+                alarmManager.setWindow(AlarmManager.RTC_WAKEUP, wakeAt, windowEnd - wakeAt, pendingIntent);
+                method = "setWindow";
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, wakeAt, pendingIntent);
+                method = "setExactAndAllowWhileIdle";
+            } else {
+                alarmManager.setExact(AlarmManager.RTC_WAKEUP, wakeAt, pendingIntent);
+                method = "setExact";
+            }
+        } catch (SecurityException e) {
+            // Exact alarm permission revoked - an inexact wake-up still beats no wake-up
+            Log.w(TAG, "⚠️ Exact alarm not permitted, arming inexact: " + e.getMessage());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                alarmManager.setAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, wakeAt, pendingIntent);
+                method = "setAndAllowWhileIdle";
+            } else {
+                alarmManager.set(AlarmManager.RTC_WAKEUP, wakeAt, pendingIntent);
+                method = "set";
+            }
+        }
+
+        saveArmedAt(wakeAt);
+        armedWindowEnd = windowEnd;
+        armedPriority = head.priority;
+        Log.d(TAG, "⏰ Armed " + head + (wakeAt != head.triggerAt ? " (pre-warm)" : "") + " via " + method);
+        return method;
+    }
+
+    /**
+     * Latest delivery time for a windowed head, or {@code wakeAt} when it must be armed exactly.
+     * The window never reaches past the next alarm's wake-up, since a late windowed
+     * delivery would otherwise hold that alarm back too.
+     */
+    private long windowEndFor(QueuedAlarm head, long wakeAt) {
+        if (!QueuedAlarm.PRIORITY_WINDOWED.equals(head.priority) || head.windowMs <= 0) {
+            return wakeAt;
+        }
+        long windowEnd = wakeAt + head.windowMs;
+        QueuedAlarm next = heap.peekSecond();
+        if (next != null) {
+            windowEnd = Math.min(windowEnd, next.wakeAt());
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE &&
+            windowEnd - wakeAt < MIN_PLATFORM_WINDOW_MS) {
+            return wakeAt;
+        }
+        return Math.max(wakeAt, windowEnd);
+    }
+
+    /**
+     * Rebases a slice of the queue; slices above the threshold are split in half
+     */
+    private static class RebaseTask extends RecursiveAction {
+        private final QueuedAlarm[] source;
+        private final QueuedAlarm[] target;
+        private final int from;
+        private final int to;
+        private final ZoneId zone;
+        private final long now;
+
+        RebaseTask(QueuedAlarm[] source, QueuedAlarm[] target, int from, int to, ZoneId zone, long now) {
+            this.source = source;
+            this.target = target;
+            this.from = from;
+            this.to = to;
+            this.zone = zone;
+            this.now = now;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= RECOMPUTE_SLICE) {
+                for (int i = from; i < to; i++) {
+                    target[i] = source[i].rebased(zone, now);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(
+                new RebaseTask(source, target, from, mid, zone, now),
+                new RebaseTask(source, target, mid, to, zone, now)
+            );
+        }
+    }
+
+    private PendingIntent createFirePendingIntent() {
+        Intent intent = new Intent(context, AlarmQueueReceiver.class);
+        intent.setAction(ACTION_QUEUE_FIRE);
+        return PendingIntent.getBroadcast(
+            context,
+            QUEUE_REQUEST_CODE,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private PendingIntent createShowPendingIntent() {
+        Intent showIntent = context.getPackageManager().getLaunchIntentForPackage(context.getPackageName());
+        if (showIntent == null) {
+            showIntent = new Intent();
+        }
+        return PendingIntent.getActivity(
+            context,
+            QUEUE_REQUEST_CODE,
+            showIntent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private void saveArmedAt(long triggerAt) {
+        armedAt = triggerAt;
+        prefs.edit().putLong(KEY_ARMED_AT, triggerAt).apply();
+    }
+
+    /**
+     * Append the changes since the last call as one log record
+     */
+    private void persist() {
+        publishNextAlarm();
+        log.append(pending);
+        pending.clear();
+        if (log.needsCompaction(heap.size())) {
+            log.compact(heap.snapshot());
+        }
+    }
+
+    /**
+     * Every change goes through persist(), so this is the one place the next alarm can move
+     */
+    private void publishNextAlarm() {
+        NextAlarm next = NextAlarm.of(planner.firstRinging());
+        if (NextAlarm.same(next, nextAlarm)) {
+            return;
+        }
+        nextAlarm = next;
+        Log.d(TAG, "⏭️ Next alarm is now " + next);
+        for (NextAlarm.Listener listener : nextAlarmListeners) {
+            listener.onNextAlarmChanged(next);
+        }
+    }
+
+    private void load() {
+        if (log.exists()) {
+            for (QueuedAlarm alarm : log.load().values()) {
+                heap.upsert(alarm);
+                planner.put(alarm);
+            }
+            Log.d(TAG, "📂 Loaded " + heap.size() + " queued alarms");
+            return;
+        }
+        String stored = prefs.getString(KEY_ENTRIES, null);
+        if (stored != null) {
+            try {
+                JSONArray entries = new JSONArray(stored);
+                for (int i = 0; i < entries.length(); i++) {
+                    QueuedAlarm alarm = QueuedAlarm.fromJson(entries.getJSONObject(i));
+                    heap.upsert(alarm);
+                    planner.put(alarm);
+                }
+                Log.d(TAG, "📂 Loaded " + heap.size() + " queued alarms from preferences");
+            } catch (JSONException e) {
+                Log.e(TAG, "❌ Failed to load alarm queue", e);
+            }
+        }
+        log.compact(heap.snapshot());
+        if (log.exists()) {
+            prefs.edit().remove(KEY_ENTRIES).apply();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Append-only change log that persists {@link AlarmQueue}.
+ *
+ * The queue used to serialize every entry into one SharedPreferences string on
+ * each change, so scheduling a single alarm cost I/O proportional to the whole
+ * queue. Each change now appends only the entries it touched.
+ *
+ * Key design decisions:
+ * 1. Records are [length][CRC32][payload] like {@link RingingJournal}; replay stops
+ *    at the first short or corrupt record, so a write torn by the process dying
+ *    loses only that change
+ * 2. One record holds every upsert and removal of one queue operation, so a batch
+ *    schedule or a pop with its re-queued occurrences is replayed all or nothing
+ * 3. Appends are not synced, matching the SharedPreferences apply() they replace;
+ *    a compaction is synced before it is renamed over the log
+ * 4. Once the log holds COMPACT_FACTOR times more entry writes than live entries it
+ *    is rewritten as a single snapshot record, which keeps replay and disk use
+ *    proportional to the queue and the write cost amortized O(1) per change
+ * 5. The file lives in device-protected storage, so the queue can be re-armed
+ *    before the first unlock
+ */
+final class AlarmQueueLog {
+
+    private static final String TAG = "AlarmQueueLog";
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+    private static final int COMPACT_FACTOR = 2;
+    private static final int MIN_COMPACT_WRITES = 64;
+
+    private static final byte CHANGES = 1;
+    private static final byte SNAPSHOT = 2;
+    private static final byte UPSERT = 1;
+    private static final byte REMOVE = 2;
+
+    private final File file;
+    // Entry writes in the log since it was last compacted
+    private int writes;
+
+    AlarmQueueLog(Context context, String name) {
+        this.file = new File(DirectBootStorage.forFile(context, name).getFilesDir(), name);
+    }
+
+    boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Replay the log into the queue's entries, keyed by {@link QueuedAlarm#key()}
+     */
+    Map<String, QueuedAlarm> load() {
+        Map<String, QueuedAlarm> entries = new LinkedHashMap<>();
+        writes = 0;
+        if (!file.exists()) {
+            return entries;
+        }
+        DataInputStream in = null;
+        long intact = 0;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            while (true) {
+                byte[] payload = readRecord(in);
+                if (payload == null) {
+                    break;
+                }
+                writes += apply(entries, new DataInputStream(new ByteArrayInputStream(payload)));
+                intact += 8 + payload.length;
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "❌ Failed to read alarm queue log", e);
+        } finally {
+            closeQuietly(in);
+        }
+        if (intact < file.length()) {
+            // Later appends would land behind the torn record and never be replayed
+            truncate(intact);
+        }
+        return entries;
+    }
+
+    /**
+     * Append one operation's changes; a null value removes the entry with that key
+     */
+    void append(Map<String, QueuedAlarm> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(CHANGES);
+            out.writeInt(changes.size());
+            for (Map.Entry<String, QueuedAlarm> change : changes.entrySet()) {
+                if (change.getValue() != null) {
+                    out.writeByte(UPSERT);
+                    writeLongString(out, change.getValue().toJson().toString());
+                } else {
+                    out.writeByte(REMOVE);
+                    out.writeUTF(change.getKey());
+                }
+            }
+            if (write(bytes.toByteArray(), file, true, false)) {
+                writes += changes.size();
+            }
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "❌ Failed to append to alarm queue log", e);
+        }
+    }
+
+    boolean needsCompaction(int live) {
+        return writes > Math.max(MIN_COMPACT_WRITES, COMPACT_FACTOR * live);
+    }
+
+    /**
+     * Replace the log with a single snapshot of the live entries
+     */
+    void compact(Collection<QueuedAlarm> live) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(SNAPSHOT);
+            out.writeInt(live.size());
+            for (QueuedAlarm alarm : live) {
+                writeLongString(out, alarm.toJson().toString());
+            }
+            if (!write(bytes.toByteArray(), temp, false, true)) {
+                return;
+            }
+            if (!temp.renameTo(file)) {
+                Log.w(TAG, "⚠️ Could not replace alarm queue log with its compaction");
+                temp.delete();
+                return;
+            }
+            writes = live.size();
+            Log.d(TAG, "🗜️ Compacted alarm queue log to " + live.size() + " entries");
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "❌ Failed to compact alarm queue log", e);
+            temp.delete();
+        }
+    }
+
+    /**
+     * Decode a whole record before touching the entries, so a bad one is not half applied
+     *
+     * @return the number of entry writes the record held
+     */
+    private static int apply(Map<String, QueuedAlarm> entries, DataInputStream in) throws IOException, JSONException {
+        byte type = in.readByte();
+        int count = in.readInt();
+        Map<String, QueuedAlarm> changes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            if (type == SNAPSHOT || in.readByte() == UPSERT) {
+                QueuedAlarm alarm = QueuedAlarm.fromJson(new JSONObject(readLongString(in)));
+                changes.put(alarm.key(), alarm);
+            } else {
+                changes.put(in.readUTF(), null);
+            }
+        }
+        if (type == SNAPSHOT) {
+            entries.clear();
+        }
+        for (Map.Entry<String, QueuedAlarm> change : changes.entrySet()) {
+            if (change.getValue() != null) {
+                entries.put(change.getKey(), change.getValue());
+            } else {
+                entries.remove(change.getKey());
+            }
+        }
+        return count;
+    }
+
+    private void truncate(long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+            Log.w(TAG, "⚠️ Dropped torn tail of alarm queue log at " + length + " bytes");
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to truncate alarm queue log", e);
+        } finally {
+            closeQuietly(raf);
+        }
+    }
+
+    /**
+     * Write one framed record
+     */
+    private static boolean write(byte[] payload, File target, boolean append, boolean sync) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(target, append);
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+            out.flush();
+            if (sync) {
+                stream.getFD().sync();
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to write alarm queue log", e);
+            return false;
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Next intact payload, or null at the end of the file or at a torn tail
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        int length;
+        int expected;
+        byte[] payload;
+        try {
+            length = in.readInt();
+            expected = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES) {
+                Log.w(TAG, "⚠️ Corrupt record length " + length + " - ignoring the rest of the log");
+                return null;
+            }
+            payload = new byte[length];
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != expected) {
+            Log.w(TAG, "⚠️ Torn queue log record - ignoring the rest of the log");
+            return null;
+        }
+        return payload;
+    }
+
+    // writeUTF is limited to 64 KB, which a long label could exceed
+    private static void writeLongString(DataOutputStream out, String value) throws IOException {
+        byte[] utf8 = value.getBytes("UTF-8");
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    private static String readLongString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("Corrupt entry length " + length);
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, "UTF-8");
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
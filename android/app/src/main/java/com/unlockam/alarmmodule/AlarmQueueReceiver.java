@@ -0,0 +1,187 @@
+package com.unlockam.alarmmodule;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.PowerManager;
+import android.util.Log;
+import androidx.core.content.ContextCompat;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives the single AlarmManager wake-up owned by {@link AlarmQueue}.
+ *
+ * Every due alarm is handed to the receiver of the stack that scheduled it,
+ * alarms that reached their pre-warm time are prepared by {@link AlarmPrewarmer},
+ * then the next alarm in the queue is armed. Stop entries end a ringing alarm by
+ * sending STOP_ALARM straight to its service. After boot or an app update
+ * {@link AlarmReconciler} repairs whatever registrations the system dropped -
+ * already on LOCKED_BOOT_COMPLETED, since all alarm storage is device-protected.
+ * When the user changes the clock or time zone, every wall-clock alarm is
+ * recomputed in one batched pass and the queue is re-armed.
+ */
+public class AlarmQueueReceiver extends BroadcastReceiver {
+
+    private static final String TAG = "AlarmQueueReceiver";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        Log.d(TAG, "⏰ AlarmQueueReceiver triggered: " + action);
+
+        PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        PowerManager.WakeLock wakeLock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "UnlockAM:AlarmQueue");
+        wakeLock.acquire(10000);
+
+        try {
+            AlarmQueue queue = AlarmQueue.getInstance(context);
+
+            if (AlarmQueue.ACTION_QUEUE_FIRE.equals(action)) {
+                dispatchDueAlarms(context, queue);
+                queue.rearm();
+                AlarmReconciler.onQueueFired(context);
+            } else if (Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action) ||
+                       Intent.ACTION_BOOT_COMPLETED.equals(action) ||
+                       Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+                AlarmReconciler.reconcileFromReceiver(context, goAsync());
+            } else if (Intent.ACTION_TIME_CHANGED.equals(action) ||
+                       Intent.ACTION_TIMEZONE_CHANGED.equals(action)) {
+                List<QueuedAlarm> moved = queue.recomputeWallClock(ZoneId.systemDefault(), System.currentTimeMillis());
+                syncAlarmyStore(context, moved);
+            }
+        } finally {
+            if (wakeLock.isHeld()) {
+                wakeLock.release();
+            }
+        }
+    }
+
+    /**
+     * The Alarmy stack keeps its own copy of each trigger time for boot recovery
+     */
+    private void syncAlarmyStore(Context context, List<QueuedAlarm> moved) {
+        MappedAlarmStore store = null;
+        for (QueuedAlarm alarm : moved) {
+            if (!QueuedAlarm.TARGET_ALARMY.equals(alarm.target)) {
+                continue;
+            }
+            if (store == null) {
+                store = MappedAlarmStore.getInstance(context);
+            }
+            try {
+                store.put(Integer.parseInt(alarm.alarmId), alarm.triggerAt, alarm.label, alarm.missedGraceMs);
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "⚠️ Alarmy alarm with non-numeric ID " + alarm.alarmId + " not stored");
+            }
+        }
+    }
+
+    private void dispatchDueAlarms(Context context, AlarmQueue queue) {
+        AlarmQueue.DueAlarms due = queue.popDue(System.currentTimeMillis());
+        Log.d(TAG, "🔔 " + due.fire.size() + " alarm(s) due, " + due.prewarm.size() + " to pre-warm");
+
+        // Stops go first, so a session that just ended never swallows the next alarm
+        for (QueuedAlarm alarm : due.fire) {
+            if (alarm.isStop()) {
+                dispatchStop(context, alarm);
+            }
+        }
+
+        // Fire first - pre-warming must never delay an alarm that is already due.
+        // Production alarms that fire together share one ringing session.
+        List<QueuedAlarm> session = new ArrayList<>();
+        List<QueuedAlarm> alarmy = new ArrayList<>();
+        for (QueuedAlarm alarm : due.fire) {
+            if (alarm.isStop()) {
+                continue;
+            }
+            if (QueuedAlarm.TARGET_PRODUCTION.equals(alarm.target)) {
+                session.add(alarm);
+                continue;
+            }
+            try {
+                context.sendBroadcast(alarm.toTriggerIntent(context));
+                Log.d(TAG, "✅ Dispatched " + alarm);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to dispatch " + alarm, e);
+            }
+            if (QueuedAlarm.TARGET_ALARMY.equals(alarm.target)) {
+                alarmy.add(alarm);
+            }
+        }
+        if (!session.isEmpty()) {
+            try {
+                context.sendBroadcast(QueuedAlarm.toSessionTriggerIntent(context, session));
+                Log.d(TAG, "✅ Dispatched ringing session of " + session.size() + ": " + session);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to dispatch ringing session " + session, e);
+            }
+            syncRegistry(context, queue, session);
+        }
+        if (!alarmy.isEmpty()) {
+            syncAlarmyFired(context, queue, alarmy);
+        }
+
+        for (QueuedAlarm alarm : due.prewarm) {
+            try {
+                AlarmPrewarmer.prewarm(context, alarm);
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to pre-warm " + alarm, e);
+            }
+        }
+    }
+
+    /**
+     * Move fired production alarms forward in the boot-restore registry - after dispatch,
+     * so the database write never delays the ringing
+     */
+    private void syncRegistry(Context context, AlarmQueue queue, List<QueuedAlarm> fired) {
+        try {
+            List<QueuedAlarm> next = new ArrayList<>();
+            for (QueuedAlarm alarm : fired) {
+                next.add(queue.find(alarm.target, alarm.alarmId));
+            }
+            ProductionAlarmRegistry.getInstance(context).recordFired(fired, next);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to update alarm registry", e);
+        }
+    }
+
+    /**
+     * Drop fired one-shot Alarmy alarms from their boot-recovery store and move recurring
+     * ones to the occurrence the queue re-armed, so a reconcile inside the grace window
+     * never rings the same alarm twice or later reports it as missed
+     */
+    private void syncAlarmyFired(Context context, AlarmQueue queue, List<QueuedAlarm> fired) {
+        try {
+            MappedAlarmStore store = MappedAlarmStore.getInstance(context);
+            for (QueuedAlarm alarm : fired) {
+                int alarmId;
+                try {
+                    alarmId = Integer.parseInt(alarm.alarmId);
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                QueuedAlarm next = queue.find(alarm.target, alarm.alarmId);
+                if (next != null) {
+                    store.put(alarmId, next.triggerAt, next.label, next.missedGraceMs);
+                } else {
+                    store.remove(alarmId);
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to update Alarmy alarm store", e);
+        }
+    }
+
+    private void dispatchStop(Context context, QueuedAlarm stop) {
+        try {
+            ContextCompat.startForegroundService(context, stop.toTriggerIntent(context));
+            Log.d(TAG, "⏹️ Dispatched auto-stop " + stop);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to dispatch auto-stop " + stop, e);
+        }
+    }
+}
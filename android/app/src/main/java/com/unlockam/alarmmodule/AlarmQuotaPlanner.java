@@ -0,0 +1,309 @@
+package com.unlockam.alarmmodule;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Models the Doze idle quota for the alarms in {@link AlarmQueue}.
+ *
+ * While the device is idle, setExactAndAllowWhileIdle fires at most about once
+ * every 9 minutes per app; anything sooner is silently held back. Back-to-back
+ * reminders therefore slide by minutes unless something is done about it.
+ *
+ * Key design decisions:
+ * 1. The plan assumes the worst case - the device is in Doze for every wake-up -
+ *    and walks the queue in trigger order, charging one wake-up per exact alarm
+ *    against the quota. With a pre-warm lead that is the pre-warm: once pre-warmed,
+ *    the queue arms the trigger with setAlarmClock, which the quota does not cover
+ * 2. Alarms inside the coalescing window of an earlier alarm are merged with it:
+ *    they are popped with that alarm and need no wake-up of their own
+ * 3. An exact alarm the quota would delay is promoted to critical (setAlarmClock),
+ *    which Doze never holds back. Promotion is recorded on the entry and the plan
+ *    always starts from the requested priority, so an alarm is demoted again once
+ *    the conflict is gone
+ * 4. Stop entries are never promoted - an alarm clock icon for the end of a ringing
+ *    window would mislead - and report the quota delay instead
+ * 5. Windowed alarms are never promoted - the caller already accepted lateness -
+ *    and report their window as the delay; Doze may defer them further
+ * 6. The plan is maintained incrementally: alarms are kept in trigger order in a
+ *    tree, each planned alarm remembers the walk state after it, and a replan
+ *    resumes from the earliest change and stops as soon as the state matches what
+ *    it was past the last change - O(log n) plus the alarms actually affected
+ */
+public final class AlarmQuotaPlanner {
+
+    public static final long IDLE_QUOTA_INTERVAL_MS = 9 * 60 * 1000L;
+    public static final long NO_QUOTA_USED = Long.MIN_VALUE;
+
+    private static final Comparator<QueuedAlarm> BY_TRIGGER = new Comparator<QueuedAlarm>() {
+        @Override
+        public int compare(QueuedAlarm a, QueuedAlarm b) {
+            int byTime = Long.compare(a.triggerAt, b.triggerAt);
+            return byTime != 0 ? byTime : a.key().compareTo(b.key());
+        }
+    };
+
+    /**
+     * Planned delivery of one alarm
+     */
+    public static class Entry {
+        // The queue entry as it should be armed (possibly promoted or demoted)
+        public final QueuedAlarm alarm;
+        public final long worstCaseDelayMs;
+        // Alarm ID of the earlier alarm this one is popped with, or null
+        public final String mergedWith;
+        // Doze may hold this alarm back beyond worstCaseDelayMs
+        public final boolean dozeDeferrable;
+
+        Entry(QueuedAlarm alarm, long worstCaseDelayMs, String mergedWith, boolean dozeDeferrable) {
+            this.alarm = alarm;
+            this.worstCaseDelayMs = worstCaseDelayMs;
+            this.mergedWith = mergedWith;
+            this.dozeDeferrable = dozeDeferrable;
+        }
+    }
+
+    /**
+     * Walk state after an alarm has been planned: when the quota is free again and
+     * the cluster later alarms may merge into
+     */
+    private static final class State {
+        final long quotaFreeAt;
+        // Null until the first cluster starts
+        final String clusterKey;
+        final String clusterAlarmId;
+        final long clusterTriggerAt;
+        final long clusterDeliveredAt;
+        final boolean clusterDeferrable;
+
+        State(long quotaFreeAt, String clusterKey, String clusterAlarmId, long clusterTriggerAt,
+              long clusterDeliveredAt, boolean clusterDeferrable) {
+            this.quotaFreeAt = quotaFreeAt;
+            this.clusterKey = clusterKey;
+            this.clusterAlarmId = clusterAlarmId;
+            this.clusterTriggerAt = clusterTriggerAt;
+            this.clusterDeliveredAt = clusterDeliveredAt;
+            this.clusterDeferrable = clusterDeferrable;
+        }
+
+        boolean sameAs(State other) {
+            return quotaFreeAt == other.quotaFreeAt &&
+                clusterTriggerAt == other.clusterTriggerAt &&
+                clusterDeliveredAt == other.clusterDeliveredAt &&
+                clusterDeferrable == other.clusterDeferrable &&
+                (clusterKey == null ? other.clusterKey == null : clusterKey.equals(other.clusterKey));
+        }
+    }
+
+    private static final class Step {
+        final Entry entry;
+        final State after;
+
+        Step(Entry entry, State after) {
+            this.entry = entry;
+            this.after = after;
+        }
+    }
+
+    private final boolean idleQuota;
+    private long coalesceWindowMs;
+    private long lastQuotaUseAt = NO_QUOTA_USED;
+
+    // Trigger order; a null step means the alarm has not been planned yet
+    private final TreeMap<QueuedAlarm, Step> steps = new TreeMap<>(BY_TRIGGER);
+    private final Map<String, QueuedAlarm> positions = new HashMap<>();
+    // Earliest and latest trigger-order positions changed since the last replan
+    private QueuedAlarm dirtyFrom;
+    private QueuedAlarm dirtyTo;
+
+    /**
+     * @param idleQuota false where Doze does not exist (before Android 6) - nothing is throttled
+     */
+    public AlarmQuotaPlanner(boolean idleQuota, long coalesceWindowMs) {
+        this.idleQuota = idleQuota;
+        this.coalesceWindowMs = coalesceWindowMs;
+    }
+
+    /**
+     * Add an alarm, or replace the one with the same key
+     */
+    public void put(QueuedAlarm alarm) {
+        QueuedAlarm old = positions.put(alarm.key(), alarm);
+        if (old != null) {
+            steps.remove(old);
+            markDirty(old);
+        }
+        steps.put(alarm, null);
+        markDirty(alarm);
+    }
+
+    public void remove(QueuedAlarm alarm) {
+        QueuedAlarm old = positions.remove(alarm.key());
+        if (old != null) {
+            steps.remove(old);
+            markDirty(old);
+        }
+    }
+
+    /**
+     * Merges change with the window, so everything is replanned
+     */
+    public void setCoalesceWindowMs(long windowMs) {
+        if (windowMs != coalesceWindowMs && !steps.isEmpty()) {
+            markDirty(steps.firstKey());
+            markDirty(steps.lastKey());
+        }
+        coalesceWindowMs = windowMs;
+    }
+
+    /**
+     * When the queue last woke through the idle quota, or {@link #NO_QUOTA_USED}
+     */
+    public void setLastQuotaUseAt(long at) {
+        if (at != lastQuotaUseAt && !steps.isEmpty()) {
+            markDirty(steps.firstKey());
+        }
+        lastQuotaUseAt = at;
+    }
+
+    /**
+     * Bring the plan up to date with the changes since the last call.
+     *
+     * @return entries whose priority changed and have to be written back to the queue
+     */
+    public List<QueuedAlarm> replan() {
+        List<QueuedAlarm> reclassified = new ArrayList<>();
+        if (dirtyFrom == null) {
+            return reclassified;
+        }
+        Map.Entry<QueuedAlarm, Step> before = steps.lowerEntry(dirtyFrom);
+        State state = before != null ? before.getValue().after : initialState();
+        for (Map.Entry<QueuedAlarm, Step> position : steps.tailMap(dirtyFrom, true).entrySet()) {
+            Step old = position.getValue();
+            // The step holds the entry as last planned, which may have been reclassified since
+            QueuedAlarm alarm = old != null ? old.entry.alarm : position.getKey();
+            Step step = planOne(alarm, state, reclassified);
+            position.setValue(step);
+            state = step.after;
+            if (old != null && BY_TRIGGER.compare(position.getKey(), dirtyTo) > 0 && old.after.sameAs(state)) {
+                // Past every change and back on the old walk - the rest of the plan still holds
+                break;
+            }
+        }
+        dirtyFrom = null;
+        dirtyTo = null;
+        return reclassified;
+    }
+
+    /**
+     * How this alarm is expected to be delivered, or null if it is not planned
+     */
+    public Entry get(QueuedAlarm alarm) {
+        QueuedAlarm position = positions.get(alarm.key());
+        Step step = position != null ? steps.get(position) : null;
+        return step != null ? step.entry : null;
+    }
+
+    /**
+     * The earliest entry that rings (not a stop entry), or null
+     */
+    public QueuedAlarm firstRinging() {
+        for (Map.Entry<QueuedAlarm, Step> position : steps.entrySet()) {
+            QueuedAlarm alarm = position.getValue() != null ? position.getValue().entry.alarm : position.getKey();
+            if (!alarm.isStop()) {
+                return alarm;
+            }
+        }
+        return null;
+    }
+
+    private void markDirty(QueuedAlarm position) {
+        if (dirtyFrom == null || BY_TRIGGER.compare(position, dirtyFrom) < 0) {
+            dirtyFrom = position;
+        }
+        if (dirtyTo == null || BY_TRIGGER.compare(position, dirtyTo) > 0) {
+            dirtyTo = position;
+        }
+    }
+
+    private State initialState() {
+        long quotaFreeAt = lastQuotaUseAt == NO_QUOTA_USED ? NO_QUOTA_USED : lastQuotaUseAt + IDLE_QUOTA_INTERVAL_MS;
+        return new State(quotaFreeAt, null, null, 0, 0, false);
+    }
+
+    private Step planOne(QueuedAlarm alarm, State state, List<QueuedAlarm> reclassified) {
+        String requested = alarm.requestedPriority();
+
+        if (state.clusterKey != null && coalesceWindowMs > 0 &&
+            alarm.triggerAt <= state.clusterTriggerAt + coalesceWindowMs && !alarm.isStop()) {
+            QueuedAlarm planned = reclassify(reclassified, alarm, requested, false);
+            long delay = Math.max(0, state.clusterDeliveredAt - alarm.triggerAt);
+            return new Step(new Entry(planned, delay, state.clusterAlarmId, state.clusterDeferrable), state);
+        }
+
+        long quotaFreeAt = state.quotaFreeAt;
+        long deliveredAt;
+        Entry entry;
+        if (QueuedAlarm.PRIORITY_CRITICAL.equals(requested)) {
+            deliveredAt = alarm.triggerAt;
+            entry = new Entry(reclassify(reclassified, alarm, requested, false), 0, null, false);
+        } else if (QueuedAlarm.PRIORITY_WINDOWED.equals(requested)) {
+            // setWindow is not an allow-while-idle call - it waits for a maintenance window instead
+            deliveredAt = alarm.triggerAt + alarm.windowMs;
+            entry = new Entry(reclassify(reclassified, alarm, requested, false), alarm.windowMs, null, true);
+        } else {
+            long[] wake = idleQuota ? chargeQuota(alarm, quotaFreeAt) : new long[] { alarm.triggerAt, NO_QUOTA_USED };
+            boolean promote = wake[0] > alarm.triggerAt && !alarm.isStop();
+            if (promote) {
+                // setAlarmClock leaves the quota untouched and is never held back
+                deliveredAt = alarm.triggerAt;
+            } else {
+                deliveredAt = wake[0];
+                if (wake[1] != NO_QUOTA_USED) {
+                    quotaFreeAt = wake[1] + IDLE_QUOTA_INTERVAL_MS;
+                }
+            }
+            long delay = promote ? 0 : wake[0] - alarm.triggerAt;
+            entry = new Entry(reclassify(reclassified, alarm, requested, promote), delay, null, false);
+        }
+        return new Step(entry, new State(quotaFreeAt, alarm.key(), alarm.alarmId, alarm.triggerAt, deliveredAt,
+            QueuedAlarm.PRIORITY_WINDOWED.equals(requested)));
+    }
+
+    /**
+     * Deliver an exact alarm through the quota - one charged wake-up per alarm.
+     *
+     * @return {delivery time of the trigger, time of the quota-charged wake-up or NO_QUOTA_USED}
+     */
+    private static long[] chargeQuota(QueuedAlarm alarm, long quotaFreeAt) {
+        if (alarm.prewarmLeadMs > 0) {
+            if (alarm.prewarmed) {
+                // The pre-warm already paid; the trigger goes out through setAlarmClock
+                return new long[] { alarm.triggerAt, NO_QUOTA_USED };
+            }
+            long prewarmWake = Math.max(alarm.triggerAt - alarm.prewarmLeadMs, quotaFreeAt);
+            if (prewarmWake >= alarm.triggerAt) {
+                // The pre-warm wake-up slid past the trigger, so it fires the alarm itself
+                return new long[] { prewarmWake, prewarmWake };
+            }
+            return new long[] { alarm.triggerAt, prewarmWake };
+        }
+        long wake = Math.max(alarm.triggerAt, quotaFreeAt);
+        return new long[] { wake, wake };
+    }
+
+    private static QueuedAlarm reclassify(List<QueuedAlarm> reclassified, QueuedAlarm alarm, String requested,
+                                          boolean promote) {
+        String priority = promote ? QueuedAlarm.PRIORITY_CRITICAL : requested;
+        if (alarm.promoted == promote && alarm.priority.equals(priority)) {
+            return alarm;
+        }
+        QueuedAlarm updated = alarm.toBuilder().setPriority(priority).setPromoted(promote).build();
+        reclassified.add(updated);
+        return updated;
+    }
+}
@@ -26,6 +26,7 @@ public class AlarmReceiver extends BroadcastReceiver {
             serviceIntent.putExtra("soundType", soundType);
             serviceIntent.putExtra("vibration", vibration);
             serviceIntent.putExtra("label", label);
+            VolumeRamp.fromIntent(intent).putExtras(serviceIntent);
         }
         
         serviceIntent.putExtra("alarmId", alarmId);
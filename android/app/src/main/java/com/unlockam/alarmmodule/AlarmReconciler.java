@@ -0,0 +1,385 @@
+package com.unlockam.alarmmodule;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Armed-state reconciliation after task killers, force-stops, updates and reboots.
+ *
+ * Instead of re-scheduling every stored alarm, this compares what is persisted
+ * with what the system still holds and repairs only the difference.
+ *
+ * Key design decisions:
+ * 1. The queue's single PendingIntent is probed with FLAG_NO_CREATE; it is
+ *    re-armed only when it is missing or was armed for a different wake-up
+ * 2. {@link MappedAlarmStore} is the registry for Alarmy-style alarms and
+ *    {@link ProductionAlarmRegistry} for production alarms; future entries
+ *    missing from the queue are re-queued in one batch
+ * 3. Everything runs in one background pass - requests of the same kind that
+ *    arrive while such a pass is still waiting to run (several receivers get the
+ *    boot broadcast) share that pass, and each is called back only once it has
+ *    finished; a full reconcile never rides on a lazy boot restore or vice versa
+ * 4. All registries are in device-protected storage, so the pass after a reboot
+ *    runs on LOCKED_BOOT_COMPLETED; its latency is reported from boot, not unlock
+ * 5. Boot and update receivers run the pass under goAsync() instead of starting a
+ *    foreground service; a pass that overruns the budget is handed to
+ *    {@link AlarmRestoreJobService}
+ * 6. Boot restore is lazy: the receiver pass only restores alarms due within
+ *    {@link #BOOT_EAGER_WINDOW_MS}, plus each registry's first alarm beyond it, and
+ *    re-arms the head. The long tail is left to an idle-constrained job. Because
+ *    the earliest unrestored alarm is never before the armed head, the next queue
+ *    wake-up runs the full pass itself if the job has not run by then
+ * 7. Past-due alarms are classified in the same pass over each store: inside their
+ *    own grace window they are queued and ring at once; past it they are recorded
+ *    in {@link MissedAlarmLog}, and recurring ones move to their next occurrence
+ */
+public final class AlarmReconciler {
+
+    private static final String TAG = "AlarmReconciler";
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final Object LOCK = new Object();
+    // Callbacks of the pass of each kind waiting to run, or null when none is waiting
+    private static List<Callback> waitingReconcile;
+    private static List<Callback> waitingRestore;
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+    private static final String PREFS_NAME = "UnlockAM_Reconciler";
+    private static final String KEY_DEFERRED_RESTORE = "deferred_restore";
+
+    // goAsync() allows about 10 seconds; finish well inside that
+    static final long RECEIVER_BUDGET_MS = 8000L;
+    // Alarms due this soon after boot are restored by the receiver pass itself
+    public static final long BOOT_EAGER_WINDOW_MS = 30 * 60 * 1000L;
+
+    private AlarmReconciler() {
+    }
+
+    /**
+     * What one reconciliation pass repaired
+     */
+    public static class Report {
+        public int probed;
+        public boolean rearmed;
+        public int restored;
+        // Past their grace window when found - recorded in MissedAlarmLog, not rung
+        public int missed;
+        // Time since boot when the pass finished
+        public long sinceBootMs;
+
+        public int repaired() {
+            return (rearmed ? 1 : 0) + restored;
+        }
+
+        @Override
+        public String toString() {
+            return "probed=" + probed + ", rearmed=" + rearmed + ", restored=" + restored +
+                ", missed=" + missed + ", sinceBootMs=" + sinceBootMs;
+        }
+    }
+
+    public interface Callback {
+        void onReconciled(Report report);
+    }
+
+    /**
+     * Run a pass on the background thread; {@code callback} may be null. A request
+     * folded into a pass already waiting to run is called back when that pass ends,
+     * with its report - null only if the pass failed
+     */
+    public static void reconcileInBackground(Context context, Callback callback) {
+        submit(context.getApplicationContext(), callback, false);
+    }
+
+    /**
+     * Called after every queue wake-up: finishes a deferred boot restore the
+     * idle job has not got to yet
+     */
+    public static void onQueueFired(Context context) {
+        if (prefs(context).getBoolean(KEY_DEFERRED_RESTORE, false)) {
+            Log.d(TAG, "⏰ Queue woke before the deferred restore ran - finishing it now");
+            reconcileInBackground(context, null);
+        }
+    }
+
+    /**
+     * Run a lazy boot restore for a boot or update broadcast and finish {@code pending}
+     * within the receiver budget, handing an overrunning pass to a job
+     */
+    public static void reconcileFromReceiver(Context context, final BroadcastReceiver.PendingResult pending) {
+        final Context appContext = context.getApplicationContext();
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        final Runnable overBudget = new Runnable() {
+            @Override
+            public void run() {
+                if (finished.compareAndSet(false, true)) {
+                    Log.w(TAG, "⏱️ Restore overran the receiver budget - continuing in a job");
+                    AlarmRestoreJobService.schedule(appContext);
+                    pending.finish();
+                }
+            }
+        };
+        MAIN_HANDLER.postDelayed(overBudget, RECEIVER_BUDGET_MS);
+
+        submit(appContext, new Callback() {
+            @Override
+            public void onReconciled(Report report) {
+                if (finished.compareAndSet(false, true)) {
+                    MAIN_HANDLER.removeCallbacks(overBudget);
+                    pending.finish();
+                }
+            }
+        }, true);
+    }
+
+    private static void submit(final Context appContext, final Callback callback, final boolean bootRestore) {
+        final List<Callback> callbacks;
+        synchronized (LOCK) {
+            List<Callback> waiting = bootRestore ? waitingRestore : waitingReconcile;
+            if (waiting != null) {
+                Log.d(TAG, "⏭️ " + (bootRestore ? "Boot restore" : "Reconciliation") + " already pending - sharing that pass");
+                if (callback != null) {
+                    waiting.add(callback);
+                }
+                return;
+            }
+            callbacks = new ArrayList<>();
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+            if (bootRestore) {
+                waitingRestore = callbacks;
+            } else {
+                waitingReconcile = callbacks;
+            }
+        }
+        EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (LOCK) {
+                    // Requests from here on may see state this pass has already read - they get a pass of their own
+                    if (bootRestore) {
+                        waitingRestore = null;
+                    } else {
+                        waitingReconcile = null;
+                    }
+                }
+                Report report = null;
+                try {
+                    report = bootRestore ? restoreNearest(appContext) : reconcile(appContext);
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Reconciliation failed", e);
+                } finally {
+                    // Every request that shared the pass, so a receiver's goAsync() covers all of it
+                    for (Callback shared : callbacks) {
+                        shared.onReconciled(report);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Reconcile everything on the calling thread
+     */
+    public static Report reconcile(Context context) {
+        Report report = run(context, Long.MAX_VALUE);
+        prefs(context).edit().putBoolean(KEY_DEFERRED_RESTORE, false).apply();
+        return report;
+    }
+
+    /**
+     * Restore only the nearest alarms on the calling thread and defer the rest
+     */
+    static Report restoreNearest(Context context) {
+        // Flag first, so a pass cut short still leaves the backstop in place
+        prefs(context).edit().putBoolean(KEY_DEFERRED_RESTORE, true).apply();
+        Report report = run(context, System.currentTimeMillis() + BOOT_EAGER_WINDOW_MS);
+        AlarmRestoreJobService.scheduleDeferred(context);
+        return report;
+    }
+
+    /**
+     * @param horizon restore missing alarms due up to here, plus each registry's first
+     *                alarm beyond it; {@code Long.MAX_VALUE} restores everything
+     */
+    private static Report run(Context context, long horizon) {
+        long started = System.currentTimeMillis();
+        AlarmQueue queue = AlarmQueue.getInstance(context);
+        Report report = new Report();
+        List<QueuedAlarm> missed = new ArrayList<>();
+
+        // Past-due alarms the queue still holds - only if its registration was lost
+        List<QueuedAlarm> advanced = new ArrayList<>();
+        missed.addAll(queue.resolveMissed(started, advanced));
+        syncResolvedMissed(context, missed, advanced);
+
+        List<QueuedAlarm> restore = findMissingAlarmyAlarms(context, queue, started, horizon, missed, report);
+        restore.addAll(findMissingProductionAlarms(context, queue, started, horizon, missed, report));
+        if (!restore.isEmpty()) {
+            // Queuing them may move the head, so do it before probing the registration
+            queue.scheduleAll(restore);
+            report.restored = restore.size();
+        }
+        MissedAlarmLog.record(context, missed, started);
+        report.missed = missed.size();
+
+        report.probed++;
+        report.rearmed = queue.reconcileArmedState();
+        report.sinceBootMs = SystemClock.elapsedRealtime();
+
+        Log.d(TAG, "🩺 Reconciled " + (horizon == Long.MAX_VALUE ? "all" : "nearest") + " in " +
+            (System.currentTimeMillis() - started) + "ms: " + report + " (" + report.repaired() + " repaired)");
+        return report;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return DirectBootStorage.forPreferences(context, PREFS_NAME).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Carry the queue's missed-alarm decisions over to the registries
+     */
+    private static void syncResolvedMissed(Context context, List<QueuedAlarm> missed, List<QueuedAlarm> advanced) {
+        if (missed.isEmpty()) {
+            return;
+        }
+        List<QueuedAlarm> productionAdvanced = new ArrayList<>();
+        List<String> productionDropped = new ArrayList<>();
+        MappedAlarmStore store = MappedAlarmStore.getInstance(context);
+        for (QueuedAlarm alarm : advanced) {
+            if (QueuedAlarm.TARGET_PRODUCTION.equals(alarm.target)) {
+                productionAdvanced.add(alarm);
+            } else if (QueuedAlarm.TARGET_ALARMY.equals(alarm.target)) {
+                putAlarmy(store, alarm);
+            }
+        }
+        for (QueuedAlarm alarm : missed) {
+            if (alarm.isRecurring()) {
+                continue;
+            }
+            if (QueuedAlarm.TARGET_PRODUCTION.equals(alarm.target)) {
+                productionDropped.add(alarm.alarmId);
+            } else if (QueuedAlarm.TARGET_ALARMY.equals(alarm.target)) {
+                removeAlarmy(store, alarm.alarmId);
+            }
+        }
+        ProductionAlarmRegistry registry = ProductionAlarmRegistry.getInstance(context);
+        if (!productionAdvanced.isEmpty()) {
+            registry.upsertAll(productionAdvanced);
+        }
+        if (!productionDropped.isEmpty()) {
+            registry.deleteAll(productionDropped);
+        }
+    }
+
+    private static List<QueuedAlarm> findMissingProductionAlarms(Context context, AlarmQueue queue, long now,
+                                                                 long horizon, List<QueuedAlarm> missed,
+                                                                 Report report) {
+        ProductionAlarmRegistry registry = ProductionAlarmRegistry.getInstance(context);
+        List<QueuedAlarm> restore = new ArrayList<>();
+        List<QueuedAlarm> advanced = new ArrayList<>();
+        List<String> dropped = new ArrayList<>();
+
+        // One pass over the rows: restore, ring late, or count as missed
+        for (QueuedAlarm alarm : registry.loadForRestore(horizon)) {
+            report.probed++;
+            if (queue.contains(alarm.target, alarm.alarmId)) {
+                continue;
+            }
+            if (alarm.withinMissedGrace(now)) {
+                restore.add(alarm);
+                Log.d(TAG, "🩹 Production alarm " + alarm.alarmId + " missing from the queue - restoring");
+                continue;
+            }
+            missed.add(alarm);
+            QueuedAlarm next = alarm.nextOccurrence(now);
+            if (next != null) {
+                advanced.add(next);
+                restore.add(next);
+            } else {
+                dropped.add(alarm.alarmId);
+            }
+            Log.d(TAG, "⏭️ Production alarm " + alarm.alarmId + " missed" + (next != null ? " - advanced" : ""));
+        }
+        if (!advanced.isEmpty()) {
+            registry.upsertAll(advanced);
+        }
+        if (!dropped.isEmpty()) {
+            registry.deleteAll(dropped);
+        }
+        return restore;
+    }
+
+    private static List<QueuedAlarm> findMissingAlarmyAlarms(Context context, AlarmQueue queue, long now,
+                                                             long horizon, List<QueuedAlarm> missed,
+                                                             Report report) {
+        MappedAlarmStore store = MappedAlarmStore.getInstance(context);
+        List<QueuedAlarm> restore = new ArrayList<>();
+        MappedAlarmStore.Record firstBeyond = null;
+
+        // One pass over the store: restore, ring late, or count as missed
+        for (MappedAlarmStore.Record record : store.loadAll()) {
+            if (record.triggerAt > horizon) {
+                if (firstBeyond == null || record.triggerAt < firstBeyond.triggerAt) {
+                    firstBeyond = record;
+                }
+                continue;
+            }
+            String alarmId = String.valueOf(record.alarmId);
+            report.probed++;
+            if (queue.contains(QueuedAlarm.TARGET_ALARMY, alarmId)) {
+                continue;
+            }
+            QueuedAlarm alarm = toQueuedAlarm(record);
+            if (alarm.withinMissedGrace(now)) {
+                restore.add(alarm);
+                Log.d(TAG, "🩹 Alarmy alarm " + alarmId + " missing from the queue - restoring");
+            } else {
+                // The store keeps no recurrence rule, so there is nothing to advance
+                missed.add(alarm);
+                store.remove(record.alarmId);
+                Log.d(TAG, "⏭️ Alarmy alarm " + alarmId + " missed");
+            }
+        }
+        if (firstBeyond != null) {
+            report.probed++;
+            if (!queue.contains(QueuedAlarm.TARGET_ALARMY, String.valueOf(firstBeyond.alarmId))) {
+                restore.add(toQueuedAlarm(firstBeyond));
+            }
+        }
+        return restore;
+    }
+
+    private static QueuedAlarm toQueuedAlarm(MappedAlarmStore.Record record) {
+        return new QueuedAlarm.Builder(QueuedAlarm.TARGET_ALARMY, String.valueOf(record.alarmId), record.triggerAt)
+            .setLabel(record.label)
+            .setMissedGraceMs(record.missedGraceMs)
+            .build();
+    }
+
+    private static void putAlarmy(MappedAlarmStore store, QueuedAlarm alarm) {
+        try {
+            store.put(Integer.parseInt(alarm.alarmId), alarm.triggerAt, alarm.label, alarm.missedGraceMs);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "⚠️ Alarmy alarm with non-numeric ID " + alarm.alarmId + " not stored");
+        }
+    }
+
+    private static void removeAlarmy(MappedAlarmStore store, String alarmId) {
+        try {
+            store.remove(Integer.parseInt(alarmId));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "⚠️ Alarmy alarm with non-numeric ID " + alarmId + " not stored");
+        }
+    }
+}
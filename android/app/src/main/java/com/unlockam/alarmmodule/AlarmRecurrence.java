@@ -0,0 +1,269 @@
+package com.unlockam.alarmmodule;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+
+/**
+ * Wall-clock rule for alarms: a local time of day plus the zone it is read in.
+ *
+ * Key design decisions:
+ * 1. Rules are resolved through {@link WallClock}, so a daily 07:00 alarm stays at
+ *    07:00 across DST gaps and overlaps instead of drifting by an hour
+ * 2. The next occurrence is computed in Java when the queue fires - no React
+ *    context or JS engine is needed to keep a repeating alarm alive
+ * 3. Weekday masks use the JS Date.getDay() numbering (Sunday = bit 0) so the
+ *    same day sets can be passed straight through from the JS layer
+ * 4. Monthly rules clamp to the last day of short months instead of skipping them
+ * 5. Rules without an explicit zone float with the device: after a time zone
+ *    change they are rebased so 07:00 still means 07:00 where the user is now
+ * 6. "once" rules keep a one-shot alarm tied to its wall-clock time so it can be
+ *    recomputed on a clock or zone change, but are never re-queued after firing
+ */
+public class AlarmRecurrence {
+
+    public static final String TYPE_ONCE = "once";
+    public static final String TYPE_DAILY = "daily";
+    public static final String TYPE_WEEKLY = "weekly";
+    public static final String TYPE_EVERY_N_DAYS = "everyNDays";
+    public static final String TYPE_MONTHLY = "monthly";
+
+    private static final String[] DAY_NAMES = { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" };
+    private static final int ALL_DAYS_MASK = 0x7F;
+
+    public final String type;
+    public final LocalTime time;
+    public final ZoneId zone;
+    // True when the rule follows the device zone rather than a zone chosen by the caller
+    public final boolean floating;
+    public final int daysMask;
+    public final int intervalDays;
+    public final int dayOfMonth;
+    // Local calendar day (days since epoch) that every-N-days rules count from
+    public final long anchorDay;
+
+    private AlarmRecurrence(String type, LocalTime time, ZoneId zone, boolean floating, int daysMask,
+                            int intervalDays, int dayOfMonth, long anchorDay) {
+        this.type = type;
+        this.time = time;
+        this.zone = zone;
+        this.floating = floating;
+        this.daysMask = daysMask;
+        this.intervalDays = intervalDays;
+        this.dayOfMonth = dayOfMonth;
+        this.anchorDay = anchorDay;
+    }
+
+    public static AlarmRecurrence once(int hour, int minute) {
+        return new AlarmRecurrence(TYPE_ONCE, LocalTime.of(hour, minute), ZoneId.systemDefault(), true,
+            ALL_DAYS_MASK, 1, 1, 0);
+    }
+
+    public static AlarmRecurrence daily(int hour, int minute) {
+        return new AlarmRecurrence(TYPE_DAILY, LocalTime.of(hour, minute), ZoneId.systemDefault(), true,
+            ALL_DAYS_MASK, 1, 1, 0);
+    }
+
+    public static AlarmRecurrence weekly(int hour, int minute, int daysMask) {
+        if ((daysMask & ALL_DAYS_MASK) == 0) {
+            throw new IllegalArgumentException("weekly recurrence needs at least one day");
+        }
+        return new AlarmRecurrence(TYPE_WEEKLY, LocalTime.of(hour, minute), ZoneId.systemDefault(), true,
+            daysMask & ALL_DAYS_MASK, 1, 1, 0);
+    }
+
+    public static AlarmRecurrence everyNDays(int hour, int minute, int intervalDays, long anchorMillis) {
+        if (intervalDays < 1) {
+            throw new IllegalArgumentException("intervalDays must be at least 1");
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        return new AlarmRecurrence(TYPE_EVERY_N_DAYS, LocalTime.of(hour, minute), zone, true,
+            ALL_DAYS_MASK, intervalDays, 1, WallClock.toLocal(anchorMillis, zone).toLocalDate().toEpochDay());
+    }
+
+    public static AlarmRecurrence monthly(int hour, int minute, int dayOfMonth) {
+        if (dayOfMonth < 1 || dayOfMonth > 31) {
+            throw new IllegalArgumentException("dayOfMonth must be between 1 and 31");
+        }
+        return new AlarmRecurrence(TYPE_MONTHLY, LocalTime.of(hour, minute), ZoneId.systemDefault(), true,
+            ALL_DAYS_MASK, 1, dayOfMonth, 0);
+    }
+
+    /**
+     * The same rule read in {@code newZone}; pinned rules keep the zone they were given
+     */
+    public AlarmRecurrence withZone(ZoneId newZone, boolean pinned) {
+        return new AlarmRecurrence(type, time, newZone, !pinned, daysMask, intervalDays, dayOfMonth, anchorDay);
+    }
+
+    public boolean isRepeating() {
+        return !TYPE_ONCE.equals(type);
+    }
+
+    /**
+     * First occurrence strictly after {@code afterMillis}
+     */
+    public long nextAfter(long afterMillis) {
+        LocalDate day = WallClock.toLocal(afterMillis, zone).toLocalDate();
+
+        switch (type) {
+            case TYPE_WEEKLY:
+                for (int i = 0; i <= 7; i++, day = day.plusDays(1)) {
+                    int jsDay = day.getDayOfWeek().getValue() % 7;
+                    if ((daysMask & (1 << jsDay)) != 0) {
+                        long candidate = WallClock.resolve(day, time, zone);
+                        if (candidate > afterMillis) {
+                            return candidate;
+                        }
+                    }
+                }
+                throw new IllegalStateException("weekly recurrence has no matching day");
+
+            case TYPE_EVERY_N_DAYS: {
+                long elapsed = day.toEpochDay() - anchorDay;
+                long offset = elapsed <= 0 ? -elapsed : (intervalDays - elapsed % intervalDays) % intervalDays;
+                day = day.plusDays(offset);
+                long candidate = WallClock.resolve(day, time, zone);
+                return candidate > afterMillis ? candidate : WallClock.resolve(day.plusDays(intervalDays), time, zone);
+            }
+
+            case TYPE_MONTHLY: {
+                long candidate = WallClock.resolve(dayOfMonthIn(YearMonth.from(day)), time, zone);
+                return candidate > afterMillis
+                    ? candidate
+                    : WallClock.resolve(dayOfMonthIn(YearMonth.from(day).plusMonths(1)), time, zone);
+            }
+
+            case TYPE_ONCE:
+            case TYPE_DAILY:
+            default: {
+                long candidate = WallClock.resolve(day, time, zone);
+                return candidate > afterMillis ? candidate : WallClock.resolve(day.plusDays(1), time, zone);
+            }
+        }
+    }
+
+    /**
+     * Re-resolve a trigger computed under this rule against {@code rebased} after
+     * the clock or zone changed. Repeating rules simply move to their next
+     * occurrence after {@code now}. A one-shot keeps its local due date, so an
+     * alarm due "tomorrow 07:00" is still due tomorrow at 07:00 in the new zone.
+     */
+    public long rebase(long triggerAt, AlarmRecurrence rebased, long now) {
+        if (rebased.isRepeating()) {
+            return rebased.nextAfter(now);
+        }
+        LocalDate dueDay = WallClock.toLocal(triggerAt, zone).toLocalDate();
+        return WallClock.resolve(dueDay, rebased.time, rebased.zone);
+    }
+
+    private LocalDate dayOfMonthIn(YearMonth month) {
+        return month.atDay(Math.min(dayOfMonth, month.lengthOfMonth()));
+    }
+
+    /**
+     * Parse the {@code recurrence} option passed from JS.
+     *
+     * Accepted shape: {@code { type, hour?, minute?, days?, intervalDays?, dayOfMonth?, zone? }}.
+     * Missing hour/minute/dayOfMonth default to the first trigger time, and
+     * {@code days} may hold JS day numbers (0-6) or short names ("Mon"). A rule
+     * with an IANA {@code zone} is pinned to it; otherwise it follows the device.
+     */
+    public static AlarmRecurrence fromReadableMap(ReadableMap rule, long firstTrigger) {
+        boolean pinned = rule.hasKey("zone") && !rule.isNull("zone");
+        ZoneId zone = pinned ? ZoneId.of(rule.getString("zone")) : ZoneId.systemDefault();
+        LocalDateTime first = WallClock.toLocal(firstTrigger, zone);
+
+        String type = rule.hasKey("type") ? rule.getString("type") : TYPE_DAILY;
+        int hour = rule.hasKey("hour") ? rule.getInt("hour") : first.getHour();
+        int minute = rule.hasKey("minute") ? rule.getInt("minute") : first.getMinute();
+
+        AlarmRecurrence parsed;
+        switch (type) {
+            case TYPE_WEEKLY:
+                parsed = weekly(hour, minute, parseDaysMask(rule.getArray("days")));
+                break;
+            case TYPE_EVERY_N_DAYS:
+                parsed = everyNDays(hour, minute, rule.getInt("intervalDays"), firstTrigger);
+                break;
+            case TYPE_MONTHLY:
+                int dayOfMonth = rule.hasKey("dayOfMonth") ? rule.getInt("dayOfMonth") : first.getDayOfMonth();
+                parsed = monthly(hour, minute, dayOfMonth);
+                break;
+            case TYPE_DAILY:
+                parsed = daily(hour, minute);
+                break;
+            case TYPE_ONCE:
+                parsed = once(hour, minute);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown recurrence type: " + type);
+        }
+        return parsed.withZone(zone, pinned);
+    }
+
+    private static int parseDaysMask(ReadableArray days) {
+        if (days == null) {
+            throw new IllegalArgumentException("weekly recurrence requires days");
+        }
+        int mask = 0;
+        for (int i = 0; i < days.size(); i++) {
+            if (days.getType(i) == ReadableType.Number) {
+                // Numbered like Date.getDay(): 0 is Sunday
+                int day = days.getInt(i);
+                if (day < 0 || day >= DAY_NAMES.length) {
+                    throw new IllegalArgumentException("weekly day must be between 0 and 6, got " + day);
+                }
+                mask |= 1 << day;
+            } else {
+                String name = days.getString(i);
+                for (int d = 0; d < DAY_NAMES.length; d++) {
+                    if (DAY_NAMES[d].equalsIgnoreCase(name)) {
+                        mask |= 1 << d;
+                    }
+                }
+            }
+        }
+        return mask;
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("type", type);
+        json.put("hour", time.getHour());
+        json.put("minute", time.getMinute());
+        json.put("zone", zone.getId());
+        json.put("floating", floating);
+        json.put("daysMask", daysMask);
+        json.put("intervalDays", intervalDays);
+        json.put("dayOfMonth", dayOfMonth);
+        json.put("anchorDay", anchorDay);
+        return json;
+    }
+
+    static AlarmRecurrence fromJson(JSONObject json) throws JSONException {
+        String zoneId = json.optString("zone", null);
+        return new AlarmRecurrence(
+            json.getString("type"),
+            LocalTime.of(json.getInt("hour"), json.getInt("minute")),
+            zoneId != null ? ZoneId.of(zoneId) : ZoneId.systemDefault(),
+            json.optBoolean("floating", true),
+            json.optInt("daysMask", ALL_DAYS_MASK),
+            json.optInt("intervalDays", 1),
+            json.optInt("dayOfMonth", 1),
+            json.optLong("anchorDay", 0)
+        );
+    }
+
+    @Override
+    public String toString() {
+        return type + "@" + time + " " + zone.getId();
+    }
+}
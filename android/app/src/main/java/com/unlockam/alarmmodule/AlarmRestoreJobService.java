@@ -0,0 +1,80 @@
+package com.unlockam.alarmmodule;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Background half of the boot restore.
+ *
+ * Boot and update receivers only restore the nearest alarms themselves; the long
+ * tail is left to a deferred job that waits for the device to be idle. A receiver
+ * pass that overruns its goAsync() budget is handed to an immediate job instead.
+ * The reconciliation is idempotent, so a job that runs after a pass already
+ * finished just finds nothing to repair.
+ */
+public class AlarmRestoreJobService extends JobService {
+
+    private static final String TAG = "AlarmRestoreJobService";
+    private static final int JOB_ID = 9102;
+    private static final int DEFERRED_JOB_ID = 9103;
+
+    /**
+     * Ask JobScheduler to run a restore as soon as possible
+     */
+    public static void schedule(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            Log.e(TAG, "❌ JobScheduler unavailable - the next queue wake-up finishes the restore");
+            return;
+        }
+        JobInfo.Builder job = new JobInfo.Builder(JOB_ID, new ComponentName(context, AlarmRestoreJobService.class));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            job.setExpedited(true);
+        } else {
+            job.setOverrideDeadline(0);
+        }
+        int result = scheduler.schedule(job.build());
+        Log.d(TAG, result == JobScheduler.RESULT_SUCCESS ? "📅 Restore job scheduled" : "❌ Restore job rejected");
+    }
+
+    /**
+     * Restore the long tail once the device is idle, keeping it out of the boot storm
+     */
+    public static void scheduleDeferred(Context context) {
+        JobScheduler scheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        if (scheduler == null) {
+            Log.e(TAG, "❌ JobScheduler unavailable - the next queue wake-up finishes the restore");
+            return;
+        }
+        JobInfo job = new JobInfo.Builder(DEFERRED_JOB_ID, new ComponentName(context, AlarmRestoreJobService.class))
+            .setRequiresDeviceIdle(true)
+            .build();
+        int result = scheduler.schedule(job);
+        Log.d(TAG, result == JobScheduler.RESULT_SUCCESS ? "📅 Deferred restore job scheduled" :
+            "❌ Deferred restore job rejected");
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        Log.d(TAG, "🔄 Running deferred alarm restore");
+        AlarmReconciler.reconcileInBackground(this, new AlarmReconciler.Callback() {
+            @Override
+            public void onReconciled(AlarmReconciler.Report report) {
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The pass keeps running on the reconciler's thread; retry in case it is cut short
+        return true;
+    }
+}
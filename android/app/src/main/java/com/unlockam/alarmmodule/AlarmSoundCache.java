@@ -0,0 +1,360 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.util.Log;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Decoded-PCM cache for the built-in alarm sounds, played through a looping
+ * static AudioTrack.
+ *
+ * Every built-in sound is a raw resource that MediaPlayer used to decode again on
+ * each trigger. Here it is decoded once into a small file; at fire time the file
+ * is read into a MODE_STATIC AudioTrack that loops over the whole buffer, so no
+ * codec is set up on the fire path at all.
+ *
+ * Key design decisions:
+ * 1. Samples are stored as 16-bit mono - alarms gain nothing from stereo, and it
+ *    halves the file and the shared-memory buffer AudioFlinger has to map
+ * 2. Sounds that would not fit MAX_PCM_BYTES are not cached; a static track that
+ *    large may fail to allocate, and the MediaPlayer path handles them fine
+ * 3. Cache files are keyed by resource id and the APK's last update time, so an
+ *    update that changes the sound (or renumbers resources) invalidates them; files
+ *    of older installs are deleted as new ones are written
+ * 4. Files are [magic][sample rate][frames][CRC32][samples] and written to a temp
+ *    file, fsynced and renamed; a torn or corrupt file is dropped and re-decoded
+ * 5. They live in device-protected storage, so the fast path works before the
+ *    first unlock; decoding runs on AlarmPlayerPool's audio thread
+ * 6. The fire path never decodes: on a cache miss it returns null, the caller falls
+ *    back to MediaPlayer and the decode is queued for the next alarm
+ */
+public final class AlarmSoundCache {
+
+    private static final String TAG = "AlarmSoundCache";
+    private static final String DIR_NAME = "alarm_pcm";
+    private static final String SUFFIX = ".pcm";
+    private static final int MAGIC = 0x55504331; // "UPC1"
+    private static final int HEADER_BYTES = 16;
+    private static final int MAX_PCM_BYTES = 1024 * 1024;
+    private static final long CODEC_TIMEOUT_US = 10 * 1000L;
+
+    private static AlarmSoundCache instance;
+
+    private final Context context;
+    private final File dir;
+    // Sounds that cannot be cached in this process; only touched on the audio thread
+    private final Set<Integer> uncacheable = new HashSet<>();
+
+    public static synchronized AlarmSoundCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmSoundCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private AlarmSoundCache(Context context) {
+        this.context = context;
+        this.dir = new File(DirectBootStorage.deviceProtected(context).getFilesDir(), DIR_NAME);
+    }
+
+    /**
+     * Decode the given sounds in the background unless they are cached already
+     */
+    public void warm(final Iterable<Integer> resourceIds) {
+        AlarmPlayerPool.getInstance(context).audioHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                for (int resourceId : resourceIds) {
+                    if (!uncacheable.contains(resourceId) && !cacheFile(resourceId).exists() &&
+                        !decodeToCache(resourceId)) {
+                        uncacheable.add(resourceId);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * A looping static AudioTrack for the sound, ready for play(), or null when the
+     * sound is not cached yet. Reads a file, so call it off the main thread
+     */
+    public AudioTrack createLoopingTrack(int resourceId, AudioAttributes attributes) {
+        File file = cacheFile(resourceId);
+        short[] samples;
+        int sampleRate;
+        try {
+            byte[] bytes = readFully(file);
+            if (bytes == null) {
+                warm(Arrays.asList(resourceId));
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            int magic = buffer.getInt();
+            sampleRate = buffer.getInt();
+            int frames = buffer.getInt();
+            int expected = buffer.getInt();
+            if (magic != MAGIC || frames <= 0 || bytes.length != HEADER_BYTES + frames * 2) {
+                throw new IOException("Malformed cache file " + file.getName());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes, HEADER_BYTES, frames * 2);
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("Checksum mismatch in " + file.getName());
+            }
+            samples = new short[frames];
+            buffer.asShortBuffer().get(samples);
+        } catch (IOException e) {
+            Log.w(TAG, "⚠️ Dropping unusable PCM cache: " + e.getMessage());
+            file.delete();
+            warm(Arrays.asList(resourceId));
+            return null;
+        }
+
+        AudioTrack.Builder builder = new AudioTrack.Builder()
+            .setAudioAttributes(attributes)
+            .setAudioFormat(new AudioFormat.Builder()
+                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                .setSampleRate(sampleRate)
+                .setChannelMask(AudioFormat.CHANNEL_OUT_MONO)
+                .build())
+            .setTransferMode(AudioTrack.MODE_STATIC)
+            .setBufferSizeInBytes(samples.length * 2);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY);
+        }
+        AudioTrack track = builder.build();
+        try {
+            int written = track.write(samples, 0, samples.length);
+            if (written != samples.length) {
+                throw new IllegalStateException("AudioTrack accepted " + written + " of " + samples.length + " frames");
+            }
+            int result = track.setLoopPoints(0, samples.length, -1);
+            if (result != AudioTrack.SUCCESS) {
+                throw new IllegalStateException("setLoopPoints failed: " + result);
+            }
+        } catch (RuntimeException e) {
+            track.release();
+            throw e;
+        }
+        return track;
+    }
+
+    /**
+     * False if the sound cannot be cached at all; errors that may be transient count as cacheable
+     */
+    private boolean decodeToCache(int resourceId) {
+        long started = System.currentTimeMillis();
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            AssetFileDescriptor afd = context.getResources().openRawResourceFd(resourceId);
+            try {
+                extractor.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
+            } finally {
+                afd.close();
+            }
+
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    break;
+                }
+            }
+            if (format == null) {
+                Log.w(TAG, "⚠️ No audio track in resource " + resourceId);
+                return false;
+            }
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            short[] mono = new short[sampleRate];
+            int frames = 0;
+            boolean inputDone = false;
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+            while (true) {
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        ByteBuffer input = codec.getInputBuffer(inIndex);
+                        int size = extractor.readSampleData(input, 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+
+                int outIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat output = codec.getOutputFormat();
+                    sampleRate = output.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channels = output.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && output.containsKey(MediaFormat.KEY_PCM_ENCODING) &&
+                        output.getInteger(MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT) {
+                        Log.w(TAG, "⚠️ Decoder output is not 16-bit PCM - not caching resource " + resourceId);
+                        return false;
+                    }
+                } else if (outIndex >= 0) {
+                    ByteBuffer output = codec.getOutputBuffer(outIndex);
+                    output.position(info.offset);
+                    output.limit(info.offset + info.size);
+                    ShortBuffer pcm = output.slice().order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+                    int outFrames = info.size / 2 / channels;
+                    if ((frames + outFrames) * 2 > MAX_PCM_BYTES) {
+                        Log.w(TAG, "⚠️ Resource " + resourceId + " is too long for a static track - not caching it");
+                        return false;
+                    }
+                    if (frames + outFrames > mono.length) {
+                        mono = Arrays.copyOf(mono, Math.max(mono.length * 2, frames + outFrames));
+                    }
+                    // Downmix by averaging the channels of each frame
+                    for (int f = 0; f < outFrames; f++) {
+                        int sum = 0;
+                        for (int c = 0; c < channels; c++) {
+                            sum += pcm.get();
+                        }
+                        mono[frames++] = (short) (sum / channels);
+                    }
+                    codec.releaseOutputBuffer(outIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        break;
+                    }
+                }
+            }
+
+            if (frames == 0) {
+                Log.w(TAG, "⚠️ Resource " + resourceId + " decoded to nothing");
+                return false;
+            }
+            write(resourceId, sampleRate, mono, frames);
+            Log.d(TAG, "💾 Cached resource " + resourceId + " as " + frames + " frames @ " + sampleRate + "Hz in " +
+                (System.currentTimeMillis() - started) + "ms");
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to decode resource " + resourceId, e);
+            return true;
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (Exception ignored) {
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private void write(int resourceId, int sampleRate, short[] samples, int frames) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        ByteBuffer data = ByteBuffer.allocate(frames * 2).order(ByteOrder.LITTLE_ENDIAN);
+        data.asShortBuffer().put(samples, 0, frames);
+        CRC32 crc = new CRC32();
+        crc.update(data.array());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(sampleRate).putInt(frames).putInt((int) crc.getValue());
+
+        File target = cacheFile(resourceId);
+        File temp = new File(dir, target.getName() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(header.array());
+            out.write(data.array());
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp + " to " + target);
+        }
+        deleteStale(resourceId, target);
+    }
+
+    /**
+     * Remove cache files an earlier install wrote for the same resource
+     */
+    private void deleteStale(int resourceId, File current) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        String prefix = resourceId + "_";
+        for (File file : files) {
+            if (file.getName().startsWith(prefix) && !file.equals(current)) {
+                file.delete();
+            }
+        }
+    }
+
+    private File cacheFile(int resourceId) {
+        long installStamp = 0;
+        try {
+            installStamp = context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.w(TAG, "Own package not found", e);
+        }
+        return new File(dir, resourceId + "_" + installStamp + SUFFIX);
+    }
+
+    /**
+     * File contents, or null if it does not exist
+     */
+    private static byte[] readFully(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        long length = file.length();
+        if (length < HEADER_BYTES || length > HEADER_BYTES + MAX_PCM_BYTES) {
+            throw new IOException("Unexpected cache file size " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    throw new IOException("Short read of " + file.getName());
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return bytes;
+    }
+}
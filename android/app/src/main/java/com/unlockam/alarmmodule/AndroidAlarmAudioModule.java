@@ -1,7 +1,6 @@
 package com.unlockam.alarmmodule;
 
 import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
@@ -15,6 +14,7 @@ import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
+import java.util.HashSet;
 
 public class AndroidAlarmAudioModule extends ReactContextBaseJavaModule {
     
@@ -66,6 +66,9 @@ public class AndroidAlarmAudioModule extends ReactContextBaseJavaModule {
             serviceIntent.putExtra("vibration", vibration);
             serviceIntent.putExtra("showOverLockscreen", showOverLockscreen);
             serviceIntent.putExtra("wakeScreen", wakeScreen);
+            if (options.hasKey("ramp") && !options.isNull("ramp")) {
+                VolumeRamp.fromReadableMap(options.getMap("ramp")).putExtras(serviceIntent);
+            }
 
             // Start foreground service
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -178,35 +181,23 @@ public class AndroidAlarmAudioModule extends ReactContextBaseJavaModule {
             String soundType = options.getString("soundType");
             boolean vibration = options.getBoolean("vibration");
             String label = options.getString("label");
-
-            // Create pending intent for alarm
-            Intent alarmIntent = new Intent(reactContext, AlarmReceiver.class);
-            alarmIntent.putExtra("alarmId", alarmId);
-            alarmIntent.putExtra("soundType", soundType);
-            alarmIntent.putExtra("vibration", vibration);
-            alarmIntent.putExtra("label", label);
-
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                reactContext, 
-                alarmId.hashCode(), 
-                alarmIntent, 
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-
-            // Schedule exact alarm
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                alarmManager.setExactAndAllowWhileIdle(
-                    AlarmManager.RTC_WAKEUP,
-                    triggerTime,
-                    pendingIntent
-                );
-            } else {
-                alarmManager.setExact(
-                    AlarmManager.RTC_WAKEUP,
-                    triggerTime,
-                    pendingIntent
-                );
-            }
+            // Optional end time - the queue stops the alarm natively when it is reached
+            long endTime = options.hasKey("endTime") && !options.isNull("endTime")
+                ? (long) options.getDouble("endTime")
+                : 0;
+
+            // Queue the alarm; the shared queue keeps a single AlarmManager registration
+            QueuedAlarm alarm = new QueuedAlarm.Builder(QueuedAlarm.TARGET_LEGACY, alarmId, triggerTime)
+                .setSoundType(soundType)
+                .setVibration(vibration)
+                .setLabel(label)
+                .setRingDurationMs(endTime > triggerTime ? endTime - triggerTime : 0)
+                .setRamp(parseRamp(options))
+                .build();
+            AlarmQueue.getInstance(reactContext).schedule(alarm);
+            // Have the PCM fast path ready by the time it fires
+            AlarmSoundCache.getInstance(reactContext).warm(
+                new HashSet<>(AndroidAlarmAudioService.builtInSounds().values()));
 
             promise.resolve(true);
         } catch (Exception e) {
@@ -223,10 +214,43 @@ public class AndroidAlarmAudioModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Schedule a repeating alarm. With a {@code recurrence} rule the next
+     * occurrence is computed natively every time the alarm fires, so JS never
+     * has to wake up to keep the alarm alive. Without one this is a one-shot
+     * scheduleAlarm, as before.
+     */
     @ReactMethod
     public void scheduleNextOccurrence(ReadableMap options, Promise promise) {
         try {
-            scheduleAlarm(options, promise);
+            if (!options.hasKey("recurrence") || options.isNull("recurrence")) {
+                scheduleAlarm(options, promise);
+                return;
+            }
+
+            String alarmId = options.getString("alarmId");
+            long now = System.currentTimeMillis();
+            long firstTrigger = options.hasKey("triggerTime") ? (long) options.getDouble("triggerTime") : now;
+            AlarmRecurrence recurrence = AlarmRecurrence.fromReadableMap(options.getMap("recurrence"), firstTrigger);
+            if (firstTrigger <= now) {
+                firstTrigger = recurrence.nextAfter(now);
+            }
+
+            QueuedAlarm alarm = new QueuedAlarm.Builder(QueuedAlarm.TARGET_LEGACY, alarmId, firstTrigger)
+                .setSoundType(options.hasKey("soundType") ? options.getString("soundType") : null)
+                .setVibration(!options.hasKey("vibration") || options.getBoolean("vibration"))
+                .setLabel(options.hasKey("label") ? options.getString("label") : null)
+                .setRecurrence(recurrence)
+                .setRamp(parseRamp(options))
+                .build();
+            AlarmQueue.getInstance(reactContext).schedule(alarm);
+
+            WritableMap result = Arguments.createMap();
+            result.putBoolean("success", true);
+            result.putString("alarmId", alarmId);
+            result.putDouble("scheduledFor", firstTrigger);
+            result.putString("recurrence", recurrence.toString());
+            promise.resolve(result);
         } catch (Exception e) {
             promise.reject("SCHEDULE_NEXT_ERROR", e.getMessage(), e);
         }
@@ -329,4 +353,13 @@ public class AndroidAlarmAudioModule extends ReactContextBaseJavaModule {
             promise.reject("TEST_PLAYBACK_ERROR", e.getMessage(), e);
         }
     }
+
+    /**
+     * The optional {@code ramp} option shared by the scheduling methods
+     */
+    private static VolumeRamp parseRamp(ReadableMap options) {
+        return options.hasKey("ramp") && !options.isNull("ramp")
+            ? VolumeRamp.fromReadableMap(options.getMap("ramp"))
+            : VolumeRamp.NONE;
+    }
 }
@@ -12,26 +12,36 @@ import android.content.Intent;
 import android.media.AudioAttributes;
 import android.media.AudioFocusRequest;
 import android.media.AudioManager;
+import android.media.AudioTrack;
 import android.media.MediaPlayer;
 import android.media.Ringtone;
 import android.media.RingtoneManager;
+import android.media.VolumeShaper;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.os.Vibrator;
 import android.os.VibrationEffect;
 import android.util.Log;
 import androidx.core.app.NotificationCompat;
-import java.io.IOException;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 
 public class AndroidAlarmAudioService extends Service {
     private static final String TAG = "AndroidAlarmAudioService";
     private static final String CHANNEL_ID = "UnlockAM_Alarm_Channel";
     private static final int NOTIFICATION_ID = 1001;
+    private static final String JOURNAL_NAME = "ringing_audio_service.journal";
     
+    private AudioTrack primaryTrack;
     private MediaPlayer primaryPlayer;
     private MediaPlayer backupPlayer;
     private Ringtone systemRingtone;
@@ -42,9 +52,19 @@ public class AndroidAlarmAudioService extends Service {
     
     private int originalAlarmVolume;
     private int originalRingerMode;
+    // Only a stream this service raised is put back to originalAlarmVolume
+    private boolean alarmStreamRaised = false;
     private boolean isPlaying = false;
     private String currentAlarmId;
     private Map<String, Integer> soundResources;
+    private RingingJournal journal;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Bumped on every stop, so players the pool hands over afterwards are released
+    private int audioGeneration = 0;
+    // The crescendo and when it began; every started layer gets its own shaper
+    private VolumeRamp sessionRamp = VolumeRamp.NONE;
+    private long sessionStartedAt;
+    private final List<VolumeShaper> volumeShapers = new ArrayList<>();
 
     // Audio focus change listener - aggressive for locked state
     private AudioManager.OnAudioFocusChangeListener focusChangeListener = new AudioManager.OnAudioFocusChangeListener() {
@@ -56,6 +76,14 @@ public class AndroidAlarmAudioService extends Service {
                 case AudioManager.AUDIOFOCUS_GAIN:
                     Log.d(TAG, "✅ Audio focus GAINED - ensuring alarm continues");
                     // Ensure our alarm is still playing
+                    if (isPlaying && primaryTrack != null && primaryTrack.getPlayState() != AudioTrack.PLAYSTATE_PLAYING) {
+                        try {
+                            primaryTrack.play();
+                            Log.d(TAG, "✅ Restarted primary track after focus gain");
+                        } catch (Exception e) {
+                            Log.e(TAG, "❌ Failed to restart track after focus gain", e);
+                        }
+                    }
                     if (isPlaying && primaryPlayer != null && !primaryPlayer.isPlaying()) {
                         try {
                             primaryPlayer.start();
@@ -93,8 +121,11 @@ public class AndroidAlarmAudioService extends Service {
         
         audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
         vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
+        journal = new RingingJournal(this, JOURNAL_NAME);
         
-        initializeSoundResources();
+        soundResources = builtInSounds();
+        // Decode the built-in sounds for the PCM fast path if an earlier run has not
+        AlarmSoundCache.getInstance(this).warm(new HashSet<>(soundResources.values()));
         createNotificationChannel();
         acquireWakeLock();
     }
@@ -102,7 +133,9 @@ public class AndroidAlarmAudioService extends Service {
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         if (intent == null) {
-            return START_NOT_STICKY;
+            // Sticky restart after being killed mid-alarm - resume from the journal
+            resumeFromJournal();
+            return isPlaying ? START_STICKY : START_NOT_STICKY;
         }
 
         String action = intent.getAction();
@@ -128,17 +161,51 @@ public class AndroidAlarmAudioService extends Service {
                 Log.w(TAG, "Unknown action: " + action);
         }
 
-        return START_NOT_STICKY;
+        // Only a ringing alarm is worth restarting
+        return isPlaying ? START_STICKY : START_NOT_STICKY;
+    }
+
+    private void resumeFromJournal() {
+        RingingJournal.Session session = journal.replay();
+        if (session == null || session.alarmIds.isEmpty()) {
+            Log.d(TAG, "Restarted with no ringing alarm to resume");
+            stopSelf();
+            return;
+        }
+
+        currentAlarmId = session.alarmIds.get(0);
+        Log.d(TAG, "🔁 Resuming alarm " + currentAlarmId + " started " +
+            (System.currentTimeMillis() - session.startedAt) + "ms ago");
+
+        startForeground(NOTIFICATION_ID, createAlarmNotification("🚨 ALARM ACTIVE", "UnlockAM Alarm Playing - Locked State Ready"));
+        acquireWakeLock();
+        // The stream is still raised; restore to what the user had before the alarm, not to this
+        originalAlarmVolume = session.originalVolume;
+        originalRingerMode = session.originalRingerMode;
+        sessionRamp = session.ramp;
+        sessionStartedAt = session.startedAt;
+        boostAudioForLockedState();
+        if (audioManager != null && audioManager.getStreamVolume(AudioManager.STREAM_ALARM) != originalAlarmVolume) {
+            // Raised before the restart - the boost above found it already up
+            alarmStreamRaised = true;
+        }
+        requestAudioFocusAggressively();
+        isPlaying = true;
+        startAlarmSoundForLockedState(session.soundType);
+        if (session.vibration) {
+            startVibration();
+        }
     }
 
-    private void initializeSoundResources() {
-        soundResources = new HashMap<>();
+    static Map<String, Integer> builtInSounds() {
+        Map<String, Integer> soundResources = new HashMap<>();
         soundResources.put("default", R.raw.alarm_sound);
         // Keep legacy mappings for backward compatibility, all pointing to same sound
         soundResources.put("alert", R.raw.alarm_sound);
         soundResources.put("beep", R.raw.alarm_sound);
         soundResources.put("chime", R.raw.alarm_sound);
         soundResources.put("custom", R.raw.alarm_sound);
+        return soundResources;
     }
 
     private void createNotificationChannel() {
@@ -181,8 +248,16 @@ public class AndroidAlarmAudioService extends Service {
             acquireWakeLock();
             Log.d(TAG, "✅ Wake lock acquired");
             
-            // CRITICAL: Prepare audio system with maximum privileges
-            prepareAudioSystemForLockedState(volume);
+            // CRITICAL: Prepare audio system - the user's settings are journaled before the
+            // stream is raised, so a restart restores them correctly
+            sessionRamp = intent.hasExtra("rampCurve")
+                ? VolumeRamp.fromIntent(intent)
+                : VolumeRamp.of(VolumeRamp.CURVE_NONE, 0, volume);
+            sessionStartedAt = System.currentTimeMillis();
+            backupAudioSystem();
+            journal.started(sessionStartedAt, originalAlarmVolume, originalRingerMode, soundType, vibration,
+                sessionRamp, Collections.singletonList(currentAlarmId), Collections.<String>singletonList(null));
+            boostAudioForLockedState();
             Log.d(TAG, "✅ Audio system prepared for locked state");
             
             // CRITICAL: Request audio focus aggressively
@@ -214,6 +289,12 @@ public class AndroidAlarmAudioService extends Service {
         Log.d(TAG, "Stopping alarm: " + alarmId);
         
         if (alarmId == null || alarmId.equals(currentAlarmId)) {
+            journal.dismissed(alarmId);
+            if (currentAlarmId != null && !intent.getBooleanExtra("autoStop", false)) {
+                // Ended by the user - its end-time stop entry has nothing left to stop
+                AlarmQueue.getInstance(this).cancel(QueuedAlarm.TARGET_STOP,
+                    QueuedAlarm.key(QueuedAlarm.TARGET_LEGACY, currentAlarmId));
+            }
             stopAllAlarms();
             stopSelf();
         }
@@ -230,10 +311,30 @@ public class AndroidAlarmAudioService extends Service {
             stopAllAlarms();
             prepareAudioSystem(volume);
             
-            // Play custom audio file
-            primaryPlayer = new MediaPlayer();
-            setupMediaPlayerForFile(primaryPlayer, filePath, loop);
-            primaryPlayer.start();
+            // Play custom audio file once the pool has prepared it
+            final boolean looping = loop;
+            final int generation = audioGeneration;
+            AlarmPlayerPool.getInstance(this).acquire(Uri.fromFile(new File(filePath)), new AlarmPlayerPool.Callback() {
+                @Override
+                public void onReady(MediaPlayer player) {
+                    if (generation != audioGeneration) {
+                        player.release();
+                        return;
+                    }
+                    primaryPlayer = player;
+                    try {
+                        player.setLooping(looping);
+                        player.start();
+                    } catch (Exception e) {
+                        Log.e(TAG, "Error starting audio file", e);
+                    }
+                }
+                
+                @Override
+                public void onFailed(Exception e) {
+                    Log.e(TAG, "Error preparing audio file", e);
+                }
+            });
             
             isPlaying = true;
             
@@ -267,40 +368,63 @@ public class AndroidAlarmAudioService extends Service {
             int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM);
             int targetVolume = Math.round(maxVolume * volume);
             audioManager.setStreamVolume(AudioManager.STREAM_ALARM, targetVolume, 0);
+            alarmStreamRaised = true;
         }
     }
 
     /**
-     * Enhanced audio system preparation specifically for locked state
+     * Store the user's alarm volume and ringer mode for restoreAudioSystem()
      */
-    private void prepareAudioSystemForLockedState(float volume) {
-        Log.d(TAG, "🔊 Preparing audio system for LOCKED STATE playback...");
-        
+    private void backupAudioSystem() {
         if (audioManager != null) {
             try {
-                // Store original settings
                 originalAlarmVolume = audioManager.getStreamVolume(AudioManager.STREAM_ALARM);
                 originalRingerMode = audioManager.getRingerMode();
-                
+            } catch (Exception e) {
+                Log.e(TAG, "❌ Failed to read audio settings", e);
+            }
+        }
+    }
+
+    /**
+     * Audio system preparation for locked state: normal ringer mode, and the alarm
+     * stream raised to the session ramp's target only if the user's volume is below
+     * it. The crescendo itself runs in the players, so nothing here repeats
+     */
+    private void boostAudioForLockedState() {
+        Log.d(TAG, "🔊 Preparing audio system for LOCKED STATE playback with ramp " + sessionRamp);
+        
+        if (audioManager != null) {
+            try {
                 // Force to normal mode (override silent/vibrate)
                 audioManager.setRingerMode(AudioManager.RINGER_MODE_NORMAL);
-                
-                // Set maximum alarm volume for locked state
-                int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM);
-                audioManager.setStreamVolume(AudioManager.STREAM_ALARM, maxVolume, AudioManager.FLAG_SHOW_UI);
-                
-                // Also boost media volume for redundancy
-                int maxMediaVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC);
-                audioManager.setStreamVolume(AudioManager.STREAM_MUSIC, maxMediaVolume, 0);
-                
-                Log.d(TAG, "✅ Audio system configured for locked state - Volume: " + maxVolume + "/" + maxVolume);
-                
+                if (sessionRamp.raiseAlarmStream(audioManager)) {
+                    alarmStreamRaised = true;
+                }
             } catch (Exception e) {
                 Log.e(TAG, "❌ Failed to prepare audio for locked state", e);
             }
         }
     }
 
+    /**
+     * Whether the session's crescendo is carried by VolumeShapers on the players
+     */
+    private boolean isShapingVolume() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && sessionRamp.isRamping();
+    }
+
+    private void closeVolumeShapers() {
+        for (VolumeShaper shaper : volumeShapers) {
+            try {
+                shaper.close();
+            } catch (Exception e) {
+                Log.w(TAG, "Error closing volume shaper", e);
+            }
+        }
+        volumeShapers.clear();
+    }
+
     /**
      * Aggressive audio focus request for locked state
      */
@@ -350,28 +474,16 @@ public class AndroidAlarmAudioService extends Service {
             }
             
             if (resourceId != null) {
-                primaryPlayer = new MediaPlayer();
-                setupMediaPlayer(primaryPlayer, resourceId);
-                primaryPlayer.start();
-                Log.d(TAG, "Primary alarm player started");
+                startPrimaryLayer(resourceId, "Primary alarm");
                 
                 // Backup player for redundancy
-                backupPlayer = new MediaPlayer();
-                setupMediaPlayer(backupPlayer, resourceId);
-                new android.os.Handler().postDelayed(() -> {
-                    if (backupPlayer != null && isPlaying) {
-                        try {
-                            backupPlayer.start();
-                            Log.d(TAG, "Backup alarm player started");
-                        } catch (Exception e) {
-                            Log.w(TAG, "Backup player failed", e);
-                        }
-                    }
-                }, 500);
+                startPooledPlayer(resourceId, true, 500, "Backup alarm");
             }
             
-            // System ringtone as ultimate fallback
-            startSystemRingtone();
+            // System ringtone as ultimate fallback - it cannot be shaped, so a ramp holds it back
+            if (!isShapingVolume()) {
+                startSystemRingtone();
+            }
             
         } catch (Exception e) {
             Log.e(TAG, "Error starting alarm sound", e);
@@ -395,29 +507,18 @@ public class AndroidAlarmAudioService extends Service {
             }
             
             if (resourceId != null) {
-                // PRIMARY PLAYER with enhanced settings for locked state
-                primaryPlayer = new MediaPlayer();
-                setupMediaPlayerForLockedState(primaryPlayer, resourceId);
-                primaryPlayer.start();
-                Log.d(TAG, "✅ PRIMARY locked-state player started");
+                // PRIMARY LAYER from the decoded-PCM cache, or a pooled player until it is cached
+                startPrimaryLayer(resourceId, "✅ PRIMARY locked-state");
                 
                 // BACKUP PLAYER with delay for redundancy
-                backupPlayer = new MediaPlayer();
-                setupMediaPlayerForLockedState(backupPlayer, resourceId);
-                new android.os.Handler().postDelayed(() -> {
-                    if (backupPlayer != null && isPlaying) {
-                        try {
-                            backupPlayer.start();
-                            Log.d(TAG, "✅ BACKUP locked-state player started");
-                        } catch (Exception e) {
-                            Log.w(TAG, "⚠️ Backup player failed", e);
-                        }
-                    }
-                }, 1000); // Longer delay for locked state
+                startPooledPlayer(resourceId, true, 1000, "✅ BACKUP locked-state"); // Longer delay for locked state
             }
             
-            // SYSTEM RINGTONE as ultimate fallback
-            startSystemRingtoneForLockedState();
+            // SYSTEM RINGTONE as ultimate fallback - it cannot be shaped, so a ramp holds it
+            // back until the backup player fails
+            if (!isShapingVolume()) {
+                startSystemRingtoneForLockedState();
+            }
             
             Log.d(TAG, "🎵 ALL AUDIO LAYERS ACTIVE for locked state");
             
@@ -428,29 +529,128 @@ public class AndroidAlarmAudioService extends Service {
     }
 
     /**
-     * Enhanced MediaPlayer setup for locked state playback
+     * Start the primary layer as a looping static AudioTrack from AlarmSoundCache,
+     * falling back to a pooled MediaPlayer while the sound is not cached. The track
+     * is built and started on the audio thread, then handed to the main thread
      */
-    private void setupMediaPlayerForLockedState(MediaPlayer player, int resourceId) throws IOException {
-        AudioAttributes attributes = new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_ALARM)
-                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                .setFlags(AudioAttributes.FLAG_AUDIBILITY_ENFORCED | AudioAttributes.FLAG_HW_AV_SYNC)
-                .build();
-        
-        player.setAudioAttributes(attributes);
-        
-        android.content.res.AssetFileDescriptor afd = getResources().openRawResourceFd(resourceId);
-        if (afd != null) {
-            player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-            afd.close();
+    private void startPrimaryLayer(final int resourceId, final String name) {
+        final int generation = audioGeneration;
+        final AlarmSoundCache cache = AlarmSoundCache.getInstance(this);
+        final VolumeRamp ramp = sessionRamp;
+        final long startedAt = sessionStartedAt;
+        AlarmPlayerPool.getInstance(this).audioHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                AudioTrack track = null;
+                VolumeShaper shaper = null;
+                try {
+                    track = cache.createLoopingTrack(resourceId, AlarmPlayerPool.ALARM_ATTRIBUTES);
+                    if (track != null) {
+                        shaper = ramp.shape(track, System.currentTimeMillis() - startedAt);
+                        track.play();
+                    }
+                } catch (Exception e) {
+                    Log.w(TAG, "⚠️ PCM cache playback failed, using MediaPlayer", e);
+                    if (track != null) {
+                        // Releasing the track releases its shaper too
+                        track.release();
+                        track = null;
+                        shaper = null;
+                    }
+                }
+                final AudioTrack started = track;
+                final VolumeShaper startedShaper = shaper;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != audioGeneration) {
+                            if (started != null) {
+                                releaseTrack(started);
+                            }
+                            return;
+                        }
+                        if (started == null) {
+                            startPooledPlayer(resourceId, false, 0, name);
+                            return;
+                        }
+                        primaryTrack = started;
+                        if (startedShaper != null) {
+                            volumeShapers.add(startedShaper);
+                        }
+                        Log.d(TAG, name + " track started from PCM cache");
+                    }
+                });
+            }
+        });
+    }
+
+    private static void releaseTrack(AudioTrack track) {
+        try {
+            track.stop();
+        } catch (IllegalStateException ignored) {
+        }
+        track.release();
+    }
+
+    /**
+     * Take a prepared player for the resource from AlarmPlayerPool and start it,
+     * after {@code delayMs} for the backup layer. Nothing here blocks on preparation
+     */
+    private void startPooledPlayer(int resourceId, final boolean backup, final long delayMs, final String name) {
+        final int generation = audioGeneration;
+        AlarmPlayerPool.getInstance(this).acquire(resourceUri(resourceId), new AlarmPlayerPool.Callback() {
+            @Override
+            public void onReady(final MediaPlayer player) {
+                if (generation != audioGeneration) {
+                    player.release();
+                    return;
+                }
+                if (backup) {
+                    backupPlayer = player;
+                } else {
+                    primaryPlayer = player;
+                }
+                if (delayMs <= 0) {
+                    startPlayer(player, name);
+                    return;
+                }
+                mainHandler.postDelayed(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == audioGeneration && isPlaying) {
+                            startPlayer(player, name);
+                        }
+                    }
+                }, delayMs);
+            }
+            
+            @Override
+            public void onFailed(Exception e) {
+                Log.w(TAG, "⚠️ " + name + " player could not be prepared", e);
+                // While ramping the ringtone is held back; it becomes the fallback for a failed backup
+                if (backup && isShapingVolume() && generation == audioGeneration && systemRingtone == null) {
+                    startSystemRingtoneForLockedState();
+                }
+            }
+        });
+    }
+
+    private void startPlayer(MediaPlayer player, String name) {
+        try {
+            // The backup layer joins the crescendo where it is, not from silence
+            VolumeShaper shaper = sessionRamp.shape(player, System.currentTimeMillis() - sessionStartedAt);
+            if (shaper != null) {
+                volumeShapers.add(shaper);
+            }
+            player.start();
+            Log.d(TAG, name + " player started");
+        } catch (Exception e) {
+            Log.w(TAG, "⚠️ " + name + " player failed", e);
         }
-        
-        // Enhanced settings for locked state
-        player.setLooping(true);
-        player.setVolume(1.0f, 1.0f); // Maximum volume
-        player.prepare();
-        
-        Log.d(TAG, "✅ MediaPlayer configured for locked state with resource ID: " + resourceId);
+    }
+
+    private Uri resourceUri(int resourceId) {
+        return Uri.parse("android.resource://" + getPackageName() + "/" + resourceId);
     }
 
     /**
@@ -512,38 +712,6 @@ public class AndroidAlarmAudioService extends Service {
         }
     }
 
-    private void setupMediaPlayer(MediaPlayer player, int resourceId) throws IOException {
-        AudioAttributes attributes = new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_ALARM)
-                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                .setFlags(AudioAttributes.FLAG_AUDIBILITY_ENFORCED)
-                .build();
-        
-        player.setAudioAttributes(attributes);
-        
-        android.content.res.AssetFileDescriptor afd = getResources().openRawResourceFd(resourceId);
-        if (afd != null) {
-            player.setDataSource(afd.getFileDescriptor(), afd.getStartOffset(), afd.getLength());
-            afd.close();
-        }
-        
-        player.setLooping(true);
-        player.prepare();
-    }
-
-    private void setupMediaPlayerForFile(MediaPlayer player, String filePath, boolean loop) throws IOException {
-        AudioAttributes attributes = new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_ALARM)
-                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                .setFlags(AudioAttributes.FLAG_AUDIBILITY_ENFORCED)
-                .build();
-        
-        player.setAudioAttributes(attributes);
-        player.setDataSource(filePath);
-        player.setLooping(loop);
-        player.prepare();
-    }
-
     private void startSystemRingtone() {
         try {
             Uri alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
@@ -596,7 +764,15 @@ public class AndroidAlarmAudioService extends Service {
 
     private void stopAllAlarms() {
         try {
+            boolean wasPlaying = isPlaying;
             isPlaying = false;
+            audioGeneration++;
+            
+            if (primaryTrack != null) {
+                releaseTrack(primaryTrack);
+                primaryTrack = null;
+                Log.d(TAG, "Primary track stopped");
+            }
             
             if (primaryPlayer != null) {
                 primaryPlayer.stop();
@@ -617,6 +793,8 @@ public class AndroidAlarmAudioService extends Service {
                 systemRingtone = null;
                 Log.d(TAG, "System ringtone stopped");
             }
+            // After the players, so none of them jumps to full volume on its way out
+            closeVolumeShapers();
             
             if (vibrator != null) {
                 vibrator.cancel();
@@ -632,8 +810,10 @@ public class AndroidAlarmAudioService extends Service {
                 }
             }
             
-            // Restore original audio settings
-            restoreAudioSystem();
+            // Restore original audio settings - only backed up while something was playing
+            if (wasPlaying) {
+                restoreAudioSystem();
+            }
             
         } catch (Exception e) {
             Log.e(TAG, "Error stopping alarms", e);
@@ -643,7 +823,10 @@ public class AndroidAlarmAudioService extends Service {
     private void restoreAudioSystem() {
         if (audioManager != null) {
             try {
-                audioManager.setStreamVolume(AudioManager.STREAM_ALARM, originalAlarmVolume, 0);
+                if (alarmStreamRaised) {
+                    audioManager.setStreamVolume(AudioManager.STREAM_ALARM, originalAlarmVolume, 0);
+                }
+                alarmStreamRaised = false;
                 audioManager.setRingerMode(originalRingerMode);
             } catch (Exception e) {
                 Log.e(TAG, "Error restoring audio system", e);
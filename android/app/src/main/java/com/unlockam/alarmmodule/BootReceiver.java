@@ -3,7 +3,6 @@ package com.unlockam.alarmmodule;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.os.Build;
 import android.util.Log;
 
 /**
@@ -14,6 +13,9 @@ import android.util.Log;
  * - Normal boot
  * - Quick boot (OEM specific)
  * - App updates
+ * 
+ * The restore runs inside the receiver under goAsync() - no foreground service
+ * or notification - and falls back to a job only when it cannot finish in time.
  */
 public class BootReceiver extends BroadcastReceiver {
     
@@ -34,20 +36,8 @@ public class BootReceiver extends BroadcastReceiver {
      * Reschedule all alarms after device boot
      */
     private void rescheduleAlarmsAfterBoot(Context context) {
-        Intent serviceIntent = new Intent(context, ProductionAlarmService.class);
-        serviceIntent.setAction("RESCHEDULE_AFTER_BOOT");
-        serviceIntent.putExtra("bootTime", System.currentTimeMillis());
-        
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                context.startForegroundService(serviceIntent);
-            } else {
-                context.startService(serviceIntent);
-            }
-            Log.d(TAG, "✅ Boot rescheduling service started");
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to start boot rescheduling service", e);
-        }
+        AlarmReconciler.reconcileFromReceiver(context, goAsync());
+        Log.d(TAG, "✅ Boot restore started");
     }
     
     /**
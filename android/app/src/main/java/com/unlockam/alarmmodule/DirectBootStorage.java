@@ -0,0 +1,91 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.UserManager;
+import android.util.Log;
+import java.io.File;
+
+/**
+ * Device-protected storage for the alarm registries.
+ *
+ * Credential-encrypted storage (the default for SharedPreferences, files and
+ * databases) cannot be read after a reboot until the user unlocks, so alarms kept
+ * there are not re-armed overnight. Everything the queue needs to re-arm lives in
+ * device-protected storage instead, which is available from LOCKED_BOOT_COMPLETED.
+ *
+ * Key design decisions:
+ * 1. Only alarm bookkeeping goes here - trigger times, recurrence and labels -
+ *    the same minimal data the system clock app keeps in device-protected storage
+ * 2. Existing credential-encrypted copies are moved over once, on the first open
+ *    while the user is unlocked; a locked open starts from what is already moved
+ * 3. Before Android 7 there is no direct boot and the ordinary context is used
+ */
+public final class DirectBootStorage {
+
+    private static final String TAG = "DirectBootStorage";
+
+    private DirectBootStorage() {
+    }
+
+    /**
+     * Context whose preferences, files and databases live in device-protected storage
+     */
+    public static Context deviceProtected(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N || context.isDeviceProtectedStorage()) {
+            return context;
+        }
+        return context.createDeviceProtectedStorageContext();
+    }
+
+    public static boolean isUserUnlocked(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return true;
+        }
+        UserManager userManager = (UserManager) context.getSystemService(Context.USER_SERVICE);
+        return userManager == null || userManager.isUserUnlocked();
+    }
+
+    /**
+     * Device-protected context with the named preferences moved over from credential storage
+     */
+    public static Context forPreferences(Context context, String name) {
+        Context storage = deviceProtected(context);
+        if (storage != context && isUserUnlocked(context) && storage.moveSharedPreferencesFrom(context, name)) {
+            Log.d(TAG, "📦 Preferences " + name + " ready in device-protected storage");
+        }
+        return storage;
+    }
+
+    /**
+     * Device-protected context with the named database moved over from credential storage
+     */
+    public static Context forDatabase(Context context, String name) {
+        Context storage = deviceProtected(context);
+        if (storage != context && isUserUnlocked(context) && context.getDatabasePath(name).exists() &&
+            storage.moveDatabaseFrom(context, name)) {
+            Log.d(TAG, "📦 Database " + name + " moved to device-protected storage");
+        }
+        return storage;
+    }
+
+    /**
+     * Device-protected context with the named file moved over from credential storage
+     */
+    public static Context forFile(Context context, String name) {
+        Context storage = deviceProtected(context);
+        if (storage == context || !isUserUnlocked(context)) {
+            return storage;
+        }
+        File legacy = new File(context.getFilesDir(), name);
+        File target = new File(storage.getFilesDir(), name);
+        if (legacy.exists() && !target.exists()) {
+            if (legacy.renameTo(target)) {
+                Log.d(TAG, "📦 File " + name + " moved to device-protected storage");
+            } else {
+                Log.w(TAG, "⚠️ Could not move " + name + " to device-protected storage");
+            }
+        }
+        return storage;
+    }
+}
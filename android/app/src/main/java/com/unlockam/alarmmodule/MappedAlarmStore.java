@@ -0,0 +1,615 @@
+package com.unlockam.alarmmodule;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.unlockam.mobile.devbuild.alarmmodule.AlarmyStyleAlarmReceiver;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped binary store for Alarmy-style alarms (trigger time, label and
+ * missed-alarm grace window per alarm ID).
+ *
+ * Replaces the key-per-field "alarmy_alarms" SharedPreferences file, which was
+ * rewritten as XML on every apply() and re-parsed (with string-keyed IDs) at boot.
+ *
+ * File layout:
+ *   header  | magic, version, capacity, labelHeapSize, labelHeapUsed, live, tombstones, flags
+ *   slots   | capacity fixed 64-byte slots, each two 32-byte copies of the record:
+ *           | alarmId, state, grace, triggerAt, labelOffset, labelLength, generation, CRC32
+ *   labels  | append-only UTF-8 label heap
+ *
+ * Key design decisions:
+ * 1. The slot table is itself the index: an int-keyed open-addressing hash table
+ *    with linear probing, so upsert and delete touch one slot - O(1)
+ * 2. A write never touches the copy readers currently use: it fills the slot's
+ *    other copy with the next generation and a CRC32 over the record and its
+ *    label. Readers take the newest copy whose checksum holds, so an update torn
+ *    by a crash or power loss falls back to the previous version of the record
+ * 3. Loading is one sequential scan of the slot table - no XML, no string parsing.
+ *    Which copy is current is worked out once on open and kept in memory
+ * 4. A label is only reused when its bytes are unchanged; otherwise it is appended,
+ *    so the older copy's label stays intact. When the table gets too full or the
+ *    heap runs out, the file is rebuilt (compacted, and grown if needed) through a
+ *    temp file and an atomic rename
+ * 5. Every put and remove forces the mapping to disk before it returns. The header
+ *    counters are only hints - live, tombstone and label heap counts are recounted
+ *    from the valid copies on open
+ * 6. Entries from the old SharedPreferences file are migrated whenever the header's
+ *    migrated flag is missing and the user is unlocked, so a store first opened
+ *    during direct boot still picks them up after the first unlock
+ * 7. The file lives in device-protected storage so it can be read on
+ *    LOCKED_BOOT_COMPLETED, before the user unlocks after a reboot
+ */
+public final class MappedAlarmStore {
+
+    private static final String TAG = "MappedAlarmStore";
+    private static final String FILE_NAME = "alarmy_alarms.bin";
+    private static final String LEGACY_PREFS = "alarmy_alarms";
+    private static final String LEGACY_TRIGGER_ACTION = "com.unlockam.ALARMY_ALARM_TRIGGER";
+
+    private static final int MAGIC = 0x55414D53; // "UAMS"
+    private static final int VERSION = 2;
+    // Single-copy records without checksums; upgraded on open
+    private static final int VERSION_UNCHECKED = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int COPY_SIZE = 32;
+    private static final int RECORD_SIZE = 2 * COPY_SIZE;
+    private static final int V1_RECORD_SIZE = 24;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_LABEL_HEAP = 4096;
+    private static final int MAX_LABEL_BYTES = 256;
+
+    // Header offsets
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_CAPACITY = 8;
+    private static final int H_LABEL_HEAP_SIZE = 12;
+    private static final int H_LABEL_HEAP_USED = 16;
+    private static final int H_LIVE = 20;
+    private static final int H_TOMBSTONES = 24;
+    private static final int H_FLAGS = 28;
+    private static final int FLAG_MIGRATED = 1;
+
+    // Record copy offsets and states
+    private static final int R_ALARM_ID = 0;
+    private static final int R_STATE = 4;
+    // Missed-alarm grace in minutes plus one; 0 means the default
+    private static final int R_GRACE = 6;
+    private static final int R_TRIGGER_AT = 8;
+    private static final int R_LABEL_OFFSET = 16;
+    private static final int R_LABEL_LENGTH = 20;
+    private static final int R_GENERATION = 24;
+    private static final int R_CHECKSUM = 28;
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final byte TOMBSTONE = 2;
+    private static final byte NO_COPY = -1;
+
+    private static MappedAlarmStore instance;
+
+    private final File file;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int labelHeapSize;
+    // Current copy of every slot, or NO_COPY while the slot is empty
+    private byte[] current;
+    private int live;
+    private int tombstones;
+
+    /**
+     * One stored alarm
+     */
+    public static class Record {
+        public final int alarmId;
+        public final long triggerAt;
+        public final String label;
+        public final long missedGraceMs;
+
+        Record(int alarmId, long triggerAt, String label, long missedGraceMs) {
+            this.alarmId = alarmId;
+            this.triggerAt = triggerAt;
+            this.label = label;
+            this.missedGraceMs = missedGraceMs;
+        }
+    }
+
+    public static synchronized MappedAlarmStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new MappedAlarmStore(context.getApplicationContext());
+        } else {
+            // A store opened during direct boot still owes the migration once the user unlocks
+            instance.migrateLegacyPrefs(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Cancel the setAlarmClock() registration builds before the shared queue made for
+     * this alarm on their own (request code = alarm ID); a no-op when there is none
+     */
+    public static void cancelLegacyRegistration(Context context, int alarmId) {
+        Intent intent = new Intent(context, AlarmyStyleAlarmReceiver.class);
+        intent.setAction(LEGACY_TRIGGER_ACTION);
+        PendingIntent legacy = PendingIntent.getBroadcast(
+            context,
+            alarmId,
+            intent,
+            PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE
+        );
+        if (legacy == null) {
+            return;
+        }
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager != null) {
+            alarmManager.cancel(legacy);
+        }
+        legacy.cancel();
+        Log.d(TAG, "🧹 Cancelled legacy registration of alarm " + alarmId);
+    }
+
+    private MappedAlarmStore(Context context) {
+        this.file = new File(DirectBootStorage.forFile(context, FILE_NAME).getFilesDir(), FILE_NAME);
+        try {
+            boolean existed = file.exists() && open();
+            if (!existed) {
+                rebuild(new ArrayList<Record>(), INITIAL_CAPACITY, INITIAL_LABEL_HEAP, 0);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open alarm store " + file, e);
+        }
+        migrateLegacyPrefs(context);
+    }
+
+    /**
+     * Insert or replace an alarm - O(1). The grace window is kept at minute resolution.
+     */
+    public synchronized void put(int alarmId, long triggerAt, String label, long missedGraceMs) {
+        store(alarmId, triggerAt, label, missedGraceMs);
+        map.force();
+    }
+
+    /**
+     * Delete an alarm - O(1)
+     *
+     * @return true if it was stored
+     */
+    public synchronized boolean remove(int alarmId) {
+        int slot = findSlot(alarmId);
+        if (stateOf(slot) != USED) {
+            return false;
+        }
+        writeCopy(slot, alarmId, TOMBSTONE, (short) 0, 0L, 0, new byte[0]);
+        live--;
+        tombstones++;
+        writeCounters();
+        map.force();
+        return true;
+    }
+
+    /**
+     * Trigger time of an alarm, or -1 if it is not stored
+     */
+    public synchronized long getTriggerAt(int alarmId) {
+        int slot = findSlot(alarmId);
+        return stateOf(slot) == USED ? map.getLong(copyBase(slot, current[slot]) + R_TRIGGER_AT) : -1L;
+    }
+
+    /**
+     * Every stored alarm, in one sequential scan of the slot table
+     */
+    public synchronized List<Record> loadAll() {
+        List<Record> records = new ArrayList<>(live);
+        for (int slot = 0; slot < capacity; slot++) {
+            if (stateOf(slot) == USED) {
+                int base = copyBase(slot, current[slot]);
+                records.add(new Record(
+                    map.getInt(base + R_ALARM_ID),
+                    map.getLong(base + R_TRIGGER_AT),
+                    readLabel(map.getInt(base + R_LABEL_OFFSET), map.getInt(base + R_LABEL_LENGTH)),
+                    decodeGrace(map.getShort(base + R_GRACE))
+                ));
+            }
+        }
+        return records;
+    }
+
+    public synchronized int size() {
+        return live;
+    }
+
+    /**
+     * put() without forcing, so a rebuild or migration forces once at the end
+     */
+    private void store(int alarmId, long triggerAt, String label, long missedGraceMs) {
+        byte[] labelBytes = encodeLabel(label);
+        if (needsRebuildForInsert(alarmId) || !labelFits(alarmId, labelBytes)) {
+            List<Record> records = loadAll();
+            int newCapacity = capacity;
+            while ((records.size() + 1) * 2 > newCapacity) {
+                newCapacity *= 2;
+            }
+            int liveLabelBytes = labelBytes.length;
+            for (Record record : records) {
+                liveLabelBytes += encodeLabel(record.label).length;
+            }
+            int newHeap = Math.max(labelHeapSize, Integer.highestOneBit(Math.max(liveLabelBytes * 2, 1)) << 1);
+            try {
+                rebuild(records, newCapacity, newHeap, map.getInt(H_FLAGS));
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot rebuild alarm store", e);
+            }
+        }
+
+        int slot = findSlot(alarmId);
+        byte state = stateOf(slot);
+        writeCopy(slot, alarmId, USED, encodeGrace(missedGraceMs), triggerAt, labelOffsetFor(slot, labelBytes),
+            labelBytes);
+        if (state != USED) {
+            live++;
+            if (state == TOMBSTONE) {
+                tombstones--;
+            }
+            writeCounters();
+        }
+    }
+
+    /**
+     * Fill the slot's other copy with the next generation; it becomes current only
+     * once its checksum is in place
+     */
+    private void writeCopy(int slot, int alarmId, byte state, short grace, long triggerAt, int labelOffset,
+                           byte[] labelBytes) {
+        int generation = current[slot] == NO_COPY ? 1 : map.getInt(copyBase(slot, current[slot]) + R_GENERATION) + 1;
+        byte copy = current[slot] == 0 ? (byte) 1 : (byte) 0;
+        int base = copyBase(slot, copy);
+        writeLabel(labelOffset, labelBytes);
+        map.putInt(base + R_ALARM_ID, alarmId);
+        map.put(base + R_STATE, state);
+        map.put(base + R_STATE + 1, (byte) 0);
+        map.putShort(base + R_GRACE, grace);
+        map.putLong(base + R_TRIGGER_AT, triggerAt);
+        map.putInt(base + R_LABEL_OFFSET, labelOffset);
+        map.putInt(base + R_LABEL_LENGTH, labelBytes.length);
+        map.putInt(base + R_GENERATION, generation);
+        map.putInt(base + R_CHECKSUM, checksum(base));
+        current[slot] = copy;
+    }
+
+    /**
+     * Offset to write a label at: the current one if the bytes are unchanged, else the heap's end
+     */
+    private int labelOffsetFor(int slot, byte[] labelBytes) {
+        if (stateOf(slot) == USED && sameLabel(copyBase(slot, current[slot]), labelBytes)) {
+            return map.getInt(copyBase(slot, current[slot]) + R_LABEL_OFFSET);
+        }
+        int offset = map.getInt(H_LABEL_HEAP_USED);
+        map.putInt(H_LABEL_HEAP_USED, offset + labelBytes.length);
+        return offset;
+    }
+
+    private boolean sameLabel(int base, byte[] labelBytes) {
+        if (map.getInt(base + R_LABEL_LENGTH) != labelBytes.length) {
+            return false;
+        }
+        int labelBase = labelHeapBase() + map.getInt(base + R_LABEL_OFFSET);
+        for (int i = 0; i < labelBytes.length; i++) {
+            if (map.get(labelBase + i) != labelBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * CRC32 over a copy's fields before the checksum, plus the label it points to
+     */
+    private int checksum(int base) {
+        byte[] fields = new byte[R_CHECKSUM];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = map.get(base + i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(fields);
+        int labelOffset = map.getInt(base + R_LABEL_OFFSET);
+        int labelLength = map.getInt(base + R_LABEL_LENGTH);
+        if (labelLength > 0) {
+            if (labelOffset < 0 || labelLength > MAX_LABEL_BYTES || labelOffset + labelLength > labelHeapSize) {
+                return ~map.getInt(base + R_CHECKSUM);
+            }
+            byte[] label = new byte[labelLength];
+            int labelBase = labelHeapBase() + labelOffset;
+            for (int i = 0; i < labelLength; i++) {
+                label[i] = map.get(labelBase + i);
+            }
+            crc.update(label);
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Generation of a copy whose checksum holds, or -1 if it was never written or is torn
+     */
+    private long validGeneration(int slot, int copy) {
+        int base = copyBase(slot, copy);
+        byte state = map.get(base + R_STATE);
+        if ((state != USED && state != TOMBSTONE) || map.getInt(base + R_CHECKSUM) != checksum(base)) {
+            return -1L;
+        }
+        return map.getInt(base + R_GENERATION) & 0xFFFFFFFFL;
+    }
+
+    private byte stateOf(int slot) {
+        return current[slot] == NO_COPY ? EMPTY : map.get(copyBase(slot, current[slot]) + R_STATE);
+    }
+
+    private void writeCounters() {
+        map.putInt(H_LIVE, live);
+        map.putInt(H_TOMBSTONES, tombstones);
+    }
+
+    /**
+     * The slot holding {@code alarmId}, or else the slot it should be inserted into
+     * (the first tombstone on its probe path, or the empty slot that ends it)
+     */
+    private int findSlot(int alarmId) {
+        int mask = capacity - 1;
+        int slot = hash(alarmId) & mask;
+        int firstTombstone = -1;
+        for (int probes = 0; probes < capacity; probes++) {
+            byte state = stateOf(slot);
+            if (state == EMPTY) {
+                return firstTombstone >= 0 ? firstTombstone : slot;
+            }
+            if (state == TOMBSTONE) {
+                if (firstTombstone < 0) {
+                    firstTombstone = slot;
+                }
+            } else if (map.getInt(copyBase(slot, current[slot]) + R_ALARM_ID) == alarmId) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return firstTombstone;
+    }
+
+    private boolean needsRebuildForInsert(int alarmId) {
+        if (stateOf(findSlot(alarmId)) == USED) {
+            return false;
+        }
+        // Keep the load factor, tombstones included, at or below 3/4 so probe runs stay short
+        int occupied = live + tombstones + 1;
+        return occupied * 4 > capacity * 3;
+    }
+
+    private boolean labelFits(int alarmId, byte[] labelBytes) {
+        int slot = findSlot(alarmId);
+        if (stateOf(slot) == USED && sameLabel(copyBase(slot, current[slot]), labelBytes)) {
+            return true;
+        }
+        return map.getInt(H_LABEL_HEAP_USED) + labelBytes.length <= labelHeapSize;
+    }
+
+    private static short encodeGrace(long missedGraceMs) {
+        long minutes = (Math.max(0, missedGraceMs) + 59999) / 60000;
+        return (short) Math.min(minutes + 1, 0xFFFF);
+    }
+
+    private static long decodeGrace(short encoded) {
+        int value = encoded & 0xFFFF;
+        return value == 0 ? QueuedAlarm.DEFAULT_MISSED_GRACE_MS : (value - 1) * 60000L;
+    }
+
+    private static int hash(int alarmId) {
+        int h = alarmId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int copyBase(int slot, int copy) {
+        return HEADER_SIZE + slot * RECORD_SIZE + copy * COPY_SIZE;
+    }
+
+    private int labelHeapBase() {
+        return HEADER_SIZE + capacity * RECORD_SIZE;
+    }
+
+    private void writeLabel(int offset, byte[] bytes) {
+        int base = labelHeapBase() + offset;
+        for (int i = 0; i < bytes.length; i++) {
+            map.put(base + i, bytes[i]);
+        }
+    }
+
+    private String readLabel(int offset, int length) {
+        byte[] bytes = new byte[length];
+        int base = labelHeapBase() + offset;
+        for (int i = 0; i < length; i++) {
+            bytes[i] = map.get(base + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encodeLabel(String label) {
+        String value = label != null ? label : "";
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        while (bytes.length > MAX_LABEL_BYTES) {
+            value = value.substring(0, value.length() - 1);
+            bytes = value.getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    /**
+     * Map an existing file, picking each slot's current copy and recounting the header
+     *
+     * @return false if the file is not a valid store and has to be recreated
+     */
+    private boolean open() throws IOException {
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() < HEADER_SIZE) {
+                return false;
+            }
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            int version = mapped.getInt(H_VERSION);
+            int storedCapacity = mapped.getInt(H_CAPACITY);
+            int storedHeap = mapped.getInt(H_LABEL_HEAP_SIZE);
+            int recordSize = version == VERSION_UNCHECKED ? V1_RECORD_SIZE : RECORD_SIZE;
+            long expectedLength = HEADER_SIZE + (long) storedCapacity * recordSize + storedHeap;
+            if (mapped.getInt(H_MAGIC) != MAGIC || (version != VERSION && version != VERSION_UNCHECKED) ||
+                Integer.bitCount(storedCapacity) != 1 || storedHeap < 0 || expectedLength != raf.length()) {
+                Log.w(TAG, "⚠️ Alarm store is corrupt or from another version - recreating");
+                return false;
+            }
+            if (version == VERSION_UNCHECKED) {
+                List<Record> records = readUnchecked(mapped, storedCapacity);
+                Log.d(TAG, "⬆️ Upgrading alarm store with " + records.size() + " alarms to checksummed records");
+                rebuild(records, storedCapacity, storedHeap, 0);
+                return true;
+            }
+            map = mapped;
+            capacity = storedCapacity;
+            labelHeapSize = storedHeap;
+        }
+
+        current = new byte[capacity];
+        live = 0;
+        tombstones = 0;
+        int heapUsed = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long first = validGeneration(slot, 0);
+            long second = validGeneration(slot, 1);
+            current[slot] = first < 0 && second < 0 ? NO_COPY : first >= second ? (byte) 0 : (byte) 1;
+            for (int copy = 0; copy < 2; copy++) {
+                if (validGeneration(slot, copy) >= 0) {
+                    // The fallback copy's label must survive later appends too
+                    int base = copyBase(slot, copy);
+                    heapUsed = Math.max(heapUsed, map.getInt(base + R_LABEL_OFFSET) + map.getInt(base + R_LABEL_LENGTH));
+                }
+            }
+            byte state = stateOf(slot);
+            if (state == USED) {
+                live++;
+            } else if (state == TOMBSTONE) {
+                tombstones++;
+            }
+        }
+        map.putInt(H_LABEL_HEAP_USED, heapUsed);
+        writeCounters();
+        Log.d(TAG, "📂 Mapped alarm store: " + live + " alarms, " + capacity + " slots");
+        return true;
+    }
+
+    /**
+     * Live records of a version 1 file: one 24-byte record per slot, state byte last written
+     */
+    private static List<Record> readUnchecked(MappedByteBuffer mapped, int storedCapacity) {
+        List<Record> records = new ArrayList<>();
+        int labelBase = HEADER_SIZE + storedCapacity * V1_RECORD_SIZE;
+        for (int slot = 0; slot < storedCapacity; slot++) {
+            int base = HEADER_SIZE + slot * V1_RECORD_SIZE;
+            if (mapped.get(base + R_STATE) != USED) {
+                continue;
+            }
+            int labelLength = Math.max(0, Math.min(MAX_LABEL_BYTES, mapped.getInt(base + R_LABEL_LENGTH)));
+            int labelStart = labelBase + mapped.getInt(base + R_LABEL_OFFSET);
+            byte[] label = new byte[labelLength];
+            if (labelStart >= labelBase && labelStart + labelLength <= mapped.capacity()) {
+                for (int i = 0; i < labelLength; i++) {
+                    label[i] = mapped.get(labelStart + i);
+                }
+            }
+            records.add(new Record(mapped.getInt(base + R_ALARM_ID), mapped.getLong(base + R_TRIGGER_AT),
+                new String(label, StandardCharsets.UTF_8), decodeGrace(mapped.getShort(base + R_GRACE))));
+        }
+        return records;
+    }
+
+    /**
+     * Write {@code records} into a fresh file of the given geometry and swap it in atomically
+     */
+    private void rebuild(List<Record> records, int newCapacity, int newHeap, int flags) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        long length = HEADER_SIZE + (long) newCapacity * RECORD_SIZE + newHeap;
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+            raf.setLength(0);
+            raf.setLength(length);
+            map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        capacity = newCapacity;
+        labelHeapSize = newHeap;
+        current = new byte[newCapacity];
+        Arrays.fill(current, NO_COPY);
+        live = 0;
+        tombstones = 0;
+        map.putInt(H_MAGIC, MAGIC);
+        map.putInt(H_VERSION, VERSION);
+        map.putInt(H_CAPACITY, newCapacity);
+        map.putInt(H_LABEL_HEAP_SIZE, newHeap);
+        map.putInt(H_LABEL_HEAP_USED, 0);
+        map.putInt(H_FLAGS, flags);
+        writeCounters();
+        for (Record record : records) {
+            store(record.alarmId, record.triggerAt, record.label, record.missedGraceMs);
+        }
+        map.force();
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        Log.d(TAG, "🧱 Rebuilt alarm store: " + records.size() + " alarms, " + newCapacity + " slots, " +
+            newHeap + "B labels");
+    }
+
+    /**
+     * Import the old SharedPreferences entries unless the header says that already
+     * happened. Alarms the store already holds are newer than their legacy copy and kept.
+     * Each entry's own AlarmManager registration is cancelled - the queue arms it now
+     */
+    private synchronized void migrateLegacyPrefs(Context context) {
+        if ((map.getInt(H_FLAGS) & FLAG_MIGRATED) != 0 || !DirectBootStorage.isUserUnlocked(context)) {
+            // Credential-encrypted preferences cannot be read before the first unlock
+            return;
+        }
+        SharedPreferences legacy = context.getSharedPreferences(LEGACY_PREFS, Context.MODE_PRIVATE);
+        Map<String, ?> entries = legacy.getAll();
+        int migrated = 0;
+        for (Map.Entry<String, ?> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            if (!key.startsWith("alarm_") || !key.endsWith("_time") || !(entry.getValue() instanceof Long)) {
+                continue;
+            }
+            try {
+                int alarmId = Integer.parseInt(key.substring("alarm_".length(), key.length() - "_time".length()));
+                cancelLegacyRegistration(context, alarmId);
+                if (stateOf(findSlot(alarmId)) == USED) {
+                    continue;
+                }
+                store(alarmId, (Long) entry.getValue(), legacy.getString("alarm_" + alarmId + "_label", "Wake up!"),
+                    QueuedAlarm.DEFAULT_MISSED_GRACE_MS);
+                migrated++;
+            } catch (NumberFormatException e) {
+                Log.w(TAG, "⚠️ Skipping legacy entry " + key);
+            }
+        }
+        // Set only after the entries are in and their registrations gone, so a crash in between repeats the migration
+        map.putInt(H_FLAGS, map.getInt(H_FLAGS) | FLAG_MIGRATED);
+        map.force();
+        if (!entries.isEmpty()) {
+            legacy.edit().clear().apply();
+        }
+        Log.d(TAG, "📦 Migrated " + migrated + " alarms from SharedPreferences");
+    }
+}
@@ -0,0 +1,77 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.List;
+
+/**
+ * Record of alarms that were due while the phone was off (or the app force-stopped)
+ * and came back too late to ring.
+ *
+ * Kept in device-protected storage next to the queue, so misses found on
+ * LOCKED_BOOT_COMPLETED are recorded before the user unlocks. The log is capped;
+ * the oldest entries are dropped first.
+ */
+public final class MissedAlarmLog {
+
+    private static final String TAG = "MissedAlarmLog";
+    private static final String PREFS_NAME = "UnlockAM_MissedAlarms";
+    private static final String KEY_ENTRIES = "entries";
+    private static final int MAX_ENTRIES = 50;
+
+    private MissedAlarmLog() {
+    }
+
+    public static synchronized void record(Context context, List<QueuedAlarm> missed, long detectedAt) {
+        if (missed.isEmpty()) {
+            return;
+        }
+        JSONArray entries = load(context);
+        try {
+            for (QueuedAlarm alarm : missed) {
+                JSONObject entry = new JSONObject();
+                entry.put("target", alarm.target);
+                entry.put("alarmId", alarm.alarmId);
+                entry.put("label", alarm.label);
+                entry.put("triggerAt", alarm.triggerAt);
+                entry.put("detectedAt", detectedAt);
+                entry.put("recurring", alarm.isRecurring());
+                entries.put(entry);
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "❌ Failed to record missed alarms", e);
+            return;
+        }
+
+        JSONArray capped = new JSONArray();
+        for (int i = Math.max(0, entries.length() - MAX_ENTRIES); i < entries.length(); i++) {
+            capped.put(entries.opt(i));
+        }
+        prefs(context).edit().putString(KEY_ENTRIES, capped.toString()).apply();
+        Log.d(TAG, "📝 Recorded " + missed.size() + " missed alarms");
+    }
+
+    /**
+     * Missed alarms, oldest first
+     */
+    public static synchronized JSONArray load(Context context) {
+        try {
+            return new JSONArray(prefs(context).getString(KEY_ENTRIES, "[]"));
+        } catch (JSONException e) {
+            Log.e(TAG, "❌ Discarding unreadable missed-alarm log", e);
+            return new JSONArray();
+        }
+    }
+
+    public static synchronized void clear(Context context) {
+        prefs(context).edit().remove(KEY_ENTRIES).apply();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return DirectBootStorage.forPreferences(context, PREFS_NAME).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,54 @@
+package com.unlockam.alarmmodule;
+
+/**
+ * The next alarm that will ring, as published by {@link AlarmQueue}.
+ *
+ * Stop entries and pre-warm wake-ups are not alarms the user sees, so this is the
+ * earliest ringing entry rather than the queue head. The queue recomputes it on
+ * every change and notifies listeners only when it actually differs, so the UI can
+ * count down locally instead of polling storage.
+ */
+public final class NextAlarm {
+
+    public interface Listener {
+        /**
+         * @param next the new next alarm, or null once nothing is queued
+         */
+        void onNextAlarmChanged(NextAlarm next);
+    }
+
+    public final String target;
+    public final String alarmId;
+    public final String label;
+    public final long triggerAt;
+    // 0 when the alarm rings until dismissed
+    public final long endAt;
+
+    private NextAlarm(QueuedAlarm alarm) {
+        this.target = alarm.target;
+        this.alarmId = alarm.alarmId;
+        this.label = alarm.label;
+        this.triggerAt = alarm.triggerAt;
+        this.endAt = alarm.ringDurationMs > 0 ? alarm.triggerAt + alarm.ringDurationMs : 0L;
+    }
+
+    /**
+     * The published form of the earliest ringing queue entry, or null if there is none
+     */
+    static NextAlarm of(QueuedAlarm earliest) {
+        return earliest != null ? new NextAlarm(earliest) : null;
+    }
+
+    static boolean same(NextAlarm a, NextAlarm b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.triggerAt == b.triggerAt && a.endAt == b.endAt && a.target.equals(b.target) &&
+            a.alarmId.equals(b.alarmId) && (a.label == null ? b.label == null : a.label.equals(b.label));
+    }
+
+    @Override
+    public String toString() {
+        return target + ":" + alarmId + "@" + triggerAt;
+    }
+}
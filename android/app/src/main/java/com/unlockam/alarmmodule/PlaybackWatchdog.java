@@ -0,0 +1,150 @@
+package com.unlockam.alarmmodule;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Watches a ringing alarm for silence and restarts its audio.
+ *
+ * If the media server restarts or a player hits an error mid-ring, the alarm goes
+ * silent while its notification stays up. The watchdog polls playback state and
+ * asks the service to restart audio when nothing is audible.
+ *
+ * Key design decisions:
+ * 1. Checks run on their own background HandlerThread; only the restart itself is
+ *    posted to the main thread, where the service keeps its state
+ * 2. The check interval adapts: it starts at MIN_INTERVAL_MS and doubles up to
+ *    MAX_INTERVAL_MS while playback stays healthy, and drops back to the minimum
+ *    as soon as silence is seen, so a long ring costs a check every few seconds
+ * 3. Restarts back off exponentially (RESTART_BACKOFF_MS doubling up to
+ *    MAX_BACKOFF_MS) so a layer that keeps dying does not spin; the attempt number
+ *    is passed on so the service can escalate through its fallback chain
+ * 4. Silence is measured from the last check that heard playback, so the reported
+ *    duration is an upper bound that includes the detection delay
+ * 5. While the target is still starting audio nothing is counted as silence
+ */
+public final class PlaybackWatchdog {
+
+    private static final String TAG = "PlaybackWatchdog";
+    private static final long MIN_INTERVAL_MS = 500L;
+    private static final long MAX_INTERVAL_MS = 8 * 1000L;
+    private static final long RESTART_BACKOFF_MS = 1000L;
+    private static final long MAX_BACKOFF_MS = 30 * 1000L;
+
+    public interface Target {
+        /**
+         * True while audio is being started and is not expected to be audible yet
+         */
+        boolean isStartingAudio();
+
+        boolean isAnyPlayerPlaying();
+
+        /**
+         * Called on the main thread
+         *
+         * @param attempt  1 for the first restart since playback was last healthy
+         * @param silentMs how long nothing has been heard, at most
+         */
+        void restartAudio(int attempt, long silentMs);
+    }
+
+    private final Target target;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private HandlerThread thread;
+    private Handler handler;
+
+    // Only touched on the watchdog thread
+    private long intervalMs = MIN_INTERVAL_MS;
+    private long lastHeardAt;
+    private int attempts;
+    private long nextRestartAt;
+
+    public PlaybackWatchdog(Target target) {
+        this.target = target;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new HandlerThread("UnlockAM-PlaybackWatchdog", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                intervalMs = MIN_INTERVAL_MS;
+                lastHeardAt = SystemClock.elapsedRealtime();
+                attempts = 0;
+                nextRestartAt = 0;
+            }
+        });
+        handler.postDelayed(check, MIN_INTERVAL_MS);
+        Log.d(TAG, "🐕 Playback watchdog started");
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        handler.removeCallbacksAndMessages(null);
+        thread.quit();
+        thread = null;
+        handler = null;
+        Log.d(TAG, "🐕 Playback watchdog stopped");
+    }
+
+    private final Runnable check = new Runnable() {
+        @Override
+        public void run() {
+            long now = SystemClock.elapsedRealtime();
+            boolean playing;
+            try {
+                playing = target.isStartingAudio() || target.isAnyPlayerPlaying();
+            } catch (IllegalStateException e) {
+                // A player was released between the read and the call; look again shortly
+                schedule(MIN_INTERVAL_MS);
+                return;
+            }
+
+            if (playing) {
+                if (attempts > 0) {
+                    Log.d(TAG, "✅ Playback healthy again after " + attempts + " restart(s)");
+                    attempts = 0;
+                    nextRestartAt = 0;
+                }
+                lastHeardAt = now;
+                intervalMs = Math.min(intervalMs * 2, MAX_INTERVAL_MS);
+                schedule(intervalMs);
+                return;
+            }
+
+            intervalMs = MIN_INTERVAL_MS;
+            if (now >= nextRestartAt) {
+                final int attempt = ++attempts;
+                final long silentMs = now - lastHeardAt;
+                long backoff = Math.min(RESTART_BACKOFF_MS << Math.min(attempt - 1, 16), MAX_BACKOFF_MS);
+                nextRestartAt = now + backoff;
+                Log.w(TAG, "🔇 Alarm silent for up to " + silentMs + "ms - restart #" + attempt +
+                    ", next no sooner than " + backoff + "ms");
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        target.restartAudio(attempt, silentMs);
+                    }
+                });
+            }
+            schedule(intervalMs);
+        }
+    };
+
+    private synchronized void schedule(long delayMs) {
+        if (handler != null) {
+            handler.postDelayed(check, delayMs);
+        }
+    }
+}
@@ -24,6 +24,8 @@ import com.unlockam.mobile.devbuild.R;
  * 3. Provides snooze/dismiss controls with clear feedback
  * 4. Falls back gracefully if lockscreen permissions are denied
  * 5. Wakes screen and keeps it on during alarm
+ * 6. Dismiss and snooze are written to AlarmHistory with the time spent ringing;
+ *    the service is told so it doesn't record them a second time
  */
 public class ProductionAlarmActivity extends Activity {
     
@@ -32,6 +34,7 @@ public class ProductionAlarmActivity extends Activity {
     
     private String alarmId;
     private String alarmLabel;
+    private long firedAt;
     private PowerManager.WakeLock screenWakeLock;
     
     @Override
@@ -43,6 +46,8 @@ public class ProductionAlarmActivity extends Activity {
         Intent intent = getIntent();
         alarmId = intent.getStringExtra("alarmId");
         alarmLabel = intent.getStringExtra("label");
+        // Opened from the notification instead of the receiver: count from when the screen appeared
+        firedAt = intent.getLongExtra("firedAt", System.currentTimeMillis());
         
         if (alarmId == null) {
             Log.e(TAG, "❌ No alarm ID provided, finishing activity");
@@ -251,11 +256,14 @@ public class ProductionAlarmActivity extends Activity {
      */
     private void dismissAlarm() {
         Log.d(TAG, "🛑 User dismissed alarm: " + alarmId);
+        AlarmHistory.getInstance(this).record(AlarmHistory.DISMISSED, QueuedAlarm.TARGET_PRODUCTION, alarmId,
+            System.currentTimeMillis() - firedAt);
         
         // Send stop command to service
         Intent stopIntent = new Intent(this, ProductionAlarmService.class);
         stopIntent.setAction("STOP_ALARM");
         stopIntent.putExtra("alarmId", alarmId);
+        stopIntent.putExtra("historyRecorded", true);
         
         try {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -281,6 +289,8 @@ public class ProductionAlarmActivity extends Activity {
      */
     private void snoozeAlarm() {
         Log.d(TAG, "😴 User snoozed alarm: " + alarmId + " for " + SNOOZE_MINUTES + " minutes");
+        AlarmHistory.getInstance(this).record(AlarmHistory.SNOOZED, QueuedAlarm.TARGET_PRODUCTION, alarmId,
+            System.currentTimeMillis() - firedAt);
         
         // Send snooze command to service
         Intent snoozeIntent = new Intent(this, ProductionAlarmService.class);
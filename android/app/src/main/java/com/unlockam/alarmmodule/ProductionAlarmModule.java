@@ -1,7 +1,6 @@
 package com.unlockam.alarmmodule;
 
 import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
@@ -14,9 +13,19 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Production-ready alarm module for React Native.
@@ -25,24 +34,80 @@ import android.util.Log;
  * under all Android constraints including Doze mode and battery optimizations.
  * 
  * Key features:
- * 1. Uses AlarmManager.setExactAndAllowWhileIdle for Doze-resistant alarms
+ * 1. Alarms go through the shared AlarmQueue, which arms only the next-due
+ *    alarm with AlarmManager.setExactAndAllowWhileIdle for Doze resistance
  * 2. Proper permission handling for Android 12+ exact alarms
  * 3. Battery optimization detection and guidance
  * 4. Fallback mechanisms for different Android versions
+ * 5. Batch scheduling/cancellation with one permission check and one persisted write
+ * 6. Optional recurrence rules (daily, weekly, every N days, monthly) re-armed natively
+ * 7. Optional per-alarm pre-warm lead so audio and notification are ready before the trigger
+ * 8. Configurable coalescing window that merges clustered alarms into one ringing session
+ * 9. Per-alarm priority class (critical, exact, windowed) choosing setAlarmClock,
+ *    setExactAndAllowWhileIdle or setWindow; windowed alarms need no exact permission
+ * 10. Doze quota planning: exact alarms the idle quota would delay are promoted, and
+ *    every result reports the alarm's expected worst-case delay
+ * 11. Optional end time: ringing is stopped natively, without a JS timer
+ * 12. Armed-state reconciliation that repairs only dropped or stale registrations
+ * 13. Every schedule and cancel is written through to ProductionAlarmRegistry,
+ *    the SQLite registry boot restore reads from
+ * 14. Per-alarm missed-alarm grace window: an alarm due while the phone was off
+ *    rings late inside it and is reported by getMissedAlarms past it
+ * 15. The next alarm is readable synchronously (getNextAlarm) and pushed as a
+ *    NextAlarmChanged event only when it changes, so JS never polls for it
+ * 16. Fire, snooze and dismiss history with time-range queries (queryHistory)
+ *    served from AlarmHistory's segment index
+ * 17. Wake-up statistics (getWakeStats) maintained as events are recorded, so
+ *    reading them costs the same however long the history gets
  */
 public class ProductionAlarmModule extends ReactContextBaseJavaModule {
     
     private static final String TAG = "ProductionAlarmModule";
     private static final String MODULE_NAME = "ProductionAlarm";
+    private static final String EVENT_NEXT_ALARM_CHANGED = "NextAlarmChanged";
+    
+    // Batch scheduling runs off the bridge thread; one thread keeps batches in submission order
+    private static final ExecutorService BATCH_EXECUTOR = Executors.newSingleThreadExecutor();
     
     private ReactApplicationContext reactContext;
     private AlarmManager alarmManager;
+    private AlarmQueue alarmQueue;
+    private ProductionAlarmRegistry registry;
 
     public ProductionAlarmModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
         this.alarmManager = (AlarmManager) reactContext.getSystemService(Context.ALARM_SERVICE);
+        this.alarmQueue = AlarmQueue.getInstance(reactContext);
+        this.registry = ProductionAlarmRegistry.getInstance(reactContext);
+        this.alarmQueue.addNextAlarmListener(nextAlarmListener);
     }
+    
+    @Override
+    public void invalidate() {
+        alarmQueue.removeNextAlarmListener(nextAlarmListener);
+        super.invalidate();
+    }
+    
+    // Called with the queue's lock held - only hands the value to the JS event queue
+    private final NextAlarm.Listener nextAlarmListener = new NextAlarm.Listener() {
+        @Override
+        public void onNextAlarmChanged(NextAlarm next) {
+            if (!reactContext.hasActiveReactInstance()) {
+                return;
+            }
+            WritableMap event = Arguments.createMap();
+            WritableMap nextAlarm = toNextAlarmMap(next);
+            if (nextAlarm != null) {
+                event.putMap("nextAlarm", nextAlarm);
+            } else {
+                event.putNull("nextAlarm");
+            }
+            reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(EVENT_NEXT_ALARM_CHANGED, event);
+        }
+    };
 
     @NonNull
     @Override
@@ -56,63 +121,29 @@ public class ProductionAlarmModule extends ReactContextBaseJavaModule {
     @ReactMethod
     public void scheduleExactAlarm(ReadableMap options, Promise promise) {
         try {
-            String alarmId = options.getString("alarmId");
-            double triggerTimeMs = options.getDouble("triggerTime");
-            String soundType = options.hasKey("soundType") ? options.getString("soundType") : "default";
-            boolean vibration = options.hasKey("vibration") ? options.getBoolean("vibration") : true;
-            String label = options.hasKey("label") ? options.getString("label") : "Alarm";
+            QueuedAlarm alarm = parseAlarmOptions(options);
             
-            Log.d(TAG, "📅 Scheduling exact alarm: " + alarmId + " at " + triggerTimeMs);
+            Log.d(TAG, "📅 Scheduling exact alarm: " + alarm.alarmId + " at " + alarm.triggerAt);
             
-            // Check if we can schedule exact alarms
-            if (!canScheduleExactAlarms()) {
+            // Check if we can schedule exact alarms - windowed alarms don't need the permission
+            if (alarm.needsExactPermission() && !canScheduleExactAlarms()) {
                 promise.reject("PERMISSION_REQUIRED", "Exact alarm permission required for Android 12+");
                 return;
             }
             
-            // Create intent for our production receiver
-            Intent alarmIntent = new Intent(reactContext, ProductionAlarmReceiver.class);
-            alarmIntent.setAction("com.unlockam.ALARM_TRIGGER");
-            alarmIntent.putExtra("alarmId", alarmId);
-            alarmIntent.putExtra("soundType", soundType);
-            alarmIntent.putExtra("vibration", vibration);
-            alarmIntent.putExtra("label", label);
-            
-            // Create unique pending intent
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                reactContext,
-                alarmId.hashCode(), // Use hashCode for consistent ID
-                alarmIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-            
-            // Schedule the exact alarm with Doze whitelist
-            long triggerTime = (long) triggerTimeMs;
-            
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                // Android 6+ - Use setExactAndAllowWhileIdle for Doze resistance
-                alarmManager.setExactAndAllowWhileIdle(
-                    AlarmManager.RTC_WAKEUP,
-                    triggerTime,
-                    pendingIntent
-                );
-                Log.d(TAG, "✅ Exact alarm scheduled with Doze whitelist (API 23+)");
-            } else {
-                // Legacy Android - Use setExact
-                alarmManager.setExact(
-                    AlarmManager.RTC_WAKEUP,
-                    triggerTime,
-                    pendingIntent
-                );
-                Log.d(TAG, "✅ Exact alarm scheduled (Legacy API)");
-            }
+            // Hand the alarm to the shared queue - only the earliest alarm is armed with AlarmManager
+            String method = alarmQueue.schedule(alarm);
+            registry.upsert(alarm);
+            Log.d(TAG, "✅ Exact alarm queued (" + alarm.priority + " via " + method + ")");
             
             // Return success with details
             WritableMap result = Arguments.createMap();
             result.putBoolean("success", true);
-            result.putString("alarmId", alarmId);
-            result.putDouble("scheduledFor", triggerTime);
-            result.putString("method", Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? "setExactAndAllowWhileIdle" : "setExact");
+            result.putString("alarmId", alarm.alarmId);
+            result.putDouble("scheduledFor", alarm.triggerAt);
+            putPlan(result, alarmQueue.planFor(alarm), alarm);
+            result.putString("method", method);
+            result.putBoolean("armed", alarmQueue.isArmedHead(alarm));
             
             promise.resolve(result);
             
@@ -130,22 +161,9 @@ public class ProductionAlarmModule extends ReactContextBaseJavaModule {
         try {
             Log.d(TAG, "🗑️ Cancelling alarm: " + alarmId);
             
-            // Create matching intent
-            Intent alarmIntent = new Intent(reactContext, ProductionAlarmReceiver.class);
-            alarmIntent.setAction("com.unlockam.ALARM_TRIGGER");
-            alarmIntent.putExtra("alarmId", alarmId);
-            
-            // Create matching pending intent
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                reactContext,
-                alarmId.hashCode(),
-                alarmIntent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
-            
-            // Cancel the alarm
-            alarmManager.cancel(pendingIntent);
-            pendingIntent.cancel();
+            // Remove from the shared queue; re-arms AlarmManager if this was the next alarm
+            alarmQueue.cancel(QueuedAlarm.TARGET_PRODUCTION, alarmId);
+            registry.delete(alarmId);
             
             Log.d(TAG, "✅ Alarm cancelled successfully: " + alarmId);
             
@@ -161,6 +179,317 @@ public class ProductionAlarmModule extends ReactContextBaseJavaModule {
         }
     }
     
+    /**
+     * Schedule a batch of exact alarms in one bridge call.
+     * 
+     * The permission check runs once, the batch is applied on a background thread
+     * with a single persisted write, and the promise resolves with one result per
+     * alarm keyed by alarmId. Without the exact alarm permission only windowed
+     * alarms are accepted; the others fail individually.
+     */
+    @ReactMethod
+    public void scheduleExactAlarms(ReadableArray alarms, Promise promise) {
+        try {
+            Log.d(TAG, "📅 Scheduling batch of " + alarms.size() + " exact alarms");
+            
+            boolean exactAllowed = canScheduleExactAlarms();
+            
+            // Parse on the calling thread - bridge collections are not kept past this call
+            final WritableMap results = Arguments.createMap();
+            final List<QueuedAlarm> batch = new ArrayList<>();
+            for (int i = 0; i < alarms.size(); i++) {
+                ReadableMap options = alarms.getMap(i);
+                try {
+                    QueuedAlarm alarm = parseAlarmOptions(options);
+                    if (alarm.needsExactPermission() && !exactAllowed) {
+                        throw new SecurityException("Exact alarm permission required for Android 12+");
+                    }
+                    batch.add(alarm);
+                } catch (Exception e) {
+                    String key = options != null && options.hasKey("alarmId") ? options.getString("alarmId") : "index_" + i;
+                    results.putMap(key, createItemError(e));
+                }
+            }
+            
+            final int failed = alarms.size() - batch.size();
+            BATCH_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        String method = alarmQueue.scheduleAll(batch);
+                        registry.upsertAll(batch);
+                        
+                        for (QueuedAlarm alarm : batch) {
+                            // The armed head reports the API actually used, the rest the one they will get
+                            boolean armed = alarmQueue.isArmedHead(alarm);
+                            WritableMap item = Arguments.createMap();
+                            item.putBoolean("success", true);
+                            item.putDouble("scheduledFor", alarm.triggerAt);
+                            AlarmQuotaPlanner.Entry planned = alarmQueue.planFor(alarm);
+                            QueuedAlarm queued = planned != null ? planned.alarm : alarm;
+                            putPlan(item, planned, alarm);
+                            item.putString("method", armed && !"queued".equals(method) ? method : AlarmQueue.apiFor(queued));
+                            item.putBoolean("armed", armed);
+                            results.putMap(alarm.alarmId, item);
+                        }
+                        
+                        WritableMap result = Arguments.createMap();
+                        result.putBoolean("success", failed == 0);
+                        result.putInt("scheduled", batch.size());
+                        result.putInt("failed", failed);
+                        result.putMap("results", results);
+                        
+                        Log.d(TAG, "✅ Batch scheduled: " + batch.size() + " ok, " + failed + " failed");
+                        promise.resolve(result);
+                    } catch (Exception e) {
+                        Log.e(TAG, "❌ Failed to apply alarm batch", e);
+                        promise.reject("SCHEDULE_ERROR", e.getMessage(), e);
+                    }
+                }
+            });
+            
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to schedule alarm batch", e);
+            promise.reject("SCHEDULE_ERROR", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Cancel a batch of alarms in one bridge call with a single persisted write
+     */
+    @ReactMethod
+    public void cancelAlarms(ReadableArray alarmIds, Promise promise) {
+        try {
+            Log.d(TAG, "🗑️ Cancelling batch of " + alarmIds.size() + " alarms");
+            
+            final List<String> ids = new ArrayList<>();
+            for (int i = 0; i < alarmIds.size(); i++) {
+                ids.add(alarmIds.getString(i));
+            }
+            
+            BATCH_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<String> removed = alarmQueue.cancelAll(QueuedAlarm.TARGET_PRODUCTION, ids);
+                        registry.deleteAll(ids);
+                        
+                        WritableMap results = Arguments.createMap();
+                        for (String alarmId : ids) {
+                            WritableMap item = Arguments.createMap();
+                            item.putBoolean("success", true);
+                            item.putBoolean("wasScheduled", removed.contains(alarmId));
+                            results.putMap(alarmId, item);
+                        }
+                        
+                        WritableMap result = Arguments.createMap();
+                        result.putBoolean("success", true);
+                        result.putInt("cancelled", removed.size());
+                        result.putMap("results", results);
+                        
+                        Log.d(TAG, "✅ Batch cancelled: " + removed.size() + " of " + ids.size());
+                        promise.resolve(result);
+                    } catch (Exception e) {
+                        Log.e(TAG, "❌ Failed to apply cancel batch", e);
+                        promise.reject("CANCEL_ERROR", e.getMessage(), e);
+                    }
+                }
+            });
+            
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to cancel alarm batch", e);
+            promise.reject("CANCEL_ERROR", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Compare the persisted alarms with what AlarmManager still holds and re-arm only the difference
+     */
+    @ReactMethod
+    public void reconcileAlarms(Promise promise) {
+        BATCH_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    AlarmReconciler.Report report = AlarmReconciler.reconcile(reactContext);
+                    
+                    WritableMap result = Arguments.createMap();
+                    result.putBoolean("success", true);
+                    result.putInt("probed", report.probed);
+                    result.putInt("repaired", report.repaired());
+                    result.putBoolean("rearmed", report.rearmed);
+                    result.putInt("restored", report.restored);
+                    result.putInt("missed", report.missed);
+                    promise.resolve(result);
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Failed to reconcile alarms", e);
+                    promise.reject("RECONCILE_ERROR", e.getMessage(), e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Alarms that were due while the phone was off and came back past their grace window
+     */
+    @ReactMethod
+    public void getMissedAlarms(boolean clear, Promise promise) {
+        try {
+            JSONArray entries = MissedAlarmLog.load(reactContext);
+            WritableArray missed = Arguments.createArray();
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                WritableMap item = Arguments.createMap();
+                item.putString("alarmId", entry.getString("alarmId"));
+                item.putString("target", entry.getString("target"));
+                item.putString("label", entry.optString("label"));
+                item.putDouble("triggerAt", entry.getLong("triggerAt"));
+                item.putDouble("detectedAt", entry.getLong("detectedAt"));
+                item.putBoolean("recurring", entry.optBoolean("recurring"));
+                missed.pushMap(item);
+            }
+            if (clear) {
+                MissedAlarmLog.clear(reactContext);
+            }
+            
+            WritableMap result = Arguments.createMap();
+            result.putBoolean("success", true);
+            result.putArray("missed", missed);
+            promise.resolve(result);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to read missed alarms", e);
+            promise.reject("MISSED_ALARMS_ERROR", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Alarm events recorded between {@code from} and {@code to} (epoch ms, inclusive), oldest first
+     */
+    @ReactMethod
+    public void queryHistory(final double from, final double to, final Promise promise) {
+        BATCH_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    List<AlarmHistory.Event> events = AlarmHistory.getInstance(reactContext)
+                        .query((long) from, (long) to);
+                    
+                    WritableArray items = Arguments.createArray();
+                    for (AlarmHistory.Event event : events) {
+                        WritableMap item = Arguments.createMap();
+                        item.putDouble("at", event.at);
+                        item.putString("type", event.type);
+                        item.putString("target", event.target);
+                        item.putString("alarmId", event.alarmId);
+                        if (event.latencyMs != AlarmHistory.UNKNOWN_LATENCY) {
+                            item.putDouble("latencyMs", event.latencyMs);
+                        }
+                        items.pushMap(item);
+                    }
+                    
+                    WritableMap result = Arguments.createMap();
+                    result.putBoolean("success", true);
+                    result.putArray("events", items);
+                    promise.resolve(result);
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Failed to query alarm history", e);
+                    promise.reject("HISTORY_ERROR", e.getMessage(), e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Precomputed wake-up statistics - fire delay, dismiss latency, audio restarts, snoozes and weekday rollups
+     */
+    @ReactMethod
+    public void getWakeStats(Promise promise) {
+        try {
+            WakeStats stats = AlarmHistory.getInstance(reactContext).stats();
+            
+            WritableArray bucketBounds = Arguments.createArray();
+            for (long bound : WakeStats.DISMISS_BUCKETS_MS) {
+                bucketBounds.pushDouble(bound);
+            }
+            WritableArray bucketCounts = Arguments.createArray();
+            for (long count : stats.dismissHistogram()) {
+                bucketCounts.pushDouble(count);
+            }
+            WritableMap histogram = Arguments.createMap();
+            histogram.putArray("upperBoundsMs", bucketBounds);
+            histogram.putArray("counts", bucketCounts);
+            
+            WritableMap snoozes = Arguments.createMap();
+            for (Map.Entry<String, Long> entry : stats.snoozesByAlarm().entrySet()) {
+                snoozes.putDouble(entry.getKey(), entry.getValue());
+            }
+            
+            WritableArray weekdays = Arguments.createArray();
+            for (WakeStats.Weekday day : stats.weekdays()) {
+                WritableMap item = Arguments.createMap();
+                item.putDouble("fired", day.fired);
+                item.putDouble("snoozed", day.snoozed);
+                item.putDouble("dismissed", day.dismissed);
+                item.putDouble("autoStopped", day.autoStopped);
+                item.putMap("dismissLatency", toRunningMap(day.dismissLatency));
+                weekdays.pushMap(item);
+            }
+            
+            WritableMap result = Arguments.createMap();
+            result.putBoolean("success", true);
+            result.putMap("fireDelay", toRunningMap(stats.fireDelay()));
+            result.putMap("dismissLatency", toRunningMap(stats.dismissLatency()));
+            result.putMap("audioRestarts", toRunningMap(stats.audioRestarts()));
+            result.putMap("dismissHistogram", histogram);
+            result.putMap("snoozesByAlarm", snoozes);
+            result.putArray("weekdays", weekdays);
+            promise.resolve(result);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to read wake statistics", e);
+            promise.reject("WAKE_STATS_ERROR", e.getMessage(), e);
+        }
+    }
+    
+    private static WritableMap toRunningMap(WakeStats.Running running) {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("count", running.count);
+        map.putDouble("meanMs", running.mean);
+        map.putDouble("stdDevMs", running.stdDev());
+        return map;
+    }
+    
+    /**
+     * The next alarm that will ring, or null - a cached value, so this never waits on the queue
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getNextAlarm() {
+        return toNextAlarmMap(alarmQueue.nextAlarm());
+    }
+    
+    // Required by NativeEventEmitter; events are emitted whether or not JS listens
+    @ReactMethod
+    public void addListener(String eventName) {
+    }
+    
+    @ReactMethod
+    public void removeListeners(double count) {
+    }
+    
+    private static WritableMap toNextAlarmMap(NextAlarm next) {
+        if (next == null) {
+            return null;
+        }
+        WritableMap map = Arguments.createMap();
+        map.putString("alarmId", next.alarmId);
+        map.putString("target", next.target);
+        map.putString("label", next.label);
+        map.putDouble("triggerAt", next.triggerAt);
+        if (next.endAt > 0) {
+            map.putDouble("endAt", next.endAt);
+        }
+        return map;
+    }
+    
     /**
      * Stop a currently playing alarm
      */
@@ -192,6 +521,27 @@ public class ProductionAlarmModule extends ReactContextBaseJavaModule {
         }
     }
     
+    /**
+     * Set the coalescing window: alarms due within this many milliseconds of an
+     * alarm that fires ring with it in one session. 0 disables coalescing.
+     */
+    @ReactMethod
+    public void setCoalesceWindow(double windowMs, Promise promise) {
+        try {
+            alarmQueue.setCoalesceWindowMs((long) windowMs);
+            
+            WritableMap result = Arguments.createMap();
+            result.putBoolean("success", true);
+            result.putDouble("coalesceWindowMs", alarmQueue.getCoalesceWindowMs());
+            
+            promise.resolve(result);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to set coalescing window", e);
+            promise.reject("COALESCE_ERROR", e.getMessage(), e);
+        }
+    }
+    
     /**
      * Check alarm and permission status
      */
@@ -410,6 +760,83 @@ public class ProductionAlarmModule extends ReactContextBaseJavaModule {
     
     // Helper methods
     
+    /**
+     * Build a queue entry from the JS scheduling options shared by single and batch scheduling
+     */
+    private QueuedAlarm parseAlarmOptions(ReadableMap options) {
+        if (options == null || !options.hasKey("alarmId") || !options.hasKey("triggerTime")) {
+            throw new IllegalArgumentException("alarmId and triggerTime are required");
+        }
+        String alarmId = options.getString("alarmId");
+        long triggerTime = (long) options.getDouble("triggerTime");
+        String soundType = options.hasKey("soundType") ? options.getString("soundType") : "default";
+        boolean vibration = options.hasKey("vibration") ? options.getBoolean("vibration") : true;
+        String label = options.hasKey("label") ? options.getString("label") : "Alarm";
+        AlarmRecurrence recurrence = options.hasKey("recurrence") && !options.isNull("recurrence")
+            ? AlarmRecurrence.fromReadableMap(options.getMap("recurrence"), triggerTime)
+            : null;
+        long prewarmLeadMs = options.hasKey("prewarmLeadMs") && !options.isNull("prewarmLeadMs")
+            ? Math.min((long) options.getDouble("prewarmLeadMs"), AlarmPrewarmer.MAX_LEAD_MS)
+            : 0;
+        String priority = options.hasKey("priority") && !options.isNull("priority")
+            ? options.getString("priority")
+            : QueuedAlarm.PRIORITY_EXACT;
+        long windowMs = options.hasKey("windowMs") && !options.isNull("windowMs")
+            ? (long) options.getDouble("windowMs")
+            : QueuedAlarm.DEFAULT_WINDOW_MS;
+        long missedGraceMs = options.hasKey("missedGraceMs") && !options.isNull("missedGraceMs")
+            ? (long) options.getDouble("missedGraceMs")
+            : QueuedAlarm.DEFAULT_MISSED_GRACE_MS;
+        VolumeRamp ramp = options.hasKey("ramp") && !options.isNull("ramp")
+            ? VolumeRamp.fromReadableMap(options.getMap("ramp"))
+            : VolumeRamp.NONE;
+        long ringDurationMs = 0;
+        if (options.hasKey("endTime") && !options.isNull("endTime")) {
+            long endTime = (long) options.getDouble("endTime");
+            if (endTime <= triggerTime) {
+                throw new IllegalArgumentException("endTime must be after triggerTime");
+            }
+            ringDurationMs = endTime - triggerTime;
+        }
+        
+        return new QueuedAlarm.Builder(QueuedAlarm.TARGET_PRODUCTION, alarmId, triggerTime)
+            .setSoundType(soundType)
+            .setVibration(vibration)
+            .setLabel(label)
+            .setRecurrence(recurrence)
+            .setPrewarmLeadMs(prewarmLeadMs)
+            .setPriority(priority)
+            .setWindowMs(windowMs)
+            .setRingDurationMs(ringDurationMs)
+            .setMissedGraceMs(missedGraceMs)
+            .setRamp(ramp)
+            .build();
+    }
+    
+    /**
+     * Report how the quota planner expects the alarm to be delivered
+     */
+    private void putPlan(WritableMap result, AlarmQuotaPlanner.Entry planned, QueuedAlarm alarm) {
+        if (planned == null) {
+            result.putString("priority", alarm.priority);
+            return;
+        }
+        result.putString("priority", planned.alarm.priority);
+        result.putBoolean("promoted", planned.alarm.promoted);
+        result.putDouble("worstCaseDelayMs", planned.worstCaseDelayMs);
+        result.putBoolean("dozeDeferrable", planned.dozeDeferrable);
+        if (planned.mergedWith != null) {
+            result.putString("mergedWith", planned.mergedWith);
+        }
+    }
+    
+    private WritableMap createItemError(Exception e) {
+        WritableMap item = Arguments.createMap();
+        item.putBoolean("success", false);
+        item.putString("error", e.getMessage());
+        return item;
+    }
+    
     private boolean canScheduleExactAlarms() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             return alarmManager != null && alarmManager.canScheduleExactAlarms();
@@ -7,6 +7,8 @@ import android.os.Build;
 import android.util.Log;
 import android.app.PendingIntent;
 import android.os.PowerManager;
+import java.util.ArrayList;
+import java.util.Collections;
 
 /**
  * Production-ready AlarmReceiver that handles system alarm triggers.
@@ -15,8 +17,11 @@ import android.os.PowerManager;
  * Key design decisions:
  * 1. Uses highest priority for intent filter to ensure it's called first
  * 2. Immediately starts foreground service to avoid background execution limits
- * 3. Handles multiple OEM boot completed actions for compatibility
+ * 3. Handles multiple OEM boot completed actions for compatibility, restoring
+ *    alarms under goAsync() rather than through a foreground service
  * 4. Uses wake locks to ensure execution completes
+ * 5. Alarms coalesced by the queue arrive as one broadcast and start one ringing
+ *    session and one activity for all of them
  */
 public class ProductionAlarmReceiver extends BroadcastReceiver {
     
@@ -61,8 +66,14 @@ public class ProductionAlarmReceiver extends BroadcastReceiver {
         String soundType = intent.getStringExtra("soundType");
         boolean vibration = intent.getBooleanExtra("vibration", true);
         String label = intent.getStringExtra("label");
+        ArrayList<String> alarmIds = intent.getStringArrayListExtra("alarmIds");
+        ArrayList<String> labels = intent.getStringArrayListExtra("labels");
+        if (alarmIds == null || labels == null) {
+            alarmIds = new ArrayList<>(Collections.singletonList(alarmId));
+            labels = new ArrayList<>(Collections.singletonList(label));
+        }
         
-        Log.d(TAG, "📋 Alarm details: ID=" + alarmId + ", Sound=" + soundType + ", Label=" + label);
+        Log.d(TAG, "📋 Alarm details: ID=" + alarmIds + ", Sound=" + soundType + ", Label=" + labels);
         
         // Start the production alarm service immediately
         Intent serviceIntent = new Intent(context, ProductionAlarmService.class);
@@ -71,7 +82,15 @@ public class ProductionAlarmReceiver extends BroadcastReceiver {
         serviceIntent.putExtra("soundType", soundType);
         serviceIntent.putExtra("vibration", vibration);
         serviceIntent.putExtra("label", label);
+        serviceIntent.putStringArrayListExtra("alarmIds", alarmIds);
+        serviceIntent.putStringArrayListExtra("labels", labels);
         serviceIntent.putExtra("triggerTime", System.currentTimeMillis());
+        serviceIntent.putExtra("triggerAt", intent.getLongExtra("triggerAt", 0L));
+        long[] triggerAts = intent.getLongArrayExtra("triggerAts");
+        if (triggerAts != null) {
+            serviceIntent.putExtra("triggerAts", triggerAts);
+        }
+        VolumeRamp.fromIntent(intent).putExtras(serviceIntent);
         
         // Start foreground service to avoid background execution limits
         try {
@@ -88,7 +107,7 @@ public class ProductionAlarmReceiver extends BroadcastReceiver {
         }
         
         // Also launch full-screen activity for user interaction
-        launchFullScreenActivity(context, alarmId, label);
+        launchFullScreenActivity(context, alarmId, ProductionAlarmService.sessionLabel(labels));
     }
     
     /**
@@ -100,6 +119,7 @@ public class ProductionAlarmReceiver extends BroadcastReceiver {
             activityIntent.setAction("com.unlockam.ALARM_TRIGGERED");
             activityIntent.putExtra("alarmId", alarmId);
             activityIntent.putExtra("label", label);
+            activityIntent.putExtra("firedAt", System.currentTimeMillis());
             activityIntent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | 
                                   Intent.FLAG_ACTIVITY_CLEAR_TOP | 
                                   Intent.FLAG_ACTIVITY_SINGLE_TOP);
@@ -119,20 +139,8 @@ public class ProductionAlarmReceiver extends BroadcastReceiver {
     private void handleBootCompleted(Context context) {
         Log.d(TAG, "🔄 Boot completed - rescheduling alarms");
         
-        // Start a service to handle alarm rescheduling
-        Intent rescheduleIntent = new Intent(context, ProductionAlarmService.class);
-        rescheduleIntent.setAction("RESCHEDULE_ALARMS");
-        
-        try {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                context.startForegroundService(rescheduleIntent);
-            } else {
-                context.startService(rescheduleIntent);
-            }
-            Log.d(TAG, "✅ Alarm rescheduling service started");
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to start rescheduling service", e);
-        }
+        // Restore inside the receiver - a job takes over only if it cannot finish in time
+        AlarmReconciler.reconcileFromReceiver(context, goAsync());
     }
     
     /**
@@ -0,0 +1,200 @@
+package com.unlockam.alarmmodule;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Durable SQLite registry of production alarms, used to restore them after boot,
+ * app updates or loss of the queue's own state.
+ *
+ * Key design decisions:
+ * 1. One row per alarm, keyed by alarmId, holding the full queue entry as JSON
+ *    plus the columns restore filters on
+ * 2. {@code next_trigger_at} is indexed, so restore reads rows already in trigger
+ *    order and a lazy boot restore stops the scan at its horizon
+ * 3. ProductionAlarmModule writes through on every schedule and cancel; the queue
+ *    receiver moves recurring rows forward (and drops one-shots) as they fire
+ * 4. Past-due rows are returned as they are; the reconciler rings, advances or
+ *    drops them against each alarm's missed-alarm grace window
+ * 5. The database lives in device-protected storage, so a restore on
+ *    LOCKED_BOOT_COMPLETED can read it before the user unlocks
+ */
+public class ProductionAlarmRegistry extends SQLiteOpenHelper {
+
+    private static final String TAG = "ProductionAlarmRegistry";
+    private static final String DB_NAME = "unlockam_alarms.db";
+    private static final int DB_VERSION = 1;
+
+    private static final String TABLE = "alarms";
+    private static final String COL_ALARM_ID = "alarm_id";
+    private static final String COL_NEXT_TRIGGER_AT = "next_trigger_at";
+    private static final String COL_RECURRING = "recurring";
+    private static final String COL_ENTRY = "entry";
+    private static final String COL_UPDATED_AT = "updated_at";
+
+    private static ProductionAlarmRegistry instance;
+
+    public static synchronized ProductionAlarmRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new ProductionAlarmRegistry(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ProductionAlarmRegistry(Context context) {
+        super(DirectBootStorage.forDatabase(context, DB_NAME), DB_NAME, null, DB_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " (" +
+            COL_ALARM_ID + " TEXT PRIMARY KEY, " +
+            COL_NEXT_TRIGGER_AT + " INTEGER NOT NULL, " +
+            COL_RECURRING + " INTEGER NOT NULL DEFAULT 0, " +
+            COL_ENTRY + " TEXT NOT NULL, " +
+            COL_UPDATED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_alarms_next_trigger ON " + TABLE + " (" + COL_NEXT_TRIGGER_AT + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only one schema so far
+    }
+
+    public void upsert(QueuedAlarm alarm) {
+        upsertAll(Collections.singletonList(alarm));
+    }
+
+    /**
+     * Write a batch of alarms in one transaction
+     */
+    public void upsertAll(List<QueuedAlarm> alarms) {
+        SQLiteDatabase db = getWritableDatabase();
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            for (QueuedAlarm alarm : alarms) {
+                db.insertWithOnConflict(TABLE, null, toValues(alarm, now), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } catch (JSONException e) {
+            throw new IllegalArgumentException("Cannot store alarm", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public boolean delete(String alarmId) {
+        return getWritableDatabase().delete(TABLE, COL_ALARM_ID + " = ?", new String[] { alarmId }) > 0;
+    }
+
+    /**
+     * Delete a batch of alarms in one transaction
+     */
+    public void deleteAll(List<String> alarmIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String alarmId : alarmIds) {
+                db.delete(TABLE, COL_ALARM_ID + " = ?", new String[] { alarmId });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Record that alarms fired: recurring ones move to the occurrence the queue
+     * re-queued, everything else is removed
+     *
+     * @param next the queue's entry for each fired alarm after popping, or null if it is gone
+     */
+    public void recordFired(List<QueuedAlarm> fired, List<QueuedAlarm> next) {
+        List<QueuedAlarm> moved = new ArrayList<>();
+        List<String> done = new ArrayList<>();
+        for (int i = 0; i < fired.size(); i++) {
+            if (next.get(i) != null) {
+                moved.add(next.get(i));
+            } else {
+                done.add(fired.get(i).alarmId);
+            }
+        }
+        if (!moved.isEmpty()) {
+            upsertAll(moved);
+        }
+        if (!done.isEmpty()) {
+            deleteAll(done);
+        }
+    }
+
+    /**
+     * Every stored alarm in trigger order, past-due ones included, so the caller can
+     * classify them against each alarm's own grace window
+     */
+    public List<QueuedAlarm> loadForRestore() {
+        return loadForRestore(Long.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #loadForRestore()}, but only rows due up to {@code horizon} plus the
+     * first row after it - the index stops the scan there
+     */
+    public List<QueuedAlarm> loadForRestore(long horizon) {
+        SQLiteDatabase db = getReadableDatabase();
+        List<QueuedAlarm> rows = new ArrayList<>();
+
+        // Range scan on the index - rows come back already ordered
+        readEntries(db.query(TABLE, new String[] { COL_ENTRY },
+            COL_NEXT_TRIGGER_AT + " <= ?", new String[] { String.valueOf(horizon) },
+            null, null, COL_NEXT_TRIGGER_AT + " ASC"), rows);
+        if (horizon != Long.MAX_VALUE) {
+            readEntries(db.query(TABLE, new String[] { COL_ENTRY },
+                COL_NEXT_TRIGGER_AT + " > ?", new String[] { String.valueOf(horizon) },
+                null, null, COL_NEXT_TRIGGER_AT + " ASC", "1"), rows);
+        }
+        Log.d(TAG, "📂 Loaded " + rows.size() + " alarms for restore");
+        return rows;
+    }
+
+    private static void readEntries(Cursor cursor, List<QueuedAlarm> into) {
+        try {
+            while (cursor.moveToNext()) {
+                QueuedAlarm alarm = parse(cursor.getString(0));
+                if (alarm != null) {
+                    into.add(alarm);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ContentValues toValues(QueuedAlarm alarm, long now) throws JSONException {
+        ContentValues values = new ContentValues();
+        values.put(COL_ALARM_ID, alarm.alarmId);
+        values.put(COL_NEXT_TRIGGER_AT, alarm.triggerAt);
+        values.put(COL_RECURRING, alarm.isRecurring() ? 1 : 0);
+        values.put(COL_ENTRY, alarm.toJson().toString());
+        values.put(COL_UPDATED_AT, now);
+        return values;
+    }
+
+    private static QueuedAlarm parse(String entry) {
+        try {
+            return QueuedAlarm.fromJson(new JSONObject(entry));
+        } catch (JSONException e) {
+            Log.e(TAG, "❌ Skipping unreadable registry row", e);
+            return null;
+        }
+    }
+}
@@ -14,9 +14,12 @@ import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.media.Ringtone;
 import android.media.RingtoneManager;
+import android.media.VolumeShaper;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.os.PowerManager;
 import android.os.Vibrator;
 import android.os.VibrationEffect;
@@ -24,29 +27,57 @@ import android.util.Log;
 import androidx.core.app.NotificationCompat;
 import com.unlockam.mobile.devbuild.R;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Production-ready alarm service designed to work reliably under all Android constraints.
  * 
  * Key design decisions:
  * 1. Foreground service with persistent notification to avoid being killed
- * 2. Multiple audio fallback layers (MediaPlayer, Ringtone, System alerts)
+ * 2. Multiple audio fallback layers (MediaPlayer, Ringtone, System alerts), prepared
+ *    in parallel; the preferred layer that is ready wins once every layer above it
+ *    has failed or missed its deadline, so time-to-sound is bounded
  * 3. Aggressive audio focus management - never gives up focus during alarm
  * 4. Wake lock management to prevent CPU sleep during alarm
  * 5. Handles Android 13+ notification permission denial gracefully
  * 6. Works in Doze mode via exact alarms and foreground service
+ * 7. Uses the notification prepared by AlarmPrewarmer when the alarm was
+ *    pre-warmed; MediaPlayer layers come from AlarmPlayerPool, which prepares
+ *    off the main thread, so the fire path on the main thread is only start()
+ * 8. One ringing session per cluster: alarms that fire together (or while the
+ *    session is already ringing) join it instead of restarting audio
+ * 9. End-time stops arrive from the alarm queue as STOP_ALARM with autoStop set;
+ *    they end only their own alarm, so no JS timer has to watch the end time
+ * 10. Every ringing-state transition is fsynced to a RingingJournal first; a
+ *     sticky restart (null intent) replays it and resumes the same session with
+ *     the user's original volume instead of backing up the already-raised one
+ * 11. Fires and end-time stops are written to AlarmHistory here; user dismissals
+ *     and snoozes are written by the alarm activity, or here when they come from
+ *     the notification's STOP action
+ * 12. A PlaybackWatchdog runs while ringing and restarts silent audio - the same
+ *     layer first, then one layer further down the chain on each later attempt -
+ *     recording every restart and its silence in AlarmHistory
+ * 13. Loudness follows the alarm's VolumeRamp: the alarm stream is raised once per
+ *     session and only up to the ramp's target, and the winning player gets a
+ *     VolumeShaper for the rest of the crescendo, measured from alarmStartTime
  */
 public class ProductionAlarmService extends Service {
     
     private static final String TAG = "ProductionAlarmService";
     private static final String CHANNEL_ID = "UNLOCKAM_PRODUCTION_ALARM";
-    private static final String PREFS_NAME = "UnlockAM_Alarms";
     private static final int NOTIFICATION_ID = 9001;
+    private static final String JOURNAL_NAME = "ringing_production.journal";
+    private static final String SNOOZE_SUFFIX = "-snooze";
+    // How long the race waits for each MediaPlayer layer before preferring the next one
+    private static final long[] LAYER_DEADLINES_MS = { 1000L, 2500L };
     
     // Audio players with fallback hierarchy
-    private MediaPlayer primaryPlayer;
-    private MediaPlayer backupPlayer; 
-    private Ringtone systemRingtone;
+    // Volatile because the watchdog thread polls them
+    private volatile MediaPlayer primaryPlayer;
+    private volatile MediaPlayer backupPlayer;
+    private volatile Ringtone systemRingtone;
     
     // System managers
     private AudioManager audioManager;
@@ -59,13 +90,56 @@ public class ProductionAlarmService extends Service {
     private boolean hasAudioFocus = false;
     
     // State tracking
-    private boolean isAlarmPlaying = false;
+    private volatile boolean isAlarmPlaying = false;
     private String currentAlarmId;
+    private final List<String> sessionAlarmIds = new ArrayList<>();
+    private final List<String> sessionLabels = new ArrayList<>();
     private long alarmStartTime;
+    private RingingJournal journal;
+    private boolean journalReplayed = false;
+    // Replaced whenever audio is (re)started and cleared on stop, so late pool callbacks are dropped
+    private volatile AudioRace audioRace;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Sound and fallback layer of the ringing session, for restarts
+    private String sessionSoundType;
+    private int sessionLayer = RingingJournal.LAYER_PRIMARY;
+    private VolumeRamp sessionRamp = VolumeRamp.NONE;
+    private boolean sessionVibration = true;
+    // Crescendo on whichever MediaPlayer layer is playing; main thread only
+    private VolumeShaper volumeShaper;
+    
+    private final PlaybackWatchdog watchdog = new PlaybackWatchdog(new PlaybackWatchdog.Target() {
+        @Override
+        public boolean isStartingAudio() {
+            return ProductionAlarmService.this.isStartingAudio();
+        }
+        
+        @Override
+        public boolean isAnyPlayerPlaying() {
+            return ProductionAlarmService.this.isAnyPlayerPlaying();
+        }
+        
+        @Override
+        public void restartAudio(int attempt, long silentMs) {
+            if (!isAlarmPlaying) {
+                return;
+            }
+            AlarmHistory.getInstance(ProductionAlarmService.this).record(AlarmHistory.AUDIO_RESTARTED,
+                QueuedAlarm.TARGET_PRODUCTION, currentAlarmId, silentMs);
+            // Retry the layer that went silent once, then walk down the fallback chain
+            restartAlarmAudio(Math.min(sessionLayer + (attempt > 1 ? 1 : 0), RingingJournal.LAYER_RINGTONE));
+        }
+    });
     
     // Audio settings backup
     private int originalVolume;
     private int originalRingerMode;
+    // Set once originalVolume holds the user's volume - a service started only to stop
+    // (sticky restart, late auto-stop) has nothing to restore
+    private boolean audioBackedUp = false;
+    // Set once this session changed the stream - a user already above the ramp's
+    // target keeps whatever they set during the alarm
+    private boolean volumeRaised = false;
     
     @Override
     public void onCreate() {
@@ -76,9 +150,10 @@ public class ProductionAlarmService extends Service {
         audioManager = (AudioManager) getSystemService(Context.AUDIO_SERVICE);
         notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
         vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
+        journal = new RingingJournal(this, JOURNAL_NAME);
         
         // Create notification channel for foreground service
-        createNotificationChannel();
+        createNotificationChannel(this);
         
         // Acquire wake lock to prevent CPU sleep
         acquireWakeLock();
@@ -86,9 +161,27 @@ public class ProductionAlarmService extends Service {
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        String action = intent != null ? intent.getAction() : "NO_ACTION";
+        String action = intent != null && intent.getAction() != null ? intent.getAction() : "NO_ACTION";
         Log.d(TAG, "🎬 Service command received: " + action);
         
+        // First command since a restart: the journal knows whether a session was still ringing
+        if (!isAlarmPlaying && !journalReplayed) {
+            journalReplayed = true;
+            boolean ring = intent == null || "TRIGGER_ALARM".equals(action);
+            if (ring || "STOP_ALARM".equals(action) || "SNOOZE_ALARM".equals(action)) {
+                resumeFromJournal(ring);
+            }
+        }
+        
+        if (intent == null) {
+            if (!isAlarmPlaying) {
+                // Nothing was backed up, so onDestroy leaves the alarm volume alone
+                Log.d(TAG, "💤 Restarted with no ringing session to resume");
+                stopSelf();
+            }
+            return START_STICKY;
+        }
+        
         switch (action) {
             case "TRIGGER_ALARM":
                 handleAlarmTrigger(intent);
@@ -115,24 +208,62 @@ public class ProductionAlarmService extends Service {
      * Handle alarm trigger - the most critical function
      */
     private void handleAlarmTrigger(Intent intent) {
-        currentAlarmId = intent.getStringExtra("alarmId");
         String soundType = intent.getStringExtra("soundType");
         boolean vibrationEnabled = intent.getBooleanExtra("vibration", true);
-        String label = intent.getStringExtra("label");
+        List<String> alarmIds = intent.getStringArrayListExtra("alarmIds");
+        List<String> labels = intent.getStringArrayListExtra("labels");
+        if (alarmIds == null || labels == null) {
+            alarmIds = Collections.singletonList(intent.getStringExtra("alarmId"));
+            labels = Collections.singletonList(intent.getStringExtra("label"));
+        }
         
-        Log.d(TAG, "🚨 ALARM TRIGGERED: " + currentAlarmId + " (" + label + ")");
+        if (isAlarmPlaying) {
+            // Already ringing - fold the new alarms into the running session
+            joinSession(alarmIds, labels);
+            recordFired(intent, alarmIds);
+            return;
+        }
+        
+        sessionAlarmIds.clear();
+        sessionLabels.clear();
+        sessionAlarmIds.addAll(alarmIds);
+        sessionLabels.addAll(labels);
+        currentAlarmId = sessionAlarmIds.get(0);
+        String label = sessionLabel(sessionLabels);
+        
+        Log.d(TAG, "🚨 ALARM TRIGGERED: " + sessionAlarmIds + " (" + label + ")");
         alarmStartTime = System.currentTimeMillis();
         
-        // Start foreground service immediately
-        startForegroundWithNotification(label);
+        // Pick up the notification built during the pre-warm wake-up; its players wait in the pool
+        AlarmPrewarmer.Prewarmed warm = AlarmPrewarmer.take(currentAlarmId, soundType);
+        for (int i = 1; i < sessionAlarmIds.size(); i++) {
+            AlarmPrewarmer.discard(sessionAlarmIds.get(i));
+        }
+        
+        // Start foreground service immediately; a pre-built notification only names one alarm
+        if (warm != null && warm.notification != null && sessionAlarmIds.size() == 1) {
+            startForeground(NOTIFICATION_ID, warm.notification);
+            Log.d(TAG, "🔔 Foreground service started with pre-built notification");
+        } else {
+            startForegroundWithNotification(label);
+        }
         
         // Backup current audio settings
         backupAudioSettings();
         
+        // Journal the session before touching the volume, so a restart knows what to restore
+        sessionRamp = VolumeRamp.fromIntent(intent);
+        journal.started(alarmStartTime, originalVolume, originalRingerMode, soundType, vibrationEnabled,
+            sessionRamp, sessionAlarmIds, sessionLabels);
+        raiseStreamVolumeIfNeeded();
+        
         // Request audio focus aggressively
         requestAudioFocusAggressively();
         
         // Start alarm audio with multiple fallbacks
+        sessionSoundType = soundType;
+        sessionVibration = vibrationEnabled;
+        sessionLayer = RingingJournal.LAYER_PRIMARY;
         startAlarmAudio(soundType);
         
         // Start vibration if enabled
@@ -142,10 +273,126 @@ public class ProductionAlarmService extends Service {
         
         // Mark as playing
         isAlarmPlaying = true;
+        watchdog.start();
+        recordFired(intent, alarmIds);
         
         Log.d(TAG, "✅ Alarm fully activated and playing");
     }
     
+    /**
+     * Record each alarm of a trigger as fired, with how late the audio started
+     */
+    private void recordFired(Intent intent, List<String> alarmIds) {
+        long now = System.currentTimeMillis();
+        long[] triggerAts = intent.getLongArrayExtra("triggerAts");
+        long triggerAt = intent.getLongExtra("triggerAt", 0L);
+        AlarmHistory history = AlarmHistory.getInstance(this);
+        for (int i = 0; i < alarmIds.size(); i++) {
+            long scheduled = triggerAts != null && i < triggerAts.length ? triggerAts[i] : triggerAt;
+            history.record(AlarmHistory.FIRED, QueuedAlarm.TARGET_PRODUCTION, alarmIds.get(i),
+                scheduled > 0 ? now - scheduled : AlarmHistory.UNKNOWN_LATENCY);
+        }
+    }
+    
+    /**
+     * Record the end of ringing for the given alarms unless the activity already did
+     */
+    private void recordStopped(Intent intent, List<String> alarmIds) {
+        if (intent.getBooleanExtra("historyRecorded", false)) {
+            return;
+        }
+        String type = intent.getBooleanExtra("autoStop", false) ? AlarmHistory.AUTO_STOPPED : AlarmHistory.DISMISSED;
+        long ringing = alarmStartTime > 0 ? System.currentTimeMillis() - alarmStartTime : AlarmHistory.UNKNOWN_LATENCY;
+        AlarmHistory history = AlarmHistory.getInstance(this);
+        for (String alarmId : alarmIds) {
+            history.record(type, QueuedAlarm.TARGET_PRODUCTION, alarmId, ringing);
+        }
+    }
+    
+    /**
+     * Add alarms to the session that is already ringing and refresh its notification
+     */
+    private void joinSession(List<String> alarmIds, List<String> labels) {
+        for (int i = 0; i < alarmIds.size(); i++) {
+            if (!sessionAlarmIds.contains(alarmIds.get(i))) {
+                sessionAlarmIds.add(alarmIds.get(i));
+                sessionLabels.add(labels.get(i));
+                journal.joined(alarmIds.get(i), labels.get(i));
+                AlarmPrewarmer.discard(alarmIds.get(i));
+            }
+        }
+        String label = sessionLabel(sessionLabels);
+        if (notificationManager != null) {
+            notificationManager.notify(NOTIFICATION_ID, buildAlarmNotification(this, currentAlarmId, label));
+        }
+        Log.d(TAG, "➕ Joined ringing session: " + sessionAlarmIds + " (" + label + ")");
+    }
+    
+    /**
+     * Rebuild the session a killed instance left behind; with {@code ring} set the
+     * audio is started again from the layer it had reached
+     */
+    private void resumeFromJournal(boolean ring) {
+        RingingJournal.Session session = journal.replay();
+        if (session == null || session.alarmIds.isEmpty()) {
+            return;
+        }
+        
+        sessionAlarmIds.clear();
+        sessionLabels.clear();
+        sessionAlarmIds.addAll(session.alarmIds);
+        sessionLabels.addAll(session.labels);
+        currentAlarmId = sessionAlarmIds.get(0);
+        alarmStartTime = session.startedAt;
+        // The stream is still at the alarm's maximum - the journal holds the user's volume
+        originalVolume = session.originalVolume;
+        originalRingerMode = session.originalRingerMode;
+        audioBackedUp = true;
+        // raiseAlarmStream() finds the stream already up, so the raise made before the restart
+        // shows only as a stream away from the user's volume
+        volumeRaised = audioManager != null &&
+            audioManager.getStreamVolume(AudioManager.STREAM_ALARM) != originalVolume;
+        sessionSoundType = session.soundType;
+        sessionLayer = session.layer;
+        sessionRamp = session.ramp;
+        sessionVibration = session.vibration;
+        
+        if (!ring) {
+            Log.d(TAG, "📖 Recovered ringing session " + sessionAlarmIds + " to end it");
+            return;
+        }
+        
+        startForegroundWithNotification(sessionLabel(sessionLabels));
+        requestAudioFocusAggressively();
+        raiseStreamVolumeIfNeeded();
+        startAlarmAudio(session.soundType, session.layer);
+        if (session.vibration) {
+            startVibration();
+        }
+        isAlarmPlaying = true;
+        watchdog.start();
+        
+        Log.d(TAG, "🔁 Resumed ringing session " + sessionAlarmIds + " started " +
+            (System.currentTimeMillis() - alarmStartTime) + "ms ago");
+    }
+    
+    /**
+     * Single label for a ringing session: the label itself, or all labels joined
+     */
+    static String sessionLabel(List<String> labels) {
+        if (labels.size() == 1) {
+            return labels.get(0);
+        }
+        StringBuilder joined = new StringBuilder();
+        for (String label : labels) {
+            if (joined.length() > 0) {
+                joined.append(" • ");
+            }
+            joined.append(label != null ? label : "Alarm");
+        }
+        return joined.toString();
+    }
+    
     /**
      * Handle stop alarm request
      */
@@ -153,13 +400,43 @@ public class ProductionAlarmService extends Service {
         String alarmId = intent.getStringExtra("alarmId");
         Log.d(TAG, "🛑 STOP ALARM requested: " + alarmId);
         
+        // An end-time stop only ends its own alarm; the session rings on while others remain
+        if (intent.getBooleanExtra("autoStop", false) && isAlarmPlaying) {
+            int index = sessionAlarmIds.indexOf(alarmId);
+            if (index < 0) {
+                Log.d(TAG, "⏭️ Auto-stop for " + alarmId + " ignored - not part of the ringing session");
+                return;
+            }
+            if (sessionAlarmIds.size() > 1) {
+                journal.ended(alarmId);
+                recordStopped(intent, Collections.singletonList(alarmId));
+                sessionAlarmIds.remove(index);
+                sessionLabels.remove(index);
+                currentAlarmId = sessionAlarmIds.get(0);
+                if (notificationManager != null) {
+                    notificationManager.notify(NOTIFICATION_ID,
+                        buildAlarmNotification(this, currentAlarmId, sessionLabel(sessionLabels)));
+                }
+                Log.d(TAG, "⏹️ " + alarmId + " reached its end time, session continues with " + sessionAlarmIds);
+                return;
+            }
+        }
+        
+        journal.dismissed(alarmId);
+        if (isAlarmPlaying) {
+            recordStopped(intent, new ArrayList<>(sessionAlarmIds));
+        }
+        cancelStopEntries(alarmId);
         stopAllAudio();
         stopVibration();
         restoreAudioSettings();
         abandonAudioFocus();
         
         isAlarmPlaying = false;
+        watchdog.stop();
         currentAlarmId = null;
+        sessionAlarmIds.clear();
+        sessionLabels.clear();
         
         // Stop foreground service
         stopForeground(true);
@@ -177,9 +454,15 @@ public class ProductionAlarmService extends Service {
         
         Log.d(TAG, "😴 SNOOZE ALARM requested: " + alarmId + " for " + snoozeMinutes + " minutes");
         
-        // Stop current alarm
+        // Stop current alarm and give the user their volume back
+        journal.snoozed(alarmId);
+        cancelStopEntries(alarmId);
         stopAllAudio();
         stopVibration();
+        restoreAudioSettings();
+        abandonAudioFocus();
+        isAlarmPlaying = false;
+        watchdog.stop();
         
         // Schedule snooze alarm
         scheduleSnoozeAlarm(alarmId, snoozeMinutes);
@@ -189,6 +472,23 @@ public class ProductionAlarmService extends Service {
         stopSelf();
     }
     
+    /**
+     * Drop the end-time stop entries of the session's alarms once the user has ended
+     * them, so a later auto-stop never cold-starts this service for nothing
+     */
+    private void cancelStopEntries(String alarmId) {
+        List<String> stopIds = new ArrayList<>();
+        for (String sessionAlarmId : sessionAlarmIds) {
+            stopIds.add(QueuedAlarm.key(QueuedAlarm.TARGET_PRODUCTION, sessionAlarmId));
+        }
+        if (alarmId != null && !sessionAlarmIds.contains(alarmId)) {
+            stopIds.add(QueuedAlarm.key(QueuedAlarm.TARGET_PRODUCTION, alarmId));
+        }
+        if (!stopIds.isEmpty()) {
+            AlarmQueue.getInstance(this).cancelAll(QueuedAlarm.TARGET_STOP, stopIds);
+        }
+    }
+    
     /**
      * Handle rescheduling alarms after boot/update
      */
@@ -198,28 +498,32 @@ public class ProductionAlarmService extends Service {
         // Start temporary foreground service for rescheduling work
         startForegroundWithNotification("Rescheduling alarms...");
         
-        // TODO: Load saved alarms and reschedule them
+        // Stops the service once the registry has been restored
         rescheduleStoredAlarms();
-        
-        // Stop service after rescheduling
-        stopForeground(true);
-        stopSelf();
     }
     
     /**
      * Start foreground service with persistent notification
      */
     private void startForegroundWithNotification(String alarmLabel) {
-        Intent stopIntent = new Intent(this, ProductionAlarmService.class);
+        startForeground(NOTIFICATION_ID, buildAlarmNotification(this, currentAlarmId, alarmLabel));
+        Log.d(TAG, "🔔 Foreground service started with notification");
+    }
+    
+    /**
+     * Build the foreground alarm notification; shared with AlarmPrewarmer so it can be built ahead of time
+     */
+    static Notification buildAlarmNotification(Context context, String alarmId, String alarmLabel) {
+        Intent stopIntent = new Intent(context, ProductionAlarmService.class);
         stopIntent.setAction("STOP_ALARM");
-        stopIntent.putExtra("alarmId", currentAlarmId);
+        stopIntent.putExtra("alarmId", alarmId);
         
         PendingIntent stopPendingIntent = PendingIntent.getService(
-            this, 0, stopIntent, 
+            context, 0, stopIntent, 
             PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
         
-        Notification notification = new NotificationCompat.Builder(this, CHANNEL_ID)
+        return new NotificationCompat.Builder(context, CHANNEL_ID)
             .setContentTitle("Alarm Active")
             .setContentText(alarmLabel != null ? alarmLabel : "Wake up!")
             .setSmallIcon(R.drawable.notification_icon)
@@ -228,24 +532,21 @@ public class ProductionAlarmService extends Service {
             .setOngoing(true)
             .setAutoCancel(false)
             .addAction(R.drawable.notification_icon, "STOP", stopPendingIntent)
-            .setFullScreenIntent(createFullScreenIntent(), true)
+            .setFullScreenIntent(createFullScreenIntent(context, alarmId), true)
             .build();
-        
-        startForeground(NOTIFICATION_ID, notification);
-        Log.d(TAG, "🔔 Foreground service started with notification");
     }
     
     /**
      * Create full-screen intent for lockscreen UI
      */
-    private PendingIntent createFullScreenIntent() {
-        Intent intent = new Intent(this, ProductionAlarmActivity.class);
+    private static PendingIntent createFullScreenIntent(Context context, String alarmId) {
+        Intent intent = new Intent(context, ProductionAlarmActivity.class);
         intent.setAction("com.unlockam.ALARM_TRIGGERED");
-        intent.putExtra("alarmId", currentAlarmId);
+        intent.putExtra("alarmId", alarmId);
         intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP);
         
         return PendingIntent.getActivity(
-            this, 0, intent,
+            context, 0, intent,
             PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
         );
     }
@@ -294,7 +595,7 @@ public class ProductionAlarmService extends Service {
             switch (focusChange) {
                 case AudioManager.AUDIOFOCUS_GAIN:
                     // We got focus - ensure alarm is playing
-                    if (isAlarmPlaying && !isAnyPlayerPlaying()) {
+                    if (isAlarmPlaying && !isStartingAudio() && !isAnyPlayerPlaying()) {
                         restartAlarmAudio();
                     }
                     break;
@@ -318,82 +619,166 @@ public class ProductionAlarmService extends Service {
      * Start alarm audio with multiple fallback layers
      */
     private void startAlarmAudio(String soundType) {
-        Log.d(TAG, "🔊 Starting alarm audio with sound type: " + soundType);
+        startAlarmAudio(soundType, RingingJournal.LAYER_PRIMARY);
+    }
+    
+    /**
+     * One attempt to get sound out of the fallback layers. Only touched on the main thread
+     */
+    private static final class AudioRace {
+        final String soundType;
+        final int firstLayer;
+        final long startedAt = System.currentTimeMillis();
+        final MediaPlayer[] ready = new MediaPlayer[RingingJournal.LAYER_RINGTONE];
+        final boolean[] failed = new boolean[RingingJournal.LAYER_RINGTONE];
+        volatile boolean settled = false;
         
-        // Set alarm volume to maximum
-        setAlarmVolumeToMax();
+        AudioRace(String soundType, int firstLayer) {
+            this.soundType = soundType;
+            this.firstLayer = firstLayer;
+        }
         
-        // Try primary audio source first
-        if (!startPrimaryAudio(soundType)) {
-            Log.w(TAG, "⚠️ Primary audio failed, trying backup");
-            if (!startBackupAudio()) {
-                Log.w(TAG, "⚠️ Backup audio failed, using system ringtone");
-                startSystemRingtone();
+        /**
+         * Release every prepared player still held, except the winner's
+         */
+        void releaseLosers(int winner) {
+            for (int layer = 0; layer < ready.length; layer++) {
+                if (layer != winner && ready[layer] != null) {
+                    ready[layer].release();
+                    ready[layer] = null;
+                }
             }
         }
     }
     
     /**
-     * Start primary audio player
+     * Start alarm audio from the given fallback layer. The MediaPlayer layers from
+     * there on are prepared in parallel; the layer that wins is journaled if the
+     * session was on another one, so a restart resumes from it
      */
-    private boolean startPrimaryAudio(String soundType) {
-        try {
-            primaryPlayer = new MediaPlayer();
-            
-            // Configure for alarm playback
-            primaryPlayer.setAudioAttributes(new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_ALARM)
-                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                .build());
-            
-            // Load audio source based on sound type
-            Uri audioUri = getAudioUri(soundType);
-            primaryPlayer.setDataSource(this, audioUri);
-            primaryPlayer.setLooping(true);
-            primaryPlayer.setVolume(1.0f, 1.0f);
-            
-            primaryPlayer.prepare();
-            primaryPlayer.start();
-            
-            Log.d(TAG, "✅ Primary audio started successfully");
-            return true;
-            
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Primary audio failed: " + e.getMessage());
-            releasePrimaryPlayer();
-            return false;
+    private void startAlarmAudio(String soundType, int layer) {
+        Log.d(TAG, "🔊 Starting alarm audio with sound type: " + soundType + " from layer " + layer);
+        
+        final AudioRace race = new AudioRace(soundType, layer);
+        audioRace = race;
+        if (layer >= RingingJournal.LAYER_RINGTONE) {
+            settleRace(race);
+            return;
+        }
+        
+        for (int candidate = layer; candidate < RingingJournal.LAYER_RINGTONE; candidate++) {
+            prepareLayer(race, candidate);
+            if (race.settled) {
+                // The pool handed over a warm player that won outright - lower layers would only be released
+                break;
+            }
+            mainHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    settleRace(race);
+                }
+            }, LAYER_DEADLINES_MS[candidate]);
         }
     }
     
     /**
-     * Start backup audio player
+     * Have AlarmPlayerPool prepare one MediaPlayer layer for the race
      */
-    private boolean startBackupAudio() {
-        try {
-            backupPlayer = new MediaPlayer();
-            
-            backupPlayer.setAudioAttributes(new AudioAttributes.Builder()
-                .setUsage(AudioAttributes.USAGE_ALARM)
-                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                .build());
-            
-            // Use system alarm sound as backup
-            Uri defaultAlarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
-            backupPlayer.setDataSource(this, defaultAlarmUri);
-            backupPlayer.setLooping(true);
-            backupPlayer.setVolume(1.0f, 1.0f);
-            
-            backupPlayer.prepare();
-            backupPlayer.start();
-            
-            Log.d(TAG, "✅ Backup audio started successfully");
-            return true;
+    private void prepareLayer(final AudioRace race, final int layer) {
+        Uri uri = layer == RingingJournal.LAYER_PRIMARY
+            ? getAudioUri(this, race.soundType)
+            : getBackupAudioUri(this, race.soundType);
+        if (uri == null) {
+            // Racing the primary's own URI would only fail or succeed together with it
+            race.failed[layer] = true;
+            return;
+        }
+        
+        AlarmPlayerPool.getInstance(this).acquire(uri, new AlarmPlayerPool.Callback() {
+            @Override
+            public void onReady(MediaPlayer player) {
+                if (race != audioRace || race.settled) {
+                    // Lost the race, or audio was stopped or restarted meanwhile
+                    player.release();
+                    return;
+                }
+                race.ready[layer] = player;
+                settleRace(race);
+            }
             
+            @Override
+            public void onFailed(Exception e) {
+                Log.e(TAG, "❌ Audio layer " + layer + " failed: " + e.getMessage());
+                race.failed[layer] = true;
+                settleRace(race);
+            }
+        });
+    }
+    
+    /**
+     * Pick the winner if it is decided: the first ready layer whose preferred layers
+     * have all failed or run past their deadline. Losers are released
+     */
+    private void settleRace(AudioRace race) {
+        if (race != audioRace || race.settled) {
+            return;
+        }
+        long elapsed = System.currentTimeMillis() - race.startedAt;
+        int winner = RingingJournal.LAYER_RINGTONE;
+        for (int layer = race.firstLayer; layer < RingingJournal.LAYER_RINGTONE; layer++) {
+            if (race.ready[layer] != null) {
+                winner = layer;
+                break;
+            }
+            if (!race.failed[layer] && elapsed < LAYER_DEADLINES_MS[layer]) {
+                // Still worth waiting for a preferred layer
+                return;
+            }
+        }
+        
+        race.settled = true;
+        if (winner == RingingJournal.LAYER_RINGTONE) {
+            race.releaseLosers(-1);
+            if (sessionLayer != RingingJournal.LAYER_RINGTONE) {
+                Log.w(TAG, "⚠️ No player ready after " + elapsed + "ms, using system ringtone");
+                journal.escalated(RingingJournal.LAYER_RINGTONE);
+                sessionLayer = RingingJournal.LAYER_RINGTONE;
+            }
+            startSystemRingtone();
+            return;
+        }
+        
+        MediaPlayer player = race.ready[winner];
+        race.ready[winner] = null;
+        if (winner == RingingJournal.LAYER_PRIMARY) {
+            primaryPlayer = player;
+        } else {
+            backupPlayer = player;
+        }
+        try {
+            // A restarted or fallback layer picks the crescendo up where it is, not from silence
+            volumeShaper = sessionRamp.shape(player, System.currentTimeMillis() - alarmStartTime);
+            player.start();
         } catch (Exception e) {
-            Log.e(TAG, "❌ Backup audio failed: " + e.getMessage());
-            releaseBackupPlayer();
-            return false;
+            Log.e(TAG, "❌ Audio layer " + winner + " failed to start: " + e.getMessage());
+            if (winner == RingingJournal.LAYER_PRIMARY) {
+                releasePrimaryPlayer();
+            } else {
+                releaseBackupPlayer();
+            }
+            closeVolumeShaper();
+            race.failed[winner] = true;
+            race.settled = false;
+            settleRace(race);
+            return;
         }
+        race.releaseLosers(winner);
+        if (winner != sessionLayer) {
+            journal.escalated(winner);
+            sessionLayer = winner;
+        }
+        Log.d(TAG, "✅ " + (winner == RingingJournal.LAYER_PRIMARY ? "Primary" : "Backup") +
+            " audio started after " + elapsed + "ms");
     }
     
     /**
@@ -406,9 +791,14 @@ public class ProductionAlarmService extends Service {
                 alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
             }
             
-            systemRingtone = RingtoneManager.getRingtone(this, alarmUri);
-            if (systemRingtone != null) {
-                systemRingtone.play();
+            Ringtone ringtone = RingtoneManager.getRingtone(this, alarmUri);
+            if (ringtone != null) {
+                // A one-shot ringtone would read as silence to the watchdog once it ends
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                    ringtone.setLooping(true);
+                }
+                systemRingtone = ringtone;
+                ringtone.play();
                 Log.d(TAG, "✅ System ringtone started");
             }
             
@@ -420,23 +810,47 @@ public class ProductionAlarmService extends Service {
     /**
      * Get audio URI based on sound type
      */
-    private Uri getAudioUri(String soundType) {
+    static Uri getAudioUri(Context context, String soundType) {
         // Default to system alarm sound
         Uri defaultUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
         
         if ("custom".equals(soundType)) {
-            // Try to load custom alarm sound from assets
-            try {
-                String assetPath = "android.resource://" + getPackageName() + "/" + R.raw.alarm_sound;
-                return Uri.parse(assetPath);
-            } catch (Exception e) {
-                Log.w(TAG, "Custom sound not found, using default");
+            Uri bundled = getBundledAudioUri(context);
+            if (bundled != null) {
+                return bundled;
             }
         }
         
         return defaultUri != null ? defaultUri : RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
     }
     
+    /**
+     * Source for the backup layer: the bundled sound when the primary is a system
+     * URI, the system alarm sound when the primary is the bundled one. Null when
+     * that would be the primary's own URI - a second player on the same source
+     * fails the same way and is not worth racing
+     */
+    static Uri getBackupAudioUri(Context context, String soundType) {
+        Uri primary = getAudioUri(context, soundType);
+        Uri bundled = getBundledAudioUri(context);
+        Uri backup = bundled != null && !bundled.equals(primary)
+            ? bundled
+            : RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+        return backup != null && !backup.equals(primary) ? backup : null;
+    }
+    
+    /**
+     * The alarm sound shipped in the APK, which needs no media storage or settings provider
+     */
+    private static Uri getBundledAudioUri(Context context) {
+        try {
+            return Uri.parse("android.resource://" + context.getPackageName() + "/" + R.raw.alarm_sound);
+        } catch (Exception e) {
+            Log.w(TAG, "Custom sound not found, using default");
+            return null;
+        }
+    }
+    
     /**
      * Start vibration pattern for alarm
      */
@@ -464,9 +878,15 @@ public class ProductionAlarmService extends Service {
      * Stop all audio players
      */
     private void stopAllAudio() {
+        if (audioRace != null) {
+            audioRace.releaseLosers(-1);
+            audioRace = null;
+        }
         releasePrimaryPlayer();
         releaseBackupPlayer();
         releaseSystemRingtone();
+        // After the players, so none of them jumps to full volume on its way out
+        closeVolumeShaper();
     }
     
     /**
@@ -479,12 +899,23 @@ public class ProductionAlarmService extends Service {
     }
     
     /**
-     * Set alarm volume to maximum
+     * Raise the alarm stream to the ramp's target if the user's volume is below it.
+     * Called once per session; the crescendo itself runs in the player
      */
-    private void setAlarmVolumeToMax() {
-        if (audioManager != null) {
-            int maxVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM);
-            audioManager.setStreamVolume(AudioManager.STREAM_ALARM, maxVolume, 0);
+    private void raiseStreamVolumeIfNeeded() {
+        if (sessionRamp.raiseAlarmStream(audioManager)) {
+            volumeRaised = true;
+        }
+    }
+    
+    private void closeVolumeShaper() {
+        if (volumeShaper != null) {
+            try {
+                volumeShaper.close();
+            } catch (Exception e) {
+                Log.w(TAG, "Error closing volume shaper", e);
+            }
+            volumeShaper = null;
         }
     }
     
@@ -495,57 +926,114 @@ public class ProductionAlarmService extends Service {
         if (audioManager != null) {
             originalVolume = audioManager.getStreamVolume(AudioManager.STREAM_ALARM);
             originalRingerMode = audioManager.getRingerMode();
+            audioBackedUp = true;
         }
     }
     
     /**
-     * Restore original audio settings
+     * Restore original audio settings, once, and only if they were backed up and
+     * the session actually raised the stream
      */
     private void restoreAudioSettings() {
-        if (audioManager != null) {
+        if (audioManager != null && audioBackedUp && volumeRaised) {
             audioManager.setStreamVolume(AudioManager.STREAM_ALARM, originalVolume, 0);
             // Note: Don't restore ringer mode to avoid interfering with user changes
         }
+        audioBackedUp = false;
+        volumeRaised = false;
     }
     
     /**
      * Check if any player is currently playing
      */
     private boolean isAnyPlayerPlaying() {
-        return (primaryPlayer != null && primaryPlayer.isPlaying()) ||
-               (backupPlayer != null && backupPlayer.isPlaying()) ||
-               (systemRingtone != null && systemRingtone.isPlaying());
+        // Read each field once - the watchdog calls this while the main thread may clear them
+        MediaPlayer primary = primaryPlayer;
+        MediaPlayer backup = backupPlayer;
+        Ringtone ringtone = systemRingtone;
+        return (primary != null && primary.isPlaying()) ||
+               (backup != null && backup.isPlaying()) ||
+               (ringtone != null && ringtone.isPlaying());
+    }
+    
+    /**
+     * True while an audio race has not picked a layer yet - silence is expected then
+     */
+    private boolean isStartingAudio() {
+        AudioRace race = audioRace;
+        return race != null && !race.settled;
     }
     
     /**
      * Restart alarm audio if it stopped unexpectedly
      */
     private void restartAlarmAudio() {
-        Log.d(TAG, "🔄 Restarting alarm audio");
+        restartAlarmAudio(sessionLayer);
+    }
+    
+    /**
+     * Restart alarm audio from the given fallback layer
+     */
+    private void restartAlarmAudio(int layer) {
+        Log.d(TAG, "🔄 Restarting alarm audio from layer " + layer);
         stopAllAudio();
-        startAlarmAudio("default");
+        startAlarmAudio(sessionSoundType, layer);
     }
     
     /**
-     * Schedule snooze alarm
+     * Queue the snoozed session as a one-shot production alarm and record it in the
+     * boot-restore registry. It gets its own ID, so a recurring alarm's next
+     * occurrence stays queued, and snoozing again only moves it
      */
     private void scheduleSnoozeAlarm(String alarmId, int minutes) {
-        // TODO: Integrate with existing alarm scheduling system
-        Log.d(TAG, "😴 Snooze alarm scheduled for " + minutes + " minutes");
+        String snoozedId = alarmId != null ? alarmId : currentAlarmId;
+        if (snoozedId == null) {
+            Log.w(TAG, "⚠️ Nothing to snooze - no alarm ID");
+            return;
+        }
+        if (snoozedId.endsWith(SNOOZE_SUFFIX)) {
+            snoozedId = snoozedId.substring(0, snoozedId.length() - SNOOZE_SUFFIX.length());
+        }
+        long triggerAt = System.currentTimeMillis() + minutes * 60 * 1000L;
+        QueuedAlarm snooze = new QueuedAlarm.Builder(QueuedAlarm.TARGET_PRODUCTION, snoozedId + SNOOZE_SUFFIX, triggerAt)
+            .setSoundType(sessionSoundType)
+            .setVibration(sessionVibration)
+            .setLabel(sessionLabels.isEmpty() ? null : sessionLabel(sessionLabels))
+            .setRamp(sessionRamp)
+            .build();
+        try {
+            String method = AlarmQueue.getInstance(this).schedule(snooze);
+            ProductionAlarmRegistry.getInstance(this).upsert(snooze);
+            Log.d(TAG, "😴 Snooze alarm " + snooze.alarmId + " scheduled for " + minutes + " minutes via " + method);
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to schedule snooze alarm", e);
+        }
     }
     
     /**
-     * Reschedule stored alarms (after boot/update)
+     * Reschedule stored alarms (after boot/update) from the registry, off the main thread
      */
     private void rescheduleStoredAlarms() {
-        // TODO: Load alarms from storage and reschedule them
         Log.d(TAG, "🔄 Rescheduling stored alarms");
+        AlarmReconciler.reconcileInBackground(this, new AlarmReconciler.Callback() {
+            @Override
+            public void onReconciled(AlarmReconciler.Report report) {
+                if (report != null) {
+                    Log.d(TAG, "✅ Restored " + report.restored + " stored alarms");
+                }
+                if (!isAlarmPlaying) {
+                    stopForeground(true);
+                    stopSelf();
+                }
+            }
+        });
     }
     
     /**
      * Create notification channel for foreground service
      */
-    private void createNotificationChannel() {
+    static void createNotificationChannel(Context context) {
+        NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && notificationManager != null) {
             NotificationChannel channel = new NotificationChannel(
                 CHANNEL_ID,
@@ -652,6 +1140,7 @@ public class ProductionAlarmService extends Service {
     public void onDestroy() {
         Log.d(TAG, "🏭 ProductionAlarmService destroyed");
         
+        watchdog.stop();
         stopAllAudio();
         stopVibration();
         restoreAudioSettings();
@@ -0,0 +1,437 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Context;
+import android.content.Intent;
+import com.unlockam.mobile.devbuild.alarmmodule.AlarmyStyleAlarmReceiver;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single alarm held by the in-process {@link AlarmQueue}.
+ *
+ * Each entry remembers which alarm stack scheduled it so that, when the queue
+ * fires, it can hand the alarm back to that stack's receiver with exactly the
+ * extras the stack used to put on its own PendingIntent.
+ *
+ * An alarm with a pre-warm lead wakes the queue twice: once {@code prewarmLeadMs}
+ * before the trigger to prepare audio and UI, then at the trigger itself. Both
+ * wake-ups share the one entry - {@link #wakeAt()} moves to the trigger time
+ * once the entry is marked pre-warmed.
+ *
+ * An alarm with a ring duration gets a companion stop entry queued when it
+ * fires; the stop entry's alarm ID is the key of the alarm it ends, and it is
+ * delivered as STOP_ALARM straight to the service that is ringing.
+ */
+public class QueuedAlarm {
+
+    public static final String TARGET_PRODUCTION = "production";
+    public static final String TARGET_LEGACY = "legacy";
+    public static final String TARGET_ALARMY = "alarmy";
+    public static final String TARGET_STOP = "stop";
+
+    // Priority classes, cheapest AlarmManager API that still meets each latency guarantee
+    public static final String PRIORITY_CRITICAL = "critical";   // setAlarmClock - never deferred
+    public static final String PRIORITY_EXACT = "exact";         // setExactAndAllowWhileIdle
+    public static final String PRIORITY_WINDOWED = "windowed";   // setWindow - may batch within windowMs
+
+    public static final long DEFAULT_WINDOW_MS = 10 * 60 * 1000L;
+    public static final long DEFAULT_MISSED_GRACE_MS = 10 * 60 * 1000L;
+
+    public final String target;
+    public final String alarmId;
+    public final long triggerAt;
+    public final String soundType;
+    public final boolean vibration;
+    public final String label;
+    // Null for one-shot alarms
+    public final AlarmRecurrence recurrence;
+    // 0 disables the pre-warm wake-up
+    public final long prewarmLeadMs;
+    public final boolean prewarmed;
+    public final String priority;
+    // How late a windowed alarm may be delivered
+    public final long windowMs;
+    // Raised from exact to critical by AlarmQuotaPlanner to dodge the Doze idle quota
+    public final boolean promoted;
+    // How long the alarm may ring before it is stopped natively; 0 rings until dismissed
+    public final long ringDurationMs;
+    // How late after a reboot or force-stop the alarm still rings; beyond this it counts as missed
+    public final long missedGraceMs;
+    // Crescendo the ringing service applies to the player
+    public final VolumeRamp ramp;
+    // Trigger time of the occurrence last popped (fired or missed); 0 before the first
+    public final long lastFiredAt;
+
+    private QueuedAlarm(Builder builder) {
+        this.target = builder.target;
+        this.alarmId = builder.alarmId;
+        this.triggerAt = builder.triggerAt;
+        this.soundType = builder.soundType;
+        this.vibration = builder.vibration;
+        this.label = builder.label;
+        this.recurrence = builder.recurrence;
+        this.prewarmLeadMs = builder.prewarmLeadMs;
+        this.prewarmed = builder.prewarmed;
+        this.priority = builder.priority;
+        this.windowMs = builder.windowMs;
+        this.promoted = builder.promoted;
+        this.ringDurationMs = builder.ringDurationMs;
+        this.missedGraceMs = builder.missedGraceMs;
+        this.ramp = builder.ramp;
+        this.lastFiredAt = builder.lastFiredAt;
+    }
+
+    public boolean isStop() {
+        return TARGET_STOP.equals(target);
+    }
+
+    /**
+     * The entry that ends this alarm's ringing, or null if it rings until dismissed
+     */
+    public QueuedAlarm stopEntry() {
+        if (ringDurationMs <= 0 || isStop()) {
+            return null;
+        }
+        return new Builder(TARGET_STOP, key(), triggerAt + ringDurationMs)
+            .setLabel(label)
+            .build();
+    }
+
+    /**
+     * Whether an alarm that should have fired before {@code now} still rings, rather than counting as missed
+     */
+    public boolean withinMissedGrace(long now) {
+        return now - triggerAt <= missedGraceMs;
+    }
+
+    /**
+     * The priority the caller asked for, before any promotion by the planner
+     */
+    public String requestedPriority() {
+        return promoted ? PRIORITY_EXACT : priority;
+    }
+
+    /**
+     * Everything but windowed alarms needs the exact alarm permission on Android 12+
+     */
+    public boolean needsExactPermission() {
+        return !PRIORITY_WINDOWED.equals(priority);
+    }
+
+    /**
+     * When the queue has to wake up next for this alarm - the pre-warm time until
+     * the entry has been pre-warmed, then the trigger time
+     */
+    public long wakeAt() {
+        return prewarmLeadMs > 0 && !prewarmed ? triggerAt - prewarmLeadMs : triggerAt;
+    }
+
+    /**
+     * Unique key across all stacks - the same numeric ID may be used by more than one stack
+     */
+    public String key() {
+        return key(target, alarmId);
+    }
+
+    public static String key(String target, String alarmId) {
+        return target + ":" + alarmId;
+    }
+
+    public Builder toBuilder() {
+        return new Builder(target, alarmId, triggerAt)
+            .setSoundType(soundType)
+            .setVibration(vibration)
+            .setLabel(label)
+            .setRecurrence(recurrence)
+            .setPrewarmLeadMs(prewarmLeadMs)
+            .setPrewarmed(prewarmed)
+            .setPriority(priority)
+            .setWindowMs(windowMs)
+            .setPromoted(promoted)
+            .setRingDurationMs(ringDurationMs)
+            .setMissedGraceMs(missedGraceMs)
+            .setRamp(ramp)
+            .setLastFiredAt(lastFiredAt);
+    }
+
+    public boolean isRecurring() {
+        return recurrence != null && recurrence.isRepeating();
+    }
+
+    /**
+     * The same alarm moved to its next occurrence after {@code now}, or null for one-shot alarms
+     */
+    public QueuedAlarm nextOccurrence(long now) {
+        if (recurrence == null || !recurrence.isRepeating()) {
+            return null;
+        }
+        return toBuilder()
+            .setTriggerAt(recurrence.nextAfter(Math.max(now, triggerAt)))
+            .setPrewarmed(false)
+            .setLastFiredAt(triggerAt)
+            .build();
+    }
+
+    /**
+     * The same alarm re-resolved after a clock or zone change. Alarms scheduled
+     * as absolute instants are returned unchanged. A clock set back never brings
+     * back an occurrence that was already popped - the search starts after it.
+     */
+    public QueuedAlarm rebased(ZoneId deviceZone, long now) {
+        if (recurrence == null) {
+            return this;
+        }
+        AlarmRecurrence rule = recurrence.floating ? recurrence.withZone(deviceZone, false) : recurrence;
+        long rebasedAt = recurrence.rebase(triggerAt, rule, Math.max(now, lastFiredAt));
+        if (rebasedAt == triggerAt && rule == recurrence) {
+            return this;
+        }
+        return toBuilder().setTriggerAt(rebasedAt).setRecurrence(rule).setPrewarmed(false).build();
+    }
+
+    /**
+     * Build the broadcast the owning stack expects when its alarm goes off
+     */
+    public Intent toTriggerIntent(Context context) {
+        Intent intent;
+        switch (target) {
+            case TARGET_ALARMY:
+                intent = new Intent(context, AlarmyStyleAlarmReceiver.class);
+                intent.setAction("com.unlockam.ALARMY_ALARM_TRIGGER");
+                intent.putExtra("alarm_id", parseIntId(alarmId));
+                intent.putExtra("alarm_label", label);
+                intent.putExtra("trigger_time", triggerAt);
+                return intent;
+            case TARGET_LEGACY:
+                intent = new Intent(context, AlarmReceiver.class);
+                break;
+            case TARGET_STOP:
+                // alarmId holds "<target>:<id>" of the alarm being ended
+                int split = alarmId.indexOf(':');
+                String stoppedTarget = alarmId.substring(0, split);
+                intent = new Intent(context, TARGET_LEGACY.equals(stoppedTarget)
+                    ? AndroidAlarmAudioService.class
+                    : ProductionAlarmService.class);
+                intent.setAction("STOP_ALARM");
+                intent.putExtra("alarmId", alarmId.substring(split + 1));
+                intent.putExtra("autoStop", true);
+                return intent;
+            case TARGET_PRODUCTION:
+            default:
+                intent = new Intent(context, ProductionAlarmReceiver.class);
+                intent.setAction("com.unlockam.ALARM_TRIGGER");
+                // Scheduled time, so the ringing service can record how late it fired
+                intent.putExtra("triggerAt", triggerAt);
+                break;
+        }
+        intent.putExtra("alarmId", alarmId);
+        intent.putExtra("soundType", soundType);
+        intent.putExtra("vibration", vibration);
+        intent.putExtra("label", label);
+        ramp.putExtras(intent);
+        return intent;
+    }
+
+    /**
+     * One production trigger broadcast for several alarms that fire together.
+     * The first alarm supplies the sound and vibration settings; the IDs and
+     * labels of all of them travel in the {@code alarmIds} / {@code labels} extras.
+     */
+    public static Intent toSessionTriggerIntent(Context context, List<QueuedAlarm> alarms) {
+        Intent intent = alarms.get(0).toTriggerIntent(context);
+        ArrayList<String> alarmIds = new ArrayList<>();
+        ArrayList<String> labels = new ArrayList<>();
+        long[] triggerAts = new long[alarms.size()];
+        for (int i = 0; i < alarms.size(); i++) {
+            alarmIds.add(alarms.get(i).alarmId);
+            labels.add(alarms.get(i).label);
+            triggerAts[i] = alarms.get(i).triggerAt;
+        }
+        intent.putStringArrayListExtra("alarmIds", alarmIds);
+        intent.putStringArrayListExtra("labels", labels);
+        intent.putExtra("triggerAts", triggerAts);
+        return intent;
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("target", target);
+        json.put("alarmId", alarmId);
+        json.put("triggerAt", triggerAt);
+        json.put("soundType", soundType);
+        json.put("vibration", vibration);
+        json.put("label", label);
+        if (recurrence != null) {
+            json.put("recurrence", recurrence.toJson());
+        }
+        if (prewarmLeadMs > 0) {
+            json.put("prewarmLeadMs", prewarmLeadMs);
+            json.put("prewarmed", prewarmed);
+        }
+        json.put("priority", priority);
+        json.put("windowMs", windowMs);
+        if (promoted) {
+            json.put("promoted", true);
+        }
+        if (ringDurationMs > 0) {
+            json.put("ringDurationMs", ringDurationMs);
+        }
+        if (missedGraceMs != DEFAULT_MISSED_GRACE_MS) {
+            json.put("missedGraceMs", missedGraceMs);
+        }
+        if (!ramp.isDefault()) {
+            json.put("ramp", ramp.toJson());
+        }
+        if (lastFiredAt > 0) {
+            json.put("lastFiredAt", lastFiredAt);
+        }
+        return json;
+    }
+
+    static QueuedAlarm fromJson(JSONObject json) throws JSONException {
+        JSONObject recurrence = json.optJSONObject("recurrence");
+        JSONObject ramp = json.optJSONObject("ramp");
+        Builder builder = new Builder(json.getString("target"), json.getString("alarmId"), json.getLong("triggerAt"));
+        if (json.has("priority")) {
+            builder.setPriority(json.getString("priority"));
+        }
+        return builder
+            .setSoundType(json.optString("soundType", "default"))
+            .setVibration(json.optBoolean("vibration", true))
+            .setLabel(json.optString("label", "Alarm"))
+            .setRecurrence(recurrence != null ? AlarmRecurrence.fromJson(recurrence) : null)
+            .setPrewarmLeadMs(json.optLong("prewarmLeadMs", 0))
+            .setPrewarmed(json.optBoolean("prewarmed", false))
+            .setWindowMs(json.optLong("windowMs", DEFAULT_WINDOW_MS))
+            .setPromoted(json.optBoolean("promoted", false))
+            .setRingDurationMs(json.optLong("ringDurationMs", 0))
+            .setMissedGraceMs(json.optLong("missedGraceMs", DEFAULT_MISSED_GRACE_MS))
+            .setRamp(ramp != null ? VolumeRamp.fromJson(ramp) : VolumeRamp.NONE)
+            .setLastFiredAt(json.optLong("lastFiredAt", 0))
+            .build();
+    }
+
+    private static int parseIntId(String alarmId) {
+        try {
+            return Integer.parseInt(alarmId);
+        } catch (NumberFormatException e) {
+            return alarmId.hashCode();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return key() + "@" + triggerAt + (recurrence != null ? " (" + recurrence + ")" : "");
+    }
+
+    public static class Builder {
+        private final String target;
+        private final String alarmId;
+        private long triggerAt;
+        private String soundType = "default";
+        private boolean vibration = true;
+        private String label = "Alarm";
+        private AlarmRecurrence recurrence;
+        private long prewarmLeadMs;
+        private boolean prewarmed;
+        private String priority;
+        private long windowMs = DEFAULT_WINDOW_MS;
+        private boolean promoted;
+        private long ringDurationMs;
+        private long missedGraceMs = DEFAULT_MISSED_GRACE_MS;
+        private VolumeRamp ramp = VolumeRamp.NONE;
+        private long lastFiredAt;
+
+        public Builder(String target, String alarmId, long triggerAt) {
+            this.target = target;
+            this.alarmId = alarmId;
+            this.triggerAt = triggerAt;
+            // Alarmy-style alarms have always been alarm clocks - keep that guarantee by default
+            this.priority = TARGET_ALARMY.equals(target) ? PRIORITY_CRITICAL : PRIORITY_EXACT;
+        }
+
+        public Builder setTriggerAt(long triggerAt) {
+            this.triggerAt = triggerAt;
+            return this;
+        }
+
+        public Builder setSoundType(String soundType) {
+            this.soundType = soundType != null ? soundType : "default";
+            return this;
+        }
+
+        public Builder setVibration(boolean vibration) {
+            this.vibration = vibration;
+            return this;
+        }
+
+        public Builder setLabel(String label) {
+            this.label = label != null ? label : "Alarm";
+            return this;
+        }
+
+        public Builder setRecurrence(AlarmRecurrence recurrence) {
+            this.recurrence = recurrence;
+            return this;
+        }
+
+        public Builder setPrewarmLeadMs(long prewarmLeadMs) {
+            this.prewarmLeadMs = Math.max(0, prewarmLeadMs);
+            return this;
+        }
+
+        public Builder setPrewarmed(boolean prewarmed) {
+            this.prewarmed = prewarmed;
+            return this;
+        }
+
+        public Builder setPriority(String priority) {
+            if (priority == null) {
+                return this;
+            }
+            if (!PRIORITY_CRITICAL.equals(priority) && !PRIORITY_EXACT.equals(priority) &&
+                !PRIORITY_WINDOWED.equals(priority)) {
+                throw new IllegalArgumentException("Unknown priority: " + priority);
+            }
+            this.priority = priority;
+            return this;
+        }
+
+        public Builder setWindowMs(long windowMs) {
+            this.windowMs = Math.max(0, windowMs);
+            return this;
+        }
+
+        public Builder setPromoted(boolean promoted) {
+            this.promoted = promoted;
+            return this;
+        }
+
+        public Builder setRingDurationMs(long ringDurationMs) {
+            this.ringDurationMs = Math.max(0, ringDurationMs);
+            return this;
+        }
+
+        public Builder setMissedGraceMs(long missedGraceMs) {
+            this.missedGraceMs = Math.max(0, missedGraceMs);
+            return this;
+        }
+
+        public Builder setRamp(VolumeRamp ramp) {
+            this.ramp = ramp != null ? ramp : VolumeRamp.NONE;
+            return this;
+        }
+
+        public Builder setLastFiredAt(long lastFiredAt) {
+            this.lastFiredAt = Math.max(0, lastFiredAt);
+            return this;
+        }
+
+        public QueuedAlarm build() {
+            return new QueuedAlarm(this);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Context;
+import android.util.Log;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of a ringing session's state transitions.
+ *
+ * The alarm services are sticky, but a restarted service gets a null intent and
+ * has lost its alarm ids, start time and the volume it raised. Each transition is
+ * appended here and synced to disk before the service acts on it, so a restart
+ * replays the file and resumes the same session.
+ *
+ * Key design decisions:
+ * 1. One small file per service; STARTED truncates it, so the file only ever
+ *    holds the current session and replay reads a few hundred bytes
+ * 2. Records are [length][CRC32][payload]; replay stops at the first short or
+ *    corrupt record, so a write torn by the process dying is simply ignored
+ * 3. The user's original volume is captured once in STARTED and never re-read,
+ *    because after a restart the stream is still at the alarm's maximum
+ * 4. The file lives in device-protected storage, so an alarm ringing before the
+ *    first unlock resumes too
+ * 5. A session older than MAX_SESSION_MS is treated as abandoned rather than
+ *    resumed, so a stale journal can never start an alarm on its own
+ */
+public final class RingingJournal {
+
+    private static final String TAG = "RingingJournal";
+    private static final long MAX_SESSION_MS = 60 * 60 * 1000L;
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+
+    // Audio layers, in the order the services fall back through them
+    public static final int LAYER_PRIMARY = 0;
+    public static final int LAYER_BACKUP = 1;
+    public static final int LAYER_RINGTONE = 2;
+
+    private static final byte STARTED = 1;
+    private static final byte JOINED = 2;
+    private static final byte ESCALATED = 3;
+    private static final byte ENDED = 4;
+    private static final byte SNOOZED = 5;
+    private static final byte DISMISSED = 6;
+
+    /**
+     * The ringing session reconstructed from the journal
+     */
+    public static final class Session {
+        public final long startedAt;
+        public final int originalVolume;
+        public final int originalRingerMode;
+        public final String soundType;
+        public final boolean vibration;
+        public final List<String> alarmIds = new ArrayList<>();
+        public final List<String> labels = new ArrayList<>();
+        public int layer = LAYER_PRIMARY;
+        // Journals written before ramps existed resume at full volume
+        public VolumeRamp ramp = VolumeRamp.NONE;
+
+        Session(long startedAt, int originalVolume, int originalRingerMode, String soundType, boolean vibration) {
+            this.startedAt = startedAt;
+            this.originalVolume = originalVolume;
+            this.originalRingerMode = originalRingerMode;
+            this.soundType = soundType;
+            this.vibration = vibration;
+        }
+    }
+
+    private final File file;
+
+    public RingingJournal(Context context, String name) {
+        this.file = new File(DirectBootStorage.deviceProtected(context).getFilesDir(), name);
+    }
+
+    /**
+     * Start a new session, replacing whatever the journal held before
+     */
+    public synchronized void started(long startedAt, int originalVolume, int originalRingerMode,
+                                     String soundType, boolean vibration, VolumeRamp ramp,
+                                     List<String> alarmIds, List<String> labels) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = header(bytes, STARTED, startedAt);
+        try {
+            out.writeInt(originalVolume);
+            out.writeInt(originalRingerMode);
+            writeString(out, soundType);
+            out.writeBoolean(vibration);
+            out.writeInt(alarmIds.size());
+            for (int i = 0; i < alarmIds.size(); i++) {
+                writeString(out, alarmIds.get(i));
+                writeString(out, labels.get(i));
+            }
+            // Appended last so older readers stop before it
+            writeString(out, ramp.curve);
+            out.writeLong(ramp.durationMs);
+            out.writeFloat(ramp.targetVolume);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(bytes.toByteArray(), false);
+    }
+
+    public synchronized void joined(String alarmId, String label) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = header(bytes, JOINED, System.currentTimeMillis());
+        try {
+            writeString(out, alarmId);
+            writeString(out, label);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(bytes.toByteArray(), true);
+    }
+
+    /**
+     * The session fell back to a later audio layer
+     */
+    public synchronized void escalated(int layer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = header(bytes, ESCALATED, System.currentTimeMillis());
+        try {
+            out.writeInt(layer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(bytes.toByteArray(), true);
+    }
+
+    /**
+     * One alarm of the session reached its end time; the session rings on
+     */
+    public synchronized void ended(String alarmId) {
+        appendAlarmRecord(ENDED, alarmId);
+    }
+
+    public synchronized void snoozed(String alarmId) {
+        appendAlarmRecord(SNOOZED, alarmId);
+    }
+
+    public synchronized void dismissed(String alarmId) {
+        appendAlarmRecord(DISMISSED, alarmId);
+    }
+
+    /**
+     * The session to resume, or null if the last one was snoozed, dismissed or abandoned
+     */
+    public synchronized Session replay() {
+        if (!file.exists()) {
+            return null;
+        }
+        Session session = null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            while (true) {
+                byte[] payload = readRecord(in);
+                if (payload == null) {
+                    break;
+                }
+                session = apply(session, new DataInputStream(new ByteArrayInputStream(payload)));
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to read ringing journal", e);
+        } finally {
+            closeQuietly(in);
+        }
+
+        if (session != null && System.currentTimeMillis() - session.startedAt > MAX_SESSION_MS) {
+            Log.w(TAG, "⚠️ Ignoring abandoned ringing session from " + session.startedAt);
+            return null;
+        }
+        return session;
+    }
+
+    private static Session apply(Session session, DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        long at = in.readLong();
+        switch (type) {
+            case STARTED:
+                int originalVolume = in.readInt();
+                int originalRingerMode = in.readInt();
+                String soundType = readString(in);
+                boolean vibration = in.readBoolean();
+                Session started = new Session(at, originalVolume, originalRingerMode, soundType, vibration);
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    started.alarmIds.add(readString(in));
+                    started.labels.add(readString(in));
+                }
+                if (in.available() > 0) {
+                    started.ramp = VolumeRamp.of(readString(in), in.readLong(), in.readFloat());
+                }
+                return started;
+            case JOINED:
+                if (session != null) {
+                    session.alarmIds.add(readString(in));
+                    session.labels.add(readString(in));
+                }
+                return session;
+            case ESCALATED:
+                if (session != null) {
+                    session.layer = in.readInt();
+                }
+                return session;
+            case ENDED:
+                if (session != null) {
+                    int index = session.alarmIds.indexOf(readString(in));
+                    if (index >= 0) {
+                        session.alarmIds.remove(index);
+                        session.labels.remove(index);
+                    }
+                }
+                return session;
+            case SNOOZED:
+            case DISMISSED:
+                return null;
+            default:
+                Log.w(TAG, "⚠️ Unknown journal record " + type);
+                return session;
+        }
+    }
+
+    private void appendAlarmRecord(byte type, String alarmId) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = header(bytes, type, System.currentTimeMillis());
+        try {
+            writeString(out, alarmId);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        append(bytes.toByteArray(), true);
+    }
+
+    /**
+     * Write one framed record and fsync before returning
+     */
+    private void append(byte[] payload, boolean append) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        FileOutputStream stream = null;
+        try {
+            stream = new FileOutputStream(file, append);
+            DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to append to ringing journal", e);
+        } finally {
+            closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Next intact payload, or null at the end of the file or at a torn tail
+     */
+    private static byte[] readRecord(DataInputStream in) throws IOException {
+        int length;
+        int expected;
+        byte[] payload;
+        try {
+            length = in.readInt();
+            expected = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES) {
+                Log.w(TAG, "⚠️ Corrupt record length " + length + " - ignoring the rest of the journal");
+                return null;
+            }
+            payload = new byte[length];
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != expected) {
+            Log.w(TAG, "⚠️ Torn journal record - ignoring the rest of the journal");
+            return null;
+        }
+        return payload;
+    }
+
+    private static DataOutputStream header(ByteArrayOutputStream bytes, byte type, long at) {
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(type);
+            out.writeLong(at);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Intent;
+import android.media.AudioManager;
+import android.media.VolumeAutomation;
+import android.media.VolumeShaper;
+import android.os.Build;
+import android.util.Log;
+import com.facebook.react.bridge.ReadableMap;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Per-alarm crescendo: a volume curve applied to the player with VolumeShaper.
+ *
+ * The services used to jump STREAM_ALARM (and even STREAM_MUSIC) to maximum, a
+ * system-wide change made through AudioManager on every trigger. A ramp runs
+ * inside the player instead, so it needs no timers and no repeated AudioManager
+ * calls while it plays.
+ *
+ * Key design decisions:
+ * 1. Curves are linear, exponential (amplitude grows as e^(kx), which is heard as
+ *    a steady rise in loudness) or stepped; all of them start from silence and
+ *    end at full player volume after durationMs
+ * 2. targetVolume is the loudness the ramp ends at, as a fraction of the alarm
+ *    stream's maximum. The stream is raised once, and only if the user's own
+ *    volume is below that - it is never lowered and STREAM_MUSIC is never touched
+ * 3. A player started mid-ramp (a restart, a fallback layer, a resumed session)
+ *    gets the remainder of the curve, so the crescendo never starts over
+ * 4. VolumeShaper needs API 26; below that, and for the system ringtone fallback,
+ *    the alarm plays at full volume from the start as it always did
+ */
+public final class VolumeRamp {
+
+    private static final String TAG = "VolumeRamp";
+
+    public static final String CURVE_NONE = "none";
+    public static final String CURVE_LINEAR = "linear";
+    public static final String CURVE_EXPONENTIAL = "exponential";
+    public static final String CURVE_STEPPED = "stepped";
+
+    public static final VolumeRamp NONE = new VolumeRamp(CURVE_NONE, 0, 1.0f);
+
+    private static final int STEPS = 5;
+    private static final int EXPONENTIAL_POINTS = 16;
+    // Amplitude rises by e^4, about 35 dB, over the ramp
+    private static final double EXPONENTIAL_RATE = 4.0;
+
+    public final String curve;
+    public final long durationMs;
+    public final float targetVolume;
+
+    private VolumeRamp(String curve, long durationMs, float targetVolume) {
+        this.curve = curve;
+        this.durationMs = durationMs;
+        this.targetVolume = targetVolume;
+    }
+
+    public static VolumeRamp of(String curve, long durationMs, float targetVolume) {
+        if (curve == null) {
+            curve = CURVE_NONE;
+        }
+        if (!CURVE_NONE.equals(curve) && !CURVE_LINEAR.equals(curve) &&
+            !CURVE_EXPONENTIAL.equals(curve) && !CURVE_STEPPED.equals(curve)) {
+            throw new IllegalArgumentException("Unknown volume ramp curve: " + curve);
+        }
+        return new VolumeRamp(curve, Math.max(0, durationMs), Math.max(0f, Math.min(1f, targetVolume)));
+    }
+
+    public static VolumeRamp fromReadableMap(ReadableMap ramp) {
+        return of(
+            ramp.hasKey("curve") && !ramp.isNull("curve") ? ramp.getString("curve") : CURVE_LINEAR,
+            ramp.hasKey("durationMs") && !ramp.isNull("durationMs") ? (long) ramp.getDouble("durationMs") : 0,
+            ramp.hasKey("targetVolume") && !ramp.isNull("targetVolume") ? (float) ramp.getDouble("targetVolume") : 1.0f);
+    }
+
+    public boolean isRamping() {
+        return !CURVE_NONE.equals(curve) && durationMs > 0;
+    }
+
+    public boolean isDefault() {
+        return !isRamping() && targetVolume >= 1.0f;
+    }
+
+    public void putExtras(Intent intent) {
+        intent.putExtra("rampCurve", curve);
+        intent.putExtra("rampDurationMs", durationMs);
+        intent.putExtra("rampTargetVolume", targetVolume);
+    }
+
+    public static VolumeRamp fromIntent(Intent intent) {
+        if (!intent.hasExtra("rampCurve")) {
+            return NONE;
+        }
+        return of(intent.getStringExtra("rampCurve"), intent.getLongExtra("rampDurationMs", 0),
+            intent.getFloatExtra("rampTargetVolume", 1.0f));
+    }
+
+    JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("curve", curve);
+        json.put("durationMs", durationMs);
+        json.put("targetVolume", targetVolume);
+        return json;
+    }
+
+    static VolumeRamp fromJson(JSONObject json) {
+        return of(json.optString("curve", CURVE_NONE), json.optLong("durationMs", 0),
+            (float) json.optDouble("targetVolume", 1.0));
+    }
+
+    /**
+     * Raise STREAM_ALARM to the ramp's target if the user's volume is below it -
+     * the one AudioManager write an alarm makes
+     *
+     * @return true if the stream volume was changed
+     */
+    public boolean raiseAlarmStream(AudioManager audioManager) {
+        if (audioManager == null) {
+            return false;
+        }
+        int max = audioManager.getStreamMaxVolume(AudioManager.STREAM_ALARM);
+        int required = Math.max(1, (int) Math.ceil(targetVolume * max));
+        int current = audioManager.getStreamVolume(AudioManager.STREAM_ALARM);
+        if (current >= required) {
+            Log.d(TAG, "🔈 Alarm stream already at " + current + "/" + max + " - leaving it alone");
+            return false;
+        }
+        audioManager.setStreamVolume(AudioManager.STREAM_ALARM, required, 0);
+        Log.d(TAG, "🔊 Raised alarm stream from " + current + " to " + required + "/" + max);
+        return true;
+    }
+
+    /**
+     * Attach the rest of the ramp to a player that has not been started yet. The
+     * caller keeps the returned shaper for as long as the player plays; null means
+     * the player simply plays at full volume
+     *
+     * @param elapsedMs how far into the ramp the alarm already is
+     */
+    public VolumeShaper shape(VolumeAutomation player, long elapsedMs) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || !isRamping() || elapsedMs >= durationMs) {
+            return null;
+        }
+        try {
+            VolumeShaper shaper = player.createVolumeShaper(configuration(Math.max(0, elapsedMs)));
+            shaper.apply(VolumeShaper.Operation.PLAY);
+            return shaper;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "⚠️ Could not apply " + curve + " ramp, playing at full volume", e);
+            return null;
+        }
+    }
+
+    /**
+     * The part of the curve from {@code elapsedMs} on, rescaled to the remaining time
+     */
+    private VolumeShaper.Configuration configuration(long elapsedMs) {
+        float from = (float) elapsedMs / durationMs;
+        float[] times;
+        float[] volumes;
+        int interpolator;
+        switch (curve) {
+            case CURVE_EXPONENTIAL:
+                times = new float[EXPONENTIAL_POINTS];
+                volumes = new float[EXPONENTIAL_POINTS];
+                for (int i = 0; i < EXPONENTIAL_POINTS; i++) {
+                    times[i] = (float) i / (EXPONENTIAL_POINTS - 1);
+                    volumes[i] = exponential(from + (1f - from) * times[i]);
+                }
+                interpolator = VolumeShaper.Configuration.INTERPOLATOR_TYPE_CUBIC_MONOTONIC;
+                break;
+            case CURVE_STEPPED:
+                // The current step's level, a point at every step boundary still ahead, then
+                // the end. Step k plays at k/STEPS, so the first step is silent like the other curves
+                int step = Math.min(STEPS - 1, (int) Math.floor(from * STEPS));
+                int points = STEPS - step + 1;
+                times = new float[points];
+                volumes = new float[points];
+                times[0] = 0f;
+                volumes[0] = (float) step / STEPS;
+                for (int k = step + 1, i = 1; k < STEPS; k++, i++) {
+                    times[i] = ((float) k / STEPS - from) / (1f - from);
+                    volumes[i] = (float) k / STEPS;
+                }
+                times[points - 1] = 1f;
+                volumes[points - 1] = 1f;
+                interpolator = VolumeShaper.Configuration.INTERPOLATOR_TYPE_STEP;
+                break;
+            case CURVE_LINEAR:
+            default:
+                times = new float[] { 0f, 1f };
+                volumes = new float[] { from, 1f };
+                interpolator = VolumeShaper.Configuration.INTERPOLATOR_TYPE_LINEAR;
+                break;
+        }
+        return new VolumeShaper.Configuration.Builder()
+            .setDuration(durationMs - elapsedMs)
+            .setCurve(times, volumes)
+            .setInterpolatorType(interpolator)
+            .build();
+    }
+
+    private static float exponential(float x) {
+        return (float) ((Math.exp(EXPONENTIAL_RATE * x) - 1.0) / (Math.exp(EXPONENTIAL_RATE) - 1.0));
+    }
+
+    @Override
+    public String toString() {
+        return isRamping() ? curve + "/" + durationMs + "ms→" + targetVolume : "none→" + targetVolume;
+    }
+}
@@ -0,0 +1,310 @@
+package com.unlockam.alarmmodule;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Wake-up statistics maintained incrementally as AlarmHistory events are written.
+ *
+ * Key design decisions:
+ * 1. Means and variances are running (Welford) accumulators, so each event is an
+ *    O(1) update and reading them never touches the raw history
+ * 2. Dismiss latency also goes into a fixed-bucket histogram, which keeps the
+ *    shape of the distribution without storing samples
+ * 3. Per-weekday rollups use the device's zone at the moment of the event; index 0
+ *    is Sunday, matching JS Date.getDay()
+ * 4. The whole state is a few hundred bytes of JSON in device-protected prefs,
+ *    rewritten on every update
+ * 5. Watchdog audio restarts are counted with the silence before each, so a
+ *    flaky audio path shows up next to the wake-up numbers it distorts
+ */
+public final class WakeStats {
+
+    private static final String TAG = "WakeStats";
+    private static final String PREFS_NAME = "UnlockAM_WakeStats";
+    private static final String KEY_STATE = "state";
+
+    // Upper bounds of the dismiss-latency buckets; the last bucket is open-ended
+    public static final long[] DISMISS_BUCKETS_MS = {
+        30 * 1000L, 60 * 1000L, 2 * 60 * 1000L, 5 * 60 * 1000L, 10 * 60 * 1000L, 30 * 60 * 1000L
+    };
+
+    /**
+     * Running mean and variance (Welford's algorithm)
+     */
+    public static final class Running {
+        public long count;
+        public double mean;
+        private double m2;
+
+        void add(double x) {
+            count++;
+            double delta = x - mean;
+            mean += delta / count;
+            m2 += delta * (x - mean);
+        }
+
+        public double variance() {
+            return count > 1 ? m2 / (count - 1) : 0.0;
+        }
+
+        public double stdDev() {
+            return Math.sqrt(variance());
+        }
+
+        JSONObject toJson() throws JSONException {
+            return new JSONObject().put("count", count).put("mean", mean).put("m2", m2);
+        }
+
+        static Running fromJson(JSONObject json) {
+            Running running = new Running();
+            if (json != null) {
+                running.count = json.optLong("count");
+                running.mean = json.optDouble("mean", 0.0);
+                running.m2 = json.optDouble("m2", 0.0);
+            }
+            return running;
+        }
+    }
+
+    public static final class Weekday {
+        public long fired;
+        public long snoozed;
+        public long dismissed;
+        public long autoStopped;
+        public final Running dismissLatency;
+
+        Weekday(Running dismissLatency) {
+            this.dismissLatency = dismissLatency;
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private Running fireDelay = new Running();
+    private Running dismissLatency = new Running();
+    private Running audioRestarts = new Running();
+    private long[] dismissHistogram = new long[DISMISS_BUCKETS_MS.length + 1];
+    private final Map<String, Long> snoozesByAlarm = new HashMap<>();
+    private final Weekday[] weekdays = new Weekday[7];
+    private long events;
+
+    WakeStats(Context context) {
+        this.prefs = DirectBootStorage.forPreferences(context, PREFS_NAME)
+            .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (int i = 0; i < weekdays.length; i++) {
+            weekdays[i] = new Weekday(new Running());
+        }
+        load();
+    }
+
+    /**
+     * True until the first event is applied - AlarmHistory backfills from its log then
+     */
+    boolean isEmpty() {
+        return events == 0;
+    }
+
+    /**
+     * Fold one history event into every aggregate and persist the result
+     */
+    synchronized void add(AlarmHistory.Event event) {
+        apply(event);
+        save();
+    }
+
+    /**
+     * Fold a batch without persisting after each one
+     */
+    synchronized void addAll(Iterable<AlarmHistory.Event> history) {
+        for (AlarmHistory.Event event : history) {
+            apply(event);
+        }
+        save();
+    }
+
+    private void apply(AlarmHistory.Event event) {
+        events++;
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(event.at);
+        Weekday weekday = weekdays[calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY];
+        boolean known = event.latencyMs != AlarmHistory.UNKNOWN_LATENCY;
+
+        switch (event.type) {
+            case AlarmHistory.FIRED:
+                weekday.fired++;
+                if (known) {
+                    fireDelay.add(event.latencyMs);
+                }
+                break;
+            case AlarmHistory.SNOOZED:
+                weekday.snoozed++;
+                String key = event.target + ":" + event.alarmId;
+                Long snoozes = snoozesByAlarm.get(key);
+                snoozesByAlarm.put(key, snoozes != null ? snoozes + 1 : 1L);
+                break;
+            case AlarmHistory.DISMISSED:
+                weekday.dismissed++;
+                if (known) {
+                    dismissLatency.add(event.latencyMs);
+                    weekday.dismissLatency.add(event.latencyMs);
+                    dismissHistogram[bucketFor(event.latencyMs)]++;
+                }
+                break;
+            case AlarmHistory.AUTO_STOPPED:
+                weekday.autoStopped++;
+                break;
+            case AlarmHistory.AUDIO_RESTARTED:
+                if (known) {
+                    audioRestarts.add(event.latencyMs);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int bucketFor(long latencyMs) {
+        for (int i = 0; i < DISMISS_BUCKETS_MS.length; i++) {
+            if (latencyMs < DISMISS_BUCKETS_MS[i]) {
+                return i;
+            }
+        }
+        return DISMISS_BUCKETS_MS.length;
+    }
+
+    public synchronized Running fireDelay() {
+        return copy(fireDelay);
+    }
+
+    public synchronized Running dismissLatency() {
+        return copy(dismissLatency);
+    }
+
+    /**
+     * Watchdog restarts, over the milliseconds of silence before each
+     */
+    public synchronized Running audioRestarts() {
+        return copy(audioRestarts);
+    }
+
+    public synchronized long[] dismissHistogram() {
+        return dismissHistogram.clone();
+    }
+
+    /**
+     * Snooze counts keyed by "target:alarmId"
+     */
+    public synchronized Map<String, Long> snoozesByAlarm() {
+        return Collections.unmodifiableMap(new HashMap<>(snoozesByAlarm));
+    }
+
+    public synchronized Weekday[] weekdays() {
+        Weekday[] result = new Weekday[weekdays.length];
+        for (int i = 0; i < weekdays.length; i++) {
+            Weekday day = new Weekday(copy(weekdays[i].dismissLatency));
+            day.fired = weekdays[i].fired;
+            day.snoozed = weekdays[i].snoozed;
+            day.dismissed = weekdays[i].dismissed;
+            day.autoStopped = weekdays[i].autoStopped;
+            result[i] = day;
+        }
+        return result;
+    }
+
+    private static Running copy(Running running) {
+        Running copy = new Running();
+        copy.count = running.count;
+        copy.mean = running.mean;
+        copy.m2 = running.m2;
+        return copy;
+    }
+
+    private void save() {
+        try {
+            JSONObject state = new JSONObject();
+            state.put("events", events);
+            state.put("fireDelay", fireDelay.toJson());
+            state.put("dismissLatency", dismissLatency.toJson());
+            state.put("audioRestarts", audioRestarts.toJson());
+            JSONArray histogram = new JSONArray();
+            for (long count : dismissHistogram) {
+                histogram.put(count);
+            }
+            state.put("dismissHistogram", histogram);
+            JSONObject snoozes = new JSONObject();
+            for (Map.Entry<String, Long> entry : snoozesByAlarm.entrySet()) {
+                snoozes.put(entry.getKey(), entry.getValue());
+            }
+            state.put("snoozes", snoozes);
+            JSONArray days = new JSONArray();
+            for (Weekday day : weekdays) {
+                days.put(new JSONObject()
+                    .put("fired", day.fired)
+                    .put("snoozed", day.snoozed)
+                    .put("dismissed", day.dismissed)
+                    .put("autoStopped", day.autoStopped)
+                    .put("dismissLatency", day.dismissLatency.toJson()));
+            }
+            state.put("weekdays", days);
+            prefs.edit().putString(KEY_STATE, state.toString()).apply();
+        } catch (JSONException e) {
+            Log.e(TAG, "❌ Failed to persist wake statistics", e);
+        }
+    }
+
+    private void load() {
+        String stored = prefs.getString(KEY_STATE, null);
+        if (stored == null) {
+            return;
+        }
+        try {
+            JSONObject state = new JSONObject(stored);
+            events = state.optLong("events");
+            fireDelay = Running.fromJson(state.optJSONObject("fireDelay"));
+            dismissLatency = Running.fromJson(state.optJSONObject("dismissLatency"));
+            audioRestarts = Running.fromJson(state.optJSONObject("audioRestarts"));
+            JSONArray histogram = state.optJSONArray("dismissHistogram");
+            for (int i = 0; histogram != null && i < Math.min(histogram.length(), dismissHistogram.length); i++) {
+                dismissHistogram[i] = histogram.optLong(i);
+            }
+            JSONObject snoozes = state.optJSONObject("snoozes");
+            if (snoozes != null) {
+                Iterator<String> keys = snoozes.keys();
+                while (keys.hasNext()) {
+                    String key = keys.next();
+                    snoozesByAlarm.put(key, snoozes.optLong(key));
+                }
+            }
+            JSONArray days = state.optJSONArray("weekdays");
+            for (int i = 0; days != null && i < Math.min(days.length(), weekdays.length); i++) {
+                JSONObject day = days.getJSONObject(i);
+                weekdays[i] = new Weekday(Running.fromJson(day.optJSONObject("dismissLatency")));
+                weekdays[i].fired = day.optLong("fired");
+                weekdays[i].snoozed = day.optLong("snoozed");
+                weekdays[i].dismissed = day.optLong("dismissed");
+                weekdays[i].autoStopped = day.optLong("autoStopped");
+            }
+        } catch (JSONException e) {
+            // Start over; AlarmHistory backfills from the raw log
+            Log.e(TAG, "❌ Discarding unreadable wake statistics", e);
+            events = 0;
+            fireDelay = new Running();
+            dismissLatency = new Running();
+            audioRestarts = new Running();
+            dismissHistogram = new long[DISMISS_BUCKETS_MS.length + 1];
+            snoozesByAlarm.clear();
+            for (int i = 0; i < weekdays.length; i++) {
+                weekdays[i] = new Weekday(new Running());
+            }
+        }
+    }
+}
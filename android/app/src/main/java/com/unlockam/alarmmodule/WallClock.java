@@ -0,0 +1,64 @@
+package com.unlockam.alarmmodule;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves wall-clock alarm times (local date + time in a zone) to instants.
+ *
+ * Key design decisions:
+ * 1. ZoneRules are looked up once per zone and cached - a bulk recompute after a
+ *    zone change resolves thousands of times against the same rules
+ * 2. A time that falls in a DST gap rings at the end of the gap (02:30 on a
+ *    spring-forward night rings at 03:00), never an hour late
+ * 3. A time that occurs twice in a DST overlap rings once, at the earlier offset
+ */
+public final class WallClock {
+
+    private static final ConcurrentHashMap<ZoneId, ZoneRules> RULES = new ConcurrentHashMap<>();
+
+    private WallClock() {
+    }
+
+    public static ZoneRules rules(ZoneId zone) {
+        ZoneRules rules = RULES.get(zone);
+        if (rules == null) {
+            rules = zone.getRules();
+            RULES.put(zone, rules);
+        }
+        return rules;
+    }
+
+    public static long resolve(LocalDate date, LocalTime time, ZoneId zone) {
+        return resolve(LocalDateTime.of(date, time), zone);
+    }
+
+    public static long resolve(LocalDateTime local, ZoneId zone) {
+        ZoneRules rules = rules(zone);
+        if (rules.isFixedOffset()) {
+            return local.toInstant(rules.getOffset(local)).toEpochMilli();
+        }
+
+        List<ZoneOffset> offsets = rules.getValidOffsets(local);
+        if (!offsets.isEmpty()) {
+            // One offset normally, two in an overlap - the first is the earlier instant
+            return local.toInstant(offsets.get(0)).toEpochMilli();
+        }
+
+        ZoneOffsetTransition gap = rules.getTransition(local);
+        return gap.getInstant().toEpochMilli();
+    }
+
+    public static LocalDateTime toLocal(long epochMillis, ZoneId zone) {
+        Instant instant = Instant.ofEpochMilli(epochMillis);
+        return LocalDateTime.ofInstant(instant, rules(zone).getOffset(instant));
+    }
+}
@@ -12,6 +12,8 @@ import android.view.View
 import android.view.WindowManager
 import android.widget.Button
 import android.widget.TextView
+import com.unlockam.alarmmodule.AlarmHistory
+import com.unlockam.alarmmodule.QueuedAlarm
 import com.unlockam.mobile.devbuild.R
 import java.text.SimpleDateFormat
 import java.util.*
@@ -29,6 +31,7 @@ class AlarmyStyleAlarmActivity : Activity() {
     private var alarmId: Int = -1
     private var alarmLabel: String = ""
     private var triggerTime: Long = 0L
+    private var shownAt: Long = 0L
     
     // Screen wake lock
     private var screenWakeLock: PowerManager.WakeLock? = null
@@ -49,6 +52,14 @@ class AlarmyStyleAlarmActivity : Activity() {
         // Extract alarm data from intent
         extractAlarmData()
         
+        // Record the fire once - not again when the activity is recreated
+        shownAt = savedInstanceState?.getLong(KEY_SHOWN_AT) ?: System.currentTimeMillis()
+        if (savedInstanceState == null) {
+            AlarmHistory.getInstance(this).record(
+                AlarmHistory.FIRED, QueuedAlarm.TARGET_ALARMY, alarmId.toString(), shownAt - triggerTime
+            )
+        }
+        
         // Setup window flags for lock screen display (Alarmy's approach)
         setupLockScreenDisplay()
         
@@ -65,6 +76,11 @@ class AlarmyStyleAlarmActivity : Activity() {
         generatePuzzle()
     }
     
+    override fun onSaveInstanceState(outState: Bundle) {
+        super.onSaveInstanceState(outState)
+        outState.putLong(KEY_SHOWN_AT, shownAt)
+    }
+    
     override fun onDestroy() {
         Log.d(tag, "AlarmyStyleAlarmActivity destroyed")
         releaseScreenWakeLock()
@@ -231,6 +247,10 @@ class AlarmyStyleAlarmActivity : Activity() {
      */
     private fun dismissAlarm() {
         Log.i(tag, "Dismissing alarm ID: $alarmId")
+        AlarmHistory.getInstance(this).record(
+            AlarmHistory.DISMISSED, QueuedAlarm.TARGET_ALARMY, alarmId.toString(),
+            System.currentTimeMillis() - shownAt
+        )
         
         // Stop the alarm service
         val serviceIntent = Intent(this, AlarmyStyleAlarmService::class.java).apply {
@@ -278,4 +298,8 @@ class AlarmyStyleAlarmActivity : Activity() {
             }
         }
     }
+    
+    companion object {
+        private const val KEY_SHOWN_AT = "shown_at"
+    }
 }
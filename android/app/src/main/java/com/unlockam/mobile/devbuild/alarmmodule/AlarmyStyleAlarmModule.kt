@@ -9,7 +9,8 @@ import android.provider.Settings
 import android.util.Log
 import com.facebook.react.bridge.*
 import com.facebook.react.modules.core.DeviceEventManagerModule
-import java.util.Calendar
+import com.unlockam.alarmmodule.AlarmRecurrence
+import java.util.Date
 
 /**
  * React Native module for Alarmy-style alarm functionality
@@ -34,27 +35,19 @@ class AlarmyStyleAlarmModule(reactContext: ReactApplicationContext) : ReactConte
         try {
             Log.d(tag, "Scheduling Alarmy-style alarm: ID=$alarmId, Time=$hour:$minute, Label=$label")
             
-            // Calculate trigger time
-            val calendar = Calendar.getInstance().apply {
-                set(Calendar.HOUR_OF_DAY, hour)
-                set(Calendar.MINUTE, minute)
-                set(Calendar.SECOND, 0)
-                set(Calendar.MILLISECOND, 0)
-                
-                // If time is in the past, schedule for tomorrow
-                if (timeInMillis <= System.currentTimeMillis()) {
-                    add(Calendar.DAY_OF_MONTH, 1)
-                }
-            }
+            // Resolve the next hour:minute as a wall-clock rule in the device zone - DST-correct,
+            // and recomputed by the alarm queue if the clock or zone changes before it fires
+            val rule = AlarmRecurrence.once(hour, minute)
+            val triggerTime = rule.nextAfter(System.currentTimeMillis())
             
-            val success = alarmScheduler?.scheduleAlarm(alarmId, calendar.timeInMillis, label) ?: false
+            val success = alarmScheduler?.scheduleAlarm(alarmId, triggerTime, label, rule) ?: false
             
             if (success) {
-                Log.i(tag, "Successfully scheduled alarm for ${calendar.time}")
+                Log.i(tag, "Successfully scheduled alarm for ${Date(triggerTime)}")
                 promise.resolve(WritableNativeMap().apply {
                     putBoolean("success", true)
                     putString("message", "Alarm scheduled successfully")
-                    putDouble("triggerTime", calendar.timeInMillis.toDouble())
+                    putDouble("triggerTime", triggerTime.toDouble())
                 })
             } else {
                 promise.reject("SCHEDULE_FAILED", "Failed to schedule alarm - check exact alarm permissions")
@@ -5,6 +5,7 @@ import android.content.Context
 import android.content.Intent
 import android.os.Build
 import android.util.Log
+import com.unlockam.alarmmodule.AlarmReconciler
 
 /**
  * Alarmy-style broadcast receiver that handles alarm triggers with maximum reliability
@@ -101,13 +102,8 @@ class AlarmyStyleAlarmReceiver : BroadcastReceiver() {
     private fun handleBootCompleted(context: Context) {
         Log.i(tag, "Device boot completed - restoring alarms")
         
-        try {
-            val scheduler = AlarmyStyleAlarmScheduler(context)
-            scheduler.restoreAlarmsAfterBoot()
-            Log.i(tag, "Successfully restored alarms after boot")
-        } catch (e: Exception) {
-            Log.e(tag, "Failed to restore alarms after boot", e)
-        }
+        // Restore inside the receiver - a job takes over only if it cannot finish in time
+        AlarmReconciler.reconcileFromReceiver(context, goAsync())
     }
     
     /**
@@ -1,18 +1,20 @@
 package com.unlockam.mobile.devbuild.alarmmodule
 
 import android.app.AlarmManager
-import android.app.PendingIntent
 import android.content.Context
 import android.content.Intent
 import android.os.Build
 import android.provider.Settings
 import android.util.Log
-import androidx.core.app.AlarmManagerCompat
-import java.util.Calendar
+import com.unlockam.alarmmodule.AlarmQueue
+import com.unlockam.alarmmodule.AlarmRecurrence
+import com.unlockam.alarmmodule.MappedAlarmStore
+import com.unlockam.alarmmodule.QueuedAlarm
 
 /**
  * Alarmy-style alarm scheduler that ensures alarms trigger reliably
- * Uses AlarmManager.setAlarmClock() with exact RTC_WAKEUP for maximum reliability
+ * Alarms go through the shared AlarmQueue, which arms the earliest one with
+ * AlarmManager.setAlarmClock() for maximum reliability
  */
 class AlarmyStyleAlarmScheduler(private val context: Context) {
     
@@ -22,10 +24,19 @@ class AlarmyStyleAlarmScheduler(private val context: Context) {
     /**
      * Schedule an alarm using Alarmy's approach:
      * 1. Check exact alarm permissions (Android 12+)
-     * 2. Use setAlarmClock() for highest priority
-     * 3. Set up proper PendingIntent with broadcast receiver
+     * 2. Queue the alarm - the head of the queue is armed with setAlarmClock()
+     *    (a wall-clock [rule] lets the queue recompute it on clock/zone changes)
+     * 3. The queue dispatches to our broadcast receiver when the alarm is due
+     *
+     * If the phone was off when the alarm was due, it still rings up to [missedGraceMs] late
      */
-    fun scheduleAlarm(alarmId: Int, triggerTime: Long, label: String = "Wake up!"): Boolean {
+    fun scheduleAlarm(
+        alarmId: Int,
+        triggerTime: Long,
+        label: String = "Wake up!",
+        rule: AlarmRecurrence? = null,
+        missedGraceMs: Long = QueuedAlarm.DEFAULT_MISSED_GRACE_MS
+    ): Boolean {
         Log.d(tag, "Scheduling Alarmy-style alarm for ID: $alarmId at $triggerTime")
         
         // Step 1: Check if we can schedule exact alarms (Android 12+)
@@ -37,46 +48,22 @@ class AlarmyStyleAlarmScheduler(private val context: Context) {
             }
         }
         
-        // Step 2: Create the alarm intent (goes to our broadcast receiver)
-        val alarmIntent = Intent(context, AlarmyStyleAlarmReceiver::class.java).apply {
-            action = "com.unlockam.ALARMY_ALARM_TRIGGER"
-            putExtra("alarm_id", alarmId)
-            putExtra("alarm_label", label)
-            putExtra("trigger_time", triggerTime)
-        }
-        
-        // Step 3: Create PendingIntent with high priority flags
-        val pendingIntent = PendingIntent.getBroadcast(
-            context,
-            alarmId,
-            alarmIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE
-        )
-        
-        // Step 4: Create show intent for the alarm clock info (required for setAlarmClock)
-        val showIntent = Intent(context, AlarmyStyleAlarmActivity::class.java).apply {
-            action = "com.unlockam.ALARM_TRIGGERED"
-            putExtra("alarm_id", alarmId)
-            putExtra("alarm_label", label)
-        }
-        
-        val showPendingIntent = PendingIntent.getActivity(
-            context,
-            alarmId + 10000, // Offset to avoid conflicts
-            showIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE
-        )
-        
-        // Step 5: Use setAlarmClock() - Alarmy's primary method
-        // This has the highest priority and will wake the device
-        val alarmClockInfo = AlarmManager.AlarmClockInfo(triggerTime, showPendingIntent)
+        // Step 2: Hand the alarm to the shared queue - it arms only the earliest alarm
+        // with setAlarmClock() and re-arms the next one when it fires
+        val queuedAlarm = QueuedAlarm.Builder(QueuedAlarm.TARGET_ALARMY, alarmId.toString(), triggerTime)
+            .setLabel(label)
+            .setRecurrence(rule)
+            .setMissedGraceMs(missedGraceMs)
+            .build()
         
         try {
-            alarmManager.setAlarmClock(alarmClockInfo, pendingIntent)
-            Log.i(tag, "Successfully scheduled Alarmy-style alarm for $triggerTime")
+            // A registration from before the queue would ring this alarm a second time
+            MappedAlarmStore.cancelLegacyRegistration(context, alarmId)
+            val method = AlarmQueue.getInstance(context).schedule(queuedAlarm)
+            Log.i(tag, "Successfully queued Alarmy-style alarm for $triggerTime ($method)")
             
             // Store alarm info for persistence
-            saveAlarmInfo(alarmId, triggerTime, label)
+            saveAlarmInfo(alarmId, triggerTime, label, missedGraceMs)
             return true
             
         } catch (e: Exception) {
@@ -91,18 +78,8 @@ class AlarmyStyleAlarmScheduler(private val context: Context) {
     fun cancelAlarm(alarmId: Int) {
         Log.d(tag, "Cancelling alarm ID: $alarmId")
         
-        val alarmIntent = Intent(context, AlarmyStyleAlarmReceiver::class.java).apply {
-            action = "com.unlockam.ALARMY_ALARM_TRIGGER"
-        }
-        
-        val pendingIntent = PendingIntent.getBroadcast(
-            context,
-            alarmId,
-            alarmIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT or PendingIntent.FLAG_IMMUTABLE
-        )
-        
-        alarmManager.cancel(pendingIntent)
+        AlarmQueue.getInstance(context).cancel(QueuedAlarm.TARGET_ALARMY, alarmId.toString())
+        MappedAlarmStore.cancelLegacyRegistration(context, alarmId)
         removeAlarmInfo(alarmId)
         Log.i(tag, "Cancelled alarm ID: $alarmId")
     }
@@ -120,47 +97,17 @@ class AlarmyStyleAlarmScheduler(private val context: Context) {
     }
     
     /**
-     * Save alarm information for boot recovery
+     * Save alarm information for boot recovery (one O(1) record write in the mapped store)
      */
-    private fun saveAlarmInfo(alarmId: Int, triggerTime: Long, label: String) {
-        val sharedPrefs = context.getSharedPreferences("alarmy_alarms", Context.MODE_PRIVATE)
-        sharedPrefs.edit().apply {
-            putLong("alarm_${alarmId}_time", triggerTime)
-            putString("alarm_${alarmId}_label", label)
-            apply()
-        }
+    private fun saveAlarmInfo(alarmId: Int, triggerTime: Long, label: String, missedGraceMs: Long) {
+        MappedAlarmStore.getInstance(context).put(alarmId, triggerTime, label, missedGraceMs)
     }
     
     /**
      * Remove saved alarm information
      */
     private fun removeAlarmInfo(alarmId: Int) {
-        val sharedPrefs = context.getSharedPreferences("alarmy_alarms", Context.MODE_PRIVATE)
-        sharedPrefs.edit().apply {
-            remove("alarm_${alarmId}_time")
-            remove("alarm_${alarmId}_label")
-            apply()
-        }
-    }
-    
-    /**
-     * Restore alarms after boot (called by boot receiver)
-     */
-    fun restoreAlarmsAfterBoot() {
-        Log.d(tag, "Restoring alarms after boot")
-        val sharedPrefs = context.getSharedPreferences("alarmy_alarms", Context.MODE_PRIVATE)
-        val allPrefs = sharedPrefs.all
-        
-        for ((key, value) in allPrefs) {
-            if (key.endsWith("_time") && value is Long) {
-                val alarmId = key.substringAfter("alarm_").substringBefore("_time").toIntOrNull()
-                val label = sharedPrefs.getString("alarm_${alarmId}_label", "Wake up!") ?: "Wake up!"
-                
-                if (alarmId != null && value > System.currentTimeMillis()) {
-                    scheduleAlarm(alarmId, value, label)
-                }
-            }
-        }
+        MappedAlarmStore.getInstance(context).remove(alarmId)
     }
     
     /**
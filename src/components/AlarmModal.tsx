@@ -97,9 +97,11 @@ export default function AlarmModal({
       };
       startPulse();
       
-      // Start countdown timer for auto-stop
+      // Start countdown timer for auto-stop - the ringing alarm's end time doesn't change,
+      // so storage is read once and every tick is computed locally
+      const activeAlarmRead = alarmService.getActiveAlarm();
       const updateCountdown = async () => {
-        const activeAlarm = await alarmService.getActiveAlarm();
+        const activeAlarm = await activeAlarmRead;
         if (activeAlarm && activeAlarm.endTimeTimestamp) {
           const now = Date.now();
           const timeLeft = activeAlarm.endTimeTimestamp - now;
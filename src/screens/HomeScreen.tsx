@@ -19,6 +19,7 @@ import TimePickerModal from '../components/TimePickerModal';
 import DooaStatusCard from '../components/DooaStatusCard';
 import OnboardingDebugPanel from '../components/OnboardingDebugPanel';
 import { AlarmService } from '../services/AlarmService';
+import { useNextAlarm } from '../services/ProductionAlarmManager';
 import { PermissionChecker } from '../services/PermissionChecker';
 import { generateMathPuzzle, generatePatternPuzzle } from '../utils/puzzleGenerator';
 import { useAudio } from '../hooks/useAudio';
@@ -46,6 +47,7 @@ export default function HomeScreen() {
   const alarmService = AlarmService.getInstance();
   const { stopAlarm } = useAudio();
   const globalAudio = GlobalAudioManager.getInstance();
+  const nextAlarm = useNextAlarm();
 
   // Load saved times on component mount
   useEffect(() => {
@@ -113,68 +115,90 @@ export default function HomeScreen() {
     }
   };
 
-  // Update countdown timer
+  // Update countdown timer - ticks are computed locally; storage is only read again when
+  // the native next alarm changes or the alarm modal opens or closes
   useEffect(() => {
-    const updateCountdown = async () => {
-      const timeUntil = await alarmService.getTimeUntilAlarm();
+    let interval: ReturnType<typeof setInterval> | undefined;
+    let cancelled = false;
+    
+    const startCountdown = async () => {
       const activeAlarm = await alarmService.getActiveAlarm();
       const dailyConfig = await alarmService.getDailyAlarmConfig();
+      if (cancelled) return;
       
-      // Check if daily alarm is disabled
-      if (!dailyConfig || !dailyConfig.enabled) {
-        setCountdown("Daily alarm is disabled");
-        return;
-      }
+      // The native queue knows the next alarm on Android; elsewhere use the stored one
+      const scheduledFor: number | undefined = nextAlarm?.triggerAt ?? activeAlarm?.scheduledFor;
+      const nextEndTime: number | undefined = nextAlarm ? nextAlarm.endAt : activeAlarm?.endTimeTimestamp;
       
-      if (!timeUntil || !activeAlarm) {
-        setCountdown("Setting up daily alarm...");
-        return;
-      }
-      
-      const now = Date.now();
-      const endTime = activeAlarm.endTimeTimestamp;
-      
-      // Check if end time has been reached
-      if (endTime && now >= endTime && showAlarmModal) {
-        console.log('⏰ END TIME REACHED! HomeScreen stopping alarm...');
+      const updateCountdown = async () => {
+        const diff = scheduledFor ? scheduledFor - Date.now() : 0;
+        const timeUntil = diff > 0 ? {
+          hours: Math.floor(diff / (1000 * 60 * 60)),
+          minutes: Math.floor((diff / (1000 * 60)) % 60),
+          seconds: Math.floor((diff / 1000) % 60),
+        } : null;
         
-        // Stop all audio and close alarm modal immediately
-        await globalAudio.stopAllSounds();
-        await alarmService.forceStopEverything();
+        // Check if daily alarm is disabled
+        if (!dailyConfig || !dailyConfig.enabled) {
+          setCountdown("Daily alarm is disabled");
+          return;
+        }
         
-        // Force close alarm modal
-        setShowAlarmModal(false);
-        setCurrentPuzzle(null);
-        setCountdown("Daily alarm will resume tomorrow");
+        if (!timeUntil || !(nextAlarm || activeAlarm)) {
+          setCountdown("Setting up daily alarm...");
+          return;
+        }
         
-        console.log('✅ HomeScreen: Alarm fully stopped and modal closed');
-        return;
-      }
-      
-      const { hours, minutes, seconds } = timeUntil;
-      if (hours === 0 && minutes === 0 && seconds <= 0) {
-        setCountdown("Daily alarm is starting now!");
-        // Trigger alarm modal
-        triggerAlarm();
-        return;
-      }
-      
-      // Show time until next daily alarm
-      let countdownText = `Next daily alarm in ${hours}h ${minutes}m ${seconds}s`;
-      
-      // If we have end time, also show alarm duration
-      if (endTime && activeAlarm.scheduledFor) {
-        const duration = Math.round((endTime - activeAlarm.scheduledFor) / 1000 / 60);
-        countdownText += ` (${duration}min duration)`;
-      }
+        const now = Date.now();
+        const endTime = activeAlarm?.endTimeTimestamp;
+        
+        // Check if end time has been reached
+        if (endTime && now >= endTime && showAlarmModal) {
+          console.log('⏰ END TIME REACHED! HomeScreen stopping alarm...');
+          
+          // Stop all audio and close alarm modal immediately
+          await globalAudio.stopAllSounds();
+          await alarmService.forceStopEverything();
+          
+          // Force close alarm modal
+          setShowAlarmModal(false);
+          setCurrentPuzzle(null);
+          setCountdown("Daily alarm will resume tomorrow");
+          
+          console.log('✅ HomeScreen: Alarm fully stopped and modal closed');
+          return;
+        }
+        
+        const { hours, minutes, seconds } = timeUntil;
+        if (hours === 0 && minutes === 0 && seconds <= 0) {
+          setCountdown("Daily alarm is starting now!");
+          // Trigger alarm modal
+          triggerAlarm();
+          return;
+        }
+        
+        // Show time until next daily alarm
+        let countdownText = `Next daily alarm in ${hours}h ${minutes}m ${seconds}s`;
+        
+        // If we have end time, also show alarm duration
+        if (nextEndTime && scheduledFor) {
+          const duration = Math.round((nextEndTime - scheduledFor) / 1000 / 60);
+          countdownText += ` (${duration}min duration)`;
+        }
+        
+        setCountdown(countdownText);
+      };
       
-      setCountdown(countdownText);
+      updateCountdown();
+      interval = setInterval(updateCountdown, 1000);
     };
-
-    updateCountdown();
-    const interval = setInterval(updateCountdown, 1000);
-    return () => clearInterval(interval);
-  }, [showAlarmModal]);
+    
+    startCountdown();
+    return () => {
+      cancelled = true;
+      if (interval) clearInterval(interval);
+    };
+  }, [showAlarmModal, nextAlarm]);
 
   const loadSavedTimes = async () => {
     try {
@@ -1,4 +1,5 @@
 import AsyncStorage from '@react-native-async-storage/async-storage';
+import { Platform } from 'react-native';
 import { Audio } from 'expo-av';
 import * as BackgroundFetch from 'expo-background-fetch';
 import * as TaskManager from 'expo-task-manager';
@@ -8,8 +9,10 @@ import { AlarmSoundGenerator } from '../utils/soundGenerator';
 import { GlobalAudioManager } from './GlobalAudioManager';
 import { PermissionChecker } from './PermissionChecker';
 import { BulletproofAlarmService } from './BulletproofAlarmService';
+import { ProductionAlarmManager } from './ProductionAlarmManager';
 
 const BACKGROUND_ALARM_TASK = 'background-alarm-task';
+const NATIVE_DAILY_ALARM_ID = 'daily-alarm';
 
 // Background task for alarm monitoring
 TaskManager.defineTask(BACKGROUND_ALARM_TASK, async () => {
@@ -210,6 +213,9 @@ export class AlarmService {
       }
 
       this.activeAlarmId = alarmId;
+
+      // Register the daily rule natively so the alarm keeps repeating even if JS never runs again
+      await this.registerNativeDailyAlarm(alarmDate, endDate, hours, minutes);
       
       // Store alarm info in AsyncStorage (without notifications)
       await AsyncStorage.setItem('activeAlarm', JSON.stringify({
@@ -237,6 +243,23 @@ export class AlarmService {
     }
   }
 
+  private async registerNativeDailyAlarm(alarmDate: Date, endDate: Date, hour: number, minute: number): Promise<void> {
+    if (Platform.OS !== 'android') return;
+
+    try {
+      await ProductionAlarmManager.getInstance().scheduleAlarm({
+        alarmId: NATIVE_DAILY_ALARM_ID,
+        triggerTime: alarmDate.getTime(),
+        endTime: endDate.getTime(), // Stopped natively, every occurrence
+        label: 'Daily UnlockAM Alarm',
+        recurrence: { type: 'daily', hour, minute },
+      });
+      console.log('🔁 Native daily recurrence registered');
+    } catch (error) {
+      console.log('⚠️ Native daily recurrence unavailable, relying on JS rescheduling:', error);
+    }
+  }
+
   // Auto-reschedule after alarm ends (for daily recurring)
   async autoRescheduleDaily(): Promise<void> {
     try {
@@ -269,6 +292,13 @@ export class AlarmService {
         disabledAt: Date.now()
       }));
       await this.cancelAlarm();
+      if (Platform.OS === 'android') {
+        try {
+          await ProductionAlarmManager.getInstance().cancelAlarm(NATIVE_DAILY_ALARM_ID);
+        } catch (error) {
+          console.log('Could not cancel native daily alarm:', error);
+        }
+      }
       console.log('📴 Daily alarm disabled');
     } catch (error) {
       console.error('Failed to disable daily alarm:', error);
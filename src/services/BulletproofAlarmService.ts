@@ -119,34 +119,30 @@ export class BulletproofAlarmService {
       }));
 
       // Method 1: Native Android system alarm (highest priority)
+      let nativeScheduled = false;
       if (Platform.OS === 'android' && AndroidAlarmAudio) {
         try {
+          // The native queue stops the alarm at endTime itself - no JS timer needed
           await AndroidAlarmAudio.scheduleAlarm({
             alarmId: this.activeAlarmId,
             triggerTime: alarmDate.getTime(),
+            endTime: endDate.getTime(),
             soundType: 'default',
             vibration: true,
             label: 'UnlockAM Alarm',
           });
-          console.log('✅ BULLETPROOF: Native Android system alarm scheduled');
-          
-          // Also schedule auto-stop
-          await AndroidAlarmAudio.scheduleAlarm({
-            alarmId: `${this.activeAlarmId}-stop`,
-            triggerTime: endDate.getTime(),
-            soundType: 'default',
-            vibration: false,
-            label: 'UnlockAM Alarm Auto-Stop',
-          });
-          console.log('✅ BULLETPROOF: Auto-stop alarm scheduled');
+          nativeScheduled = true;
+          console.log('✅ BULLETPROOF: Native Android system alarm scheduled with native auto-stop');
           
         } catch (nativeError) {
           console.log('⚠️ Native alarm scheduling failed, using fallbacks:', nativeError);
         }
       }
 
-      // Method 2: Timer-based monitoring (JavaScript level)
-      this.startTimerBasedMonitoring(alarmDate.getTime(), endDate.getTime());
+      // Method 2: Timer-based monitoring (JavaScript level) - only when the native alarm is unavailable
+      if (!nativeScheduled) {
+        this.startTimerBasedMonitoring(alarmDate.getTime(), endDate.getTime());
+      }
 
       // Method 3: Pre-load audio resources
       await this.preloadAudioResources();
@@ -410,12 +410,16 @@ export class EnhancedAlarmService {
         const nextTime = this.calculateNextOccurrence(alarm);
         if (nextTime) {
           console.log(`Scheduling next occurrence of ${alarmId} at ${nextTime}`);
-          // Schedule next occurrence using native module
+          // Schedule next occurrence using native module; the native queue
+          // keeps re-arming it from the recurrence rule after every fire
           if (Platform.OS === 'android' && AndroidAlarmAudio) {
             await AndroidAlarmAudio.scheduleNextOccurrence({
               alarmId: alarmId,
               triggerTime: nextTime.getTime(),
               soundType: alarm.soundType || 'default',
+              vibration: alarm.vibration !== false,
+              label: alarm.label || 'Alarm',
+              recurrence: this.toNativeRecurrence(alarm),
             });
           }
         }
@@ -425,6 +429,13 @@ export class EnhancedAlarmService {
     }
   }
 
+  private toNativeRecurrence(alarm: AlarmData): { type: string; hour: number; minute: number; days: string[] } | null {
+    if (!alarm.days || alarm.days.length === 0) return null;
+
+    const [hour, minute] = alarm.time.split(':').map(Number);
+    return { type: 'weekly', hour, minute, days: alarm.days };
+  }
+
   private calculateNextOccurrence(alarm: AlarmData): Date | null {
     if (!alarm.days || alarm.days.length === 0) return null;
     
@@ -548,13 +559,20 @@ export class EnhancedAlarmService {
       try {
         const nextOccurrence = this.calculateNextOccurrence(alarm);
         if (nextOccurrence) {
-          await AndroidAlarmAudio.scheduleAlarm({
+          const options = {
             alarmId: alarm.id,
             triggerTime: nextOccurrence.getTime(),
             soundType: alarm.soundType || 'default',
             vibration: alarm.vibration !== false,
             label: alarm.label || 'Alarm',
-          });
+          };
+          const recurrence = this.toNativeRecurrence(alarm);
+          if (recurrence) {
+            // Repeating alarms are re-armed natively after each fire
+            await AndroidAlarmAudio.scheduleNextOccurrence({ ...options, recurrence });
+          } else {
+            await AndroidAlarmAudio.scheduleAlarm(options);
+          }
           console.log(`Scheduled native alarm ${alarm.id} for ${nextOccurrence}`);
         }
       } catch (error) {
@@ -1,9 +1,12 @@
 import React, { useState, useEffect } from 'react';
-import { NativeModules, Platform, Alert } from 'react-native';
+import { NativeModules, NativeEventEmitter, Platform, Alert } from 'react-native';
 
 // Import the production alarm module
 const { ProductionAlarm } = NativeModules;
 
+// Native pushes NextAlarmChanged only when the next alarm actually changes
+const nextAlarmEmitter = ProductionAlarm ? new NativeEventEmitter(ProductionAlarm) : null;
+
 /**
  * Production-ready alarm manager for React Native
  * This provides a clean interface to the native Android alarm system
@@ -24,9 +27,16 @@ export class ProductionAlarmManager {
   async scheduleAlarm(options: {
     alarmId: string;
     triggerTime: number; // Unix timestamp in milliseconds
+    endTime?: number; // Unix timestamp in milliseconds - ringing is stopped natively
     soundType?: string;
     vibration?: boolean;
     label?: string;
+    recurrence?: AlarmRecurrenceRule; // Re-armed natively after every fire
+    prewarmLeadMs?: number; // Prepare sound + notification this long before firing (30000-60000 recommended)
+    priority?: AlarmPriority; // Defaults to 'exact'
+    windowMs?: number; // How late a 'windowed' alarm may ring (default 10 minutes)
+    missedGraceMs?: number; // Still ring this late if the phone was off when due (default 10 minutes)
+    ramp?: VolumeRamp; // Crescendo instead of ringing at the target volume from the first second
   }): Promise<boolean> {
     try {
       if (Platform.OS !== 'android') {
@@ -42,12 +52,22 @@ export class ProductionAlarmManager {
       const result = await ProductionAlarm.scheduleExactAlarm({
         alarmId: options.alarmId,
         triggerTime: options.triggerTime,
+        endTime: options.endTime,
         soundType: options.soundType || 'default',
         vibration: options.vibration !== false,
         label: options.label || 'Alarm',
+        recurrence: options.recurrence,
+        prewarmLeadMs: options.prewarmLeadMs,
+        priority: options.priority,
+        windowMs: options.windowMs,
+        missedGraceMs: options.missedGraceMs,
+        ramp: options.ramp,
       });
       
       console.log('✅ Production alarm scheduled:', result);
+      if (result.worstCaseDelayMs > 0) {
+        console.warn(`⚠️ Alarm ${options.alarmId} may ring up to ${Math.round(result.worstCaseDelayMs / 60000)} min late`);
+      }
       return result.success;
       
     } catch (error) {
@@ -56,6 +76,184 @@ export class ProductionAlarmManager {
     }
   }
   
+  /**
+   * Schedule a batch of alarms (e.g. a weekly roster) in a single bridge call
+   */
+  async scheduleAlarms(alarms: Array<{
+    alarmId: string;
+    triggerTime: number; // Unix timestamp in milliseconds
+    endTime?: number; // Unix timestamp in milliseconds - ringing is stopped natively
+    soundType?: string;
+    vibration?: boolean;
+    label?: string;
+    recurrence?: AlarmRecurrenceRule; // Re-armed natively after every fire
+    prewarmLeadMs?: number; // Prepare sound + notification this long before firing (30000-60000 recommended)
+    priority?: AlarmPriority; // Defaults to 'exact'
+    windowMs?: number; // How late a 'windowed' alarm may ring (default 10 minutes)
+    missedGraceMs?: number; // Still ring this late if the phone was off when due (default 10 minutes)
+    ramp?: VolumeRamp; // Crescendo instead of ringing at the target volume from the first second
+  }>): Promise<BatchResult> {
+    try {
+      if (Platform.OS !== 'android') {
+        throw new Error('Production alarms only supported on Android');
+      }
+      
+      if (!ProductionAlarm) {
+        throw new Error('ProductionAlarm native module not available');
+      }
+      
+      console.log(`📅 Scheduling ${alarms.length} production alarms`);
+      
+      const result: BatchResult = await ProductionAlarm.scheduleExactAlarms(alarms.map(options => ({
+        alarmId: options.alarmId,
+        triggerTime: options.triggerTime,
+        endTime: options.endTime,
+        soundType: options.soundType || 'default',
+        vibration: options.vibration !== false,
+        label: options.label || 'Alarm',
+        recurrence: options.recurrence,
+        prewarmLeadMs: options.prewarmLeadMs,
+        priority: options.priority,
+        windowMs: options.windowMs,
+        missedGraceMs: options.missedGraceMs,
+        ramp: options.ramp,
+      })));
+      
+      console.log(`✅ Production alarm batch scheduled: ${result.scheduled} ok, ${result.failed} failed`);
+      return result;
+      
+    } catch (error) {
+      console.error('❌ Failed to schedule production alarm batch:', error);
+      throw error;
+    }
+  }
+  
+  /**
+   * Cancel a batch of alarms in a single bridge call
+   */
+  async cancelAlarms(alarmIds: string[]): Promise<BatchResult> {
+    try {
+      if (!ProductionAlarm) {
+        throw new Error('ProductionAlarm native module not available');
+      }
+      
+      console.log(`🗑️ Cancelling ${alarmIds.length} production alarms`);
+      
+      const result: BatchResult = await ProductionAlarm.cancelAlarms(alarmIds);
+      
+      console.log(`✅ Production alarm batch cancelled: ${result.cancelled}`);
+      return result;
+      
+    } catch (error) {
+      console.error('❌ Failed to cancel production alarm batch:', error);
+      throw error;
+    }
+  }
+  
+  /**
+   * Re-arm only the alarms whose AlarmManager registration was dropped or went stale
+   * (task killers, force-stop, app updates). Also runs natively at app start and after boot.
+   */
+  async reconcileAlarms(): Promise<ReconcileResult | null> {
+    try {
+      if (!ProductionAlarm) {
+        throw new Error('ProductionAlarm native module not available');
+      }
+      
+      const result: ReconcileResult = await ProductionAlarm.reconcileAlarms();
+      console.log(`🩺 Alarm reconciliation repaired ${result.repaired} of ${result.probed} entries`);
+      return result;
+      
+    } catch (error) {
+      console.error('❌ Failed to reconcile alarms:', error);
+      return null;
+    }
+  }
+  
+  /**
+   * Alarms that were due while the phone was off and came back past their grace window
+   */
+  async getMissedAlarms(clear: boolean = true): Promise<MissedAlarm[]> {
+    try {
+      if (!ProductionAlarm) {
+        throw new Error('ProductionAlarm native module not available');
+      }
+      
+      const result = await ProductionAlarm.getMissedAlarms(clear);
+      return result.missed;
+      
+    } catch (error) {
+      console.error('❌ Failed to get missed alarms:', error);
+      return [];
+    }
+  }
+  
+  /**
+   * Fire, snooze and dismiss events recorded natively between `from` and `to` (epoch ms, inclusive)
+   */
+  async queryHistory(from: number, to: number = Date.now()): Promise<AlarmHistoryEvent[]> {
+    try {
+      if (!ProductionAlarm) {
+        throw new Error('ProductionAlarm native module not available');
+      }
+      
+      const result = await ProductionAlarm.queryHistory(from, to);
+      return result.events;
+      
+    } catch (error) {
+      console.error('❌ Failed to query alarm history:', error);
+      return [];
+    }
+  }
+  
+  /**
+   * Wake-up statistics maintained natively as events are recorded - no history is loaded
+   */
+  async getWakeStats(): Promise<WakeStats | null> {
+    try {
+      if (!ProductionAlarm) {
+        throw new Error('ProductionAlarm native module not available');
+      }
+      
+      return await ProductionAlarm.getWakeStats();
+      
+    } catch (error) {
+      console.error('❌ Failed to get wake statistics:', error);
+      return null;
+    }
+  }
+  
+  /**
+   * The next alarm that will ring, read synchronously from the native queue (null if none)
+   */
+  getNextAlarm(): NextAlarm | null {
+    if (Platform.OS !== 'android' || !ProductionAlarm) {
+      return null;
+    }
+    
+    try {
+      return ProductionAlarm.getNextAlarm() ?? null;
+    } catch (error) {
+      console.error('❌ Failed to read next alarm:', error);
+      return null;
+    }
+  }
+  
+  /**
+   * Subscribe to next-alarm changes; returns the unsubscribe function
+   */
+  onNextAlarmChanged(listener: (nextAlarm: NextAlarm | null) => void): () => void {
+    if (!nextAlarmEmitter) {
+      return () => {};
+    }
+    
+    const subscription = nextAlarmEmitter.addListener(
+      'NextAlarmChanged',
+      (event: { nextAlarm: NextAlarm | null }) => listener(event.nextAlarm ?? null)
+    );
+    return () => subscription.remove();
+  }
+  
   /**
    * Cancel a scheduled alarm
    */
@@ -100,6 +298,26 @@ export class ProductionAlarmManager {
     }
   }
   
+  /**
+   * Ring alarms due within `windowMs` of each other as one session (0 disables)
+   */
+  async setCoalesceWindow(windowMs: number): Promise<boolean> {
+    try {
+      if (!ProductionAlarm) {
+        throw new Error('ProductionAlarm native module not available');
+      }
+      
+      const result = await ProductionAlarm.setCoalesceWindow(windowMs);
+      
+      console.log(`🧲 Alarm coalescing window set to ${result.coalesceWindowMs}ms`);
+      return result.success;
+      
+    } catch (error) {
+      console.error('❌ Failed to set alarm coalescing window:', error);
+      throw error;
+    }
+  }
+  
   /**
    * Get current alarm status and permissions
    */
@@ -303,6 +521,119 @@ export interface AlarmStatus {
   deviceModel: string;
 }
 
+/**
+ * Recurrence rule evaluated natively; hour/minute default to the first trigger time.
+ * Weekly days use Date.getDay() numbers (0 = Sunday) or short names ('Mon').
+ */
+export interface AlarmRecurrenceRule {
+  type: 'daily' | 'weekly' | 'everyNDays' | 'monthly';
+  hour?: number;
+  minute?: number;
+  days?: Array<number | string>;
+  intervalDays?: number;
+  dayOfMonth?: number;
+}
+
+/**
+ * Delivery guarantee per alarm: 'critical' uses setAlarmClock (shown in the status bar,
+ * never deferred), 'exact' uses setExactAndAllowWhileIdle, 'windowed' uses setWindow and
+ * may ring up to windowMs late but needs no exact alarm permission.
+ */
+export type AlarmPriority = 'critical' | 'exact' | 'windowed';
+
+/**
+ * Per-alarm crescendo, applied natively to the player with VolumeShaper (Android 8+);
+ * older devices ring at the target volume from the start.
+ */
+export interface VolumeRamp {
+  curve: 'none' | 'linear' | 'exponential' | 'stepped';
+  durationMs: number; // Time from silence to the target volume
+  targetVolume?: number; // Fraction of the alarm stream maximum (0-1, default 1); the stream is only ever raised to it
+}
+
+export interface BatchItemResult {
+  success: boolean;
+  scheduledFor?: number;
+  priority?: AlarmPriority;
+  method?: string; // AlarmManager API used (or planned, until the alarm is armed)
+  armed?: boolean;
+  promoted?: boolean; // Raised to 'critical' so the Doze idle quota cannot delay it
+  worstCaseDelayMs?: number; // Expected worst-case lateness with the device in Doze
+  dozeDeferrable?: boolean; // Doze may hold it back even longer (windowed alarms)
+  mergedWith?: string; // Rings together with this earlier alarm
+  wasScheduled?: boolean;
+  error?: string;
+}
+
+export interface BatchResult {
+  success: boolean;
+  scheduled?: number;
+  failed?: number;
+  cancelled?: number;
+  results: Record<string, BatchItemResult>;
+}
+
+export interface ReconcileResult {
+  success: boolean;
+  probed: number;
+  repaired: number;
+  rearmed: boolean;
+  restored: number;
+  missed: number; // Past their grace window - see getMissedAlarms()
+}
+
+export interface MissedAlarm {
+  alarmId: string;
+  target: 'production' | 'legacy' | 'alarmy';
+  label: string;
+  triggerAt: number;
+  detectedAt: number;
+  recurring: boolean; // Recurring alarms were moved on to their next occurrence
+}
+
+export interface AlarmHistoryEvent {
+  at: number;
+  type: 'fired' | 'snoozed' | 'dismissed' | 'auto_stopped' | 'audio_restarted';
+  target: 'production' | 'legacy' | 'alarmy';
+  alarmId: string;
+  // Fired: how late audio started. Snoozed/dismissed/auto_stopped: how long it rang.
+  // Audio_restarted: how long the alarm had been silent before the watchdog restarted it
+  latencyMs?: number;
+}
+
+export interface RunningStat {
+  count: number;
+  meanMs: number;
+  stdDevMs: number;
+}
+
+export interface WakeStats {
+  success: boolean;
+  fireDelay: RunningStat; // How late alarms started ringing
+  dismissLatency: RunningStat; // How long alarms rang before being dismissed
+  audioRestarts: RunningStat; // Watchdog restarts and the silence before each
+  dismissHistogram: {
+    upperBoundsMs: number[]; // counts has one more, open-ended bucket
+    counts: number[];
+  };
+  snoozesByAlarm: Record<string, number>; // Keyed by "target:alarmId"
+  weekdays: Array<{ // Index 0 is Sunday, like Date.getDay()
+    fired: number;
+    snoozed: number;
+    dismissed: number;
+    autoStopped: number;
+    dismissLatency: RunningStat;
+  }>;
+}
+
+export interface NextAlarm {
+  alarmId: string;
+  target: 'production' | 'legacy' | 'alarmy';
+  label: string | null;
+  triggerAt: number;
+  endAt?: number; // Absent when the alarm rings until dismissed
+}
+
 export interface PermissionResults {
   exactAlarm: 'granted' | 'requested' | 'not_needed' | 'error' | 'unknown';
   batteryOptimization: 'granted' | 'requested' | 'error' | 'unknown';
@@ -373,3 +704,21 @@ export function useProductionAlarm() {
     refreshStatus: loadStatus,
   };
 }
+
+/**
+ * The next native alarm, kept current by NextAlarmChanged events instead of polling
+ */
+export function useNextAlarm(): NextAlarm | null {
+  const [nextAlarm, setNextAlarm] = useState<NextAlarm | null>(
+    () => ProductionAlarmManager.getInstance().getNextAlarm()
+  );
+  
+  useEffect(() => {
+    const manager = ProductionAlarmManager.getInstance();
+    // Catch anything that changed between the first render and subscribing
+    setNextAlarm(manager.getNextAlarm());
+    return manager.onNextAlarmChanged(setNextAlarm);
+  }, []);
+  
+  return nextAlarm;
+}